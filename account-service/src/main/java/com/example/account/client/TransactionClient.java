@@ -0,0 +1,84 @@
+package com.example.account.client;
+
+import com.example.account.exception.TransactionServiceException;
+import com.example.account.security.JwtUtil;
+import com.example.account.security.UserDetailsServiceImpl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP client for transaction-service, used where account-service moves money on a user's
+ * behalf without a user request to forward (Stripe payments). Calls are made with a token
+ * minted for that user, so transaction-service applies its usual ownership checks.
+ */
+@Component
+public class TransactionClient {
+
+    private final RestTemplate restTemplate;
+    private final JwtUtil jwtUtil;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final ObjectMapper objectMapper;
+
+    public TransactionClient(RestTemplateBuilder restTemplateBuilder,
+                             JwtUtil jwtUtil,
+                             UserDetailsServiceImpl userDetailsService,
+                             ObjectMapper objectMapper,
+                             @Value("${transaction-service.url:http://localhost:8082}") String transactionServiceUrl,
+                             @Value("${transaction-service.timeout-ms:10000}") long timeoutMs) {
+        this.restTemplate = restTemplateBuilder
+                .rootUri(transactionServiceUrl)
+                .setConnectTimeout(Duration.ofMillis(timeoutMs))
+                .setReadTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Deposit into one of the user's accounts: a posting plus a recorded DEPOSIT row and
+     * its event. A retry with the same idempotency key is answered from transaction-service's
+     * idempotency store instead of being applied again. With a payment session id, the
+     * posting is rejected with 409 if that session was already credited.
+     */
+    public void deposit(String email, Long accountId, BigDecimal amount, String description,
+                        String paymentSessionId, String idempotencyKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(jwtUtil.generateToken(userDetailsService.loadUserByUsername(email)));
+        headers.set("Idempotency-Key", idempotencyKey);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("accountId", accountId);
+        body.put("amount", amount);
+        body.put("description", description);
+        body.put("paymentSessionId", paymentSessionId);
+
+        try {
+            restTemplate.postForEntity("/transactions/deposit", new HttpEntity<>(body, headers), String.class);
+        } catch (HttpStatusCodeException e) {
+            throw new TransactionServiceException(e.getRawStatusCode(), message(e));
+        }
+    }
+
+    private String message(HttpStatusCodeException e) {
+        try {
+            JsonNode message = objectMapper.readTree(e.getResponseBodyAsString()).get("message");
+            if (message != null && !message.isNull()) return message.asText();
+        } catch (Exception ignored) {
+            // Not a JSON error body
+        }
+        return "Transaction service returned " + e.getRawStatusCode();
+    }
+}
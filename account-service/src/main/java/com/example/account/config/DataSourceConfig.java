@@ -0,0 +1,156 @@
+package com.example.account.config;
+
+import com.example.account.shard.ShardRouter;
+import com.example.account.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Primary pool from spring.datasource.*, plus one pool per URL in datasource.replicas.urls
+ * (same credentials and pool settings, read-only). With no replicas configured everything
+ * runs on the primary as before.
+ *
+ * The primary (with its replicas) is shard 0; each URL in sharding.shard-urls adds a shard
+ * database with the same credentials. Flyway migrates every shard at startup.
+ *
+ * Each pool reports hikaricp.* metrics under its own pool tag (primary, replica-1, shard-1, ...).
+ */
+@Configuration
+public class DataSourceConfig implements WebMvcConfigurer {
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+    private static final String WRITER_ATTRIBUTE = DataSourceConfig.class.getName() + ".writer";
+
+    @Value("${datasource.replicas.urls:}")
+    private List<String> replicaUrls;
+
+    // Replicas further behind than this are skipped
+    @Value("${datasource.replicas.max-lag-ms:5000}")
+    private long maxLagMs;
+
+    @Value("${datasource.replicas.lag-check-interval-ms:1000}")
+    private long lagCheckIntervalMs;
+
+    // Shards 1..n; shard 0 is spring.datasource.url
+    @Value("${sharding.shard-urls:}")
+    private List<String> shardUrls;
+
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource, MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) continue;
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(url.trim());
+            config.setPoolName("replica-" + (replicas.size() + 1));
+            config.setReadOnly(true);
+            // Start even if the replica is down; the lag check keeps it out of rotation until it answers
+            config.setInitializationFailTimeout(-1);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(new HikariDataSource(config));
+        }
+        routingDataSource = new ReadWriteRoutingDataSource(primaryDataSource, replicas, maxLagMs, lagCheckIntervalMs, meterRegistry);
+        return routingDataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(ReadWriteRoutingDataSource routingDataSource,
+                                                         HikariDataSource primaryDataSource, MeterRegistry meterRegistry) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(routingDataSource);
+        for (String url : shardUrls) {
+            if (url.isBlank()) continue;
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(url.trim());
+            config.setPoolName("shard-" + shards.size());
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            shards.add(new HikariDataSource(config));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    // The route can only be picked once the shard and the transaction's read-only flag are set, i.e. at the first statement
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    // Same migrations on every shard. New shards hand out account ids from n << 40 up.
+    @Bean
+    public FlywayMigrationStrategy shardedMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            flyway.migrate();
+            for (int shard = 1; shard < shardRoutingDataSource.getShardCount(); shard++) {
+                DataSource dataSource = shardRoutingDataSource.getShard(shard);
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(dataSource).load().migrate();
+
+                long firstId = (long) shard << ShardRouter.ACCOUNT_ID_SHARD_SHIFT;
+                new JdbcTemplate(dataSource).query(
+                        "SELECT setval(pg_get_serial_sequence('account', 'id'), ?, false) " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM account WHERE id >= ?)",
+                        rs -> {}, firstId, firstId);
+            }
+        };
+    }
+
+    // Any non-GET request counts as a change; marked again when it completes, since the write may finish late.
+    // Requests without a principal (registration, the Stripe webhook) record the user they wrote for themselves.
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (SAFE_METHODS.contains(request.getMethod()) || routingDataSource == null) return true;
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                if (authentication != null) {
+                    request.setAttribute(WRITER_ATTRIBUTE, authentication.getName());
+                    routingDataSource.recordWrite(authentication.getName());
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                Object writer = request.getAttribute(WRITER_ATTRIBUTE);
+                if (writer != null) routingDataSource.recordWrite((String) writer);
+            }
+        });
+    }
+}
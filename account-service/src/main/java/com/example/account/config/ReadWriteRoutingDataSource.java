@@ -0,0 +1,234 @@
+package com.example.account.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends @Transactional(readOnly = true) work to a read replica and everything else to the
+ * primary. Only used behind a LazyConnectionDataSourceProxy, so the route is picked at the
+ * first statement, once the transaction's read-only flag is known.
+ *
+ * A replica is skipped while its measured lag is above maxLagMs or it can't be reached.
+ * Lag is measured against the primary: every check samples the primary's WAL position, and
+ * a replica is as far behind as the newest sample it has replayed. A replica whose WAL
+ * receiver has stopped or lost its connection therefore falls behind as soon as the primary
+ * writes anything, instead of reporting no lag because it has replayed all it received.
+ * A caller who made a change recently keeps reading from the primary until the replica
+ * has had time to replay it (read-your-writes); see {@link #recordWrite}. Lag is polled on
+ * a thread of its own, so a replica that hangs doesn't hold up anything else.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+
+    // Replay position (null on a server that isn't a standby) and WAL receiver status, which is
+    // null without pg_read_all_stats and then left to the LSN comparison alone
+    private static final String REPLICA_SQL =
+            "SELECT pg_last_wal_replay_lsn()::text, (SELECT status FROM pg_stat_wal_receiver)";
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final long lagCheckIntervalMs;
+    private final Cache<String, Long> recentWrites;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Counter> routed = new HashMap<>();
+    // Primary WAL positions of recent checks, oldest first; only touched by the lag checker
+    private final Deque<WalSample> primaryPositions = new ArrayDeque<>();
+    private ScheduledExecutorService lagChecker;
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaPools,
+                                      long maxLagMs, long lagCheckIntervalMs, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        this.lagCheckIntervalMs = lagCheckIntervalMs;
+        // Past max lag no replica is used anyway, so older writes don't matter
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(maxLagMs + lagCheckIntervalMs))
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicas = replicaPools.stream().map(Replica::new).toList();
+        for (Replica replica : replicas) {
+            targets.put(replica.name, replica.pool);
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagMs)
+                    .tag("pool", replica.name).baseUnit("milliseconds").register(meterRegistry);
+            Gauge.builder("datasource.replica.available", replica, r -> r.available ? 1 : 0)
+                    .tag("pool", replica.name).register(meterRegistry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        for (String reason : List.of("write", "replica", "no-replica", "read-your-writes")) {
+            routed.put(reason, Counter.builder("datasource.routed").tag("reason", reason).register(meterRegistry));
+        }
+
+        if (!replicas.isEmpty()) {
+            lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-lag-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Pin the caller to the primary for as long as a replica may still be missing this change
+    public void recordWrite(String principal) {
+        if (principal != null && !replicas.isEmpty()) {
+            recentWrites.put(principal, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            routed.get("write").increment();
+            return PRIMARY;
+        }
+        Replica replica = pickReplica();
+        if (replica == null) {
+            routed.get("no-replica").increment();
+            return PRIMARY;
+        }
+        Long wroteAt = recentWrites.getIfPresent(currentPrincipal());
+        if (wroteAt != null && System.currentTimeMillis() - wroteAt <= replica.lagMs + lagCheckIntervalMs) {
+            routed.get("read-your-writes").increment();
+            return PRIMARY;
+        }
+        routed.get("replica").increment();
+        return replica.name;
+    }
+
+    // Round robin over the replicas that are currently within the lag limit
+    private Replica pickReplica() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.available && replica.lagMs <= maxLagMs) return replica;
+        }
+        return null;
+    }
+
+    private void checkLag() {
+        long now = System.currentTimeMillis();
+        try (Connection conn = primary.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(PRIMARY_LSN_SQL)) {
+            rs.next();
+            primaryPositions.addLast(new WalSample(parseLsn(rs.getString(1)), now));
+        } catch (Exception e) {
+            // Without the primary's position there is nothing to measure against; keep the last result
+            log.warn("Could not read the primary's WAL position: {}", e.getMessage());
+            return;
+        }
+        // Kept for longer than the lag limit, so a replica that has replayed none of them is over it
+        while (now - primaryPositions.peekFirst().at > maxLagMs + 2 * lagCheckIntervalMs) {
+            primaryPositions.pollFirst();
+        }
+
+        for (Replica replica : replicas) {
+            try (Connection conn = replica.pool.getConnection();
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(REPLICA_SQL)) {
+                rs.next();
+                String replayed = rs.getString(1);
+                String receiver = rs.getString(2);
+                if (replayed != null && receiver != null && !"streaming".equals(receiver)) {
+                    throw new IllegalStateException("WAL receiver is " + receiver);
+                }
+                // Not a standby (e.g. pointed at the primary itself)
+                replica.lagMs = replayed == null ? 0 : lagBehind(parseLsn(replayed), now);
+                if (!replica.available) log.info("Replica {} available (lag {} ms)", replica.name, replica.lagMs);
+                replica.available = true;
+            } catch (Exception e) {
+                if (replica.available) log.warn("Replica {} unavailable, reading from the primary: {}", replica.name, e.getMessage());
+                replica.available = false;
+            }
+        }
+    }
+
+    // Zero if the replica has the primary's latest position, else the age of the newest one it has
+    private long lagBehind(long replayedLsn, long now) {
+        Iterator<WalSample> newestFirst = primaryPositions.descendingIterator();
+        WalSample sample = newestFirst.next();
+        if (sample.lsn <= replayedLsn) return 0;
+        while (newestFirst.hasNext()) {
+            sample = newestFirst.next();
+            if (sample.lsn <= replayedLsn) break;
+        }
+        return now - sample.at;
+    }
+
+    // "16/B374D848" -> 0x16B374D848
+    private static long parseLsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "";
+    }
+
+    @Override
+    public void destroy() {
+        if (lagChecker != null) lagChecker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private static final class WalSample {
+        final long lsn;
+        final long at;
+
+        WalSample(long lsn, long at) {
+            this.lsn = lsn;
+            this.at = at;
+        }
+    }
+
+    private static final class Replica {
+        final String name;
+        final HikariDataSource pool;
+        volatile long lagMs;
+        // Unknown until the first lag check
+        volatile boolean available;
+
+        Replica(HikariDataSource pool) {
+            this.name = pool.getPoolName();
+            this.pool = pool;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.account.controller;
 
+import com.example.account.dto.AccountLookupRequest;
 import com.example.account.dto.CreateAccountRequest;
+import com.example.account.dto.PostingRequest;
 import com.example.account.model.Account;
 import com.example.account.model.User;
 import com.example.account.repository.AccountRepository;
 import com.example.account.repository.UserRepository;
+import com.example.account.security.UserCache;
+import com.example.account.service.PostingService;
+import com.example.account.shard.ShardMap;
+import com.example.account.shard.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -14,9 +20,14 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/accounts")
@@ -28,6 +39,18 @@ public class AccountController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardMap shardMap;
+
     @PostMapping
     public ResponseEntity<?> create(@Valid @RequestBody CreateAccountRequest request) {
         User user = getAuthenticatedUser();
@@ -45,21 +68,25 @@ public class AccountController {
         account.setBalance(BigDecimal.ZERO);
         account.setUserId(user.getId());
 
-        Account saved = accountRepository.save(account);
+        int shard = shardMap.shardForUser(user.getId());
+        account.setAccountNumber(ShardRouter.newAccountNumber(shard));
+        Account saved = router.onShard(shard, () -> accountRepository.save(account));
         return ResponseEntity.ok(saved);
     }
 
+    // Read-only transactions go to a read replica when one is configured
     @GetMapping
     public ResponseEntity<?> all() {
         User user = getAuthenticatedUser();
-        List<Account> userAccounts = accountRepository.findByUserId(user.getId());
+        List<Account> userAccounts = router.readOnShard(shardMap.shardForUser(user.getId()),
+                () -> accountRepository.findByUserId(user.getId()));
         return ResponseEntity.ok(userAccounts);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<?> one(@PathVariable Long id) {
         User user = getAuthenticatedUser();
-        Account account = accountRepository.findById(id)
+        Account account = router.onShard(ShardRouter.shardOfAccount(id), () -> accountRepository.findById(id))
                 .orElseThrow(() -> new RuntimeException("Account not found"));
 
         if (!user.getId().equals(account.getUserId())) {
@@ -71,17 +98,46 @@ public class AccountController {
 
     @GetMapping("/by-number/{accountNumber}")
     public ResponseEntity<?> findByNumber(@PathVariable String accountNumber) {
-        Account account = accountRepository.findByAccountNumber(accountNumber)
+        Account account = router.onShard(ShardRouter.shardOfAccountNumber(accountNumber),
+                        () -> accountRepository.findByAccountNumber(accountNumber))
                 .orElseThrow(() -> new RuntimeException("Account not found"));
 
         // Return full account info (needed for transfers)
         return ResponseEntity.ok(account);
     }
 
+    // Bulk version of GET /{id} and GET /by-number/{n}: one IN query per key type and shard
+    @PostMapping("/lookup")
+    public ResponseEntity<?> lookup(@Valid @RequestBody AccountLookupRequest request) {
+        User user = getAuthenticatedUser();
+
+        List<Account> found = new ArrayList<>();
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            Map<Integer, Set<Long>> idsByShard = request.getIds().stream().collect(Collectors.groupingBy(
+                    ShardRouter::shardOfAccount, TreeMap::new, Collectors.toCollection(LinkedHashSet::new)));
+            idsByShard.forEach((shard, ids) -> {
+                if (shard < router.shardCount()) {
+                    found.addAll(router.onShard(shard, () -> accountRepository.findByIdInAndUserId(ids, user.getId())));
+                }
+            });
+        }
+        if (request.getAccountNumbers() != null && !request.getAccountNumbers().isEmpty()) {
+            Map<Integer, Set<String>> numbersByShard = request.getAccountNumbers().stream().collect(Collectors.groupingBy(
+                    ShardRouter::shardOfAccountNumber, TreeMap::new, Collectors.toCollection(LinkedHashSet::new)));
+            numbersByShard.forEach((shard, numbers) -> {
+                if (shard < router.shardCount()) {
+                    found.addAll(router.onShard(shard, () -> accountRepository.findByAccountNumberIn(numbers)));
+                }
+            });
+        }
+        return ResponseEntity.ok(found);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<?> updateAccount(@PathVariable Long id, @RequestBody Map<String, String> updates) {
         User user = getAuthenticatedUser();
-        Account account = accountRepository.findById(id)
+        int shard = ShardRouter.shardOfAccount(id);
+        Account account = router.onShard(shard, () -> accountRepository.findById(id))
                 .orElseThrow(() -> new RuntimeException("Account not found"));
 
         if (!user.getId().equals(account.getUserId())) {
@@ -94,29 +150,16 @@ public class AccountController {
             account.setOwnerName(updates.get("ownerName"));
         }
 
-        Account saved = accountRepository.save(account);
+        Account saved = router.onShard(shard, () -> accountRepository.save(account));
         return ResponseEntity.ok(saved);
     }
 
-    // Internal endpoint for transaction-service to update balance
-    @PutMapping("/{id}/balance")
-    public ResponseEntity<?> updateBalance(@PathVariable Long id, @RequestBody BalanceUpdateRequest request,
-                                           @RequestHeader(value = "X-System-Call", required = false) String systemCall) {
-        Account account = accountRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Account not found"));
-
-        // If it's a system call (inter-service transfer), skip ownership check
-        if (!"true".equals(systemCall)) {
-            User user = getAuthenticatedUser();
-            if (!user.getId().equals(account.getUserId())) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body("You don't have permission to update this account");
-            }
-        }
-
-        account.setBalance(request.getNewBalance());
-        Account saved = accountRepository.save(account);
-        return ResponseEntity.ok(saved);
+    // Internal endpoint for transaction-service to apply balance deltas atomically.
+    // Debits/credits on the caller's own accounts and counterparty credits all commit together.
+    @PostMapping("/postings")
+    public ResponseEntity<?> post(@Valid @RequestBody PostingRequest request) {
+        User user = getAuthenticatedUser();
+        return ResponseEntity.ok(postingService.post(request.getLegs(), user.getId()));
     }
 
     // Admin endpoint - get all users and their accounts
@@ -127,8 +170,11 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Admin access required");
         }
 
-        List<User> allUsers = userRepository.findAll();
-        List<Account> allAccounts = accountRepository.findAll();
+        List<User> allUsers = router.readOnShard(0, () -> userRepository.findAll());
+        List<Account> allAccounts = new ArrayList<>();
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            allAccounts.addAll(router.readOnShard(shard, () -> accountRepository.findAll()));
+        }
 
         Map<String, Object> overview = new HashMap<>();
         overview.put("totalUsers", allUsers.size());
@@ -149,13 +195,7 @@ public class AccountController {
     private User getAuthenticatedUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String email = authentication.getName();
-        return userRepository.findByEmail(email)
+        return userCache.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
-
-    public static class BalanceUpdateRequest {
-        private BigDecimal newBalance;
-        public BigDecimal getNewBalance() { return newBalance; }
-        public void setNewBalance(BigDecimal newBalance) { this.newBalance = newBalance; }
-    }
 }
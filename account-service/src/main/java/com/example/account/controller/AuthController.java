@@ -1,5 +1,6 @@
 package com.example.account.controller;
 
+import com.example.account.config.ReadWriteRoutingDataSource;
 import com.example.account.dto.AuthResponse;
 import com.example.account.dto.LoginRequest;
 import com.example.account.dto.RefreshTokenRequest;
@@ -10,7 +11,10 @@ import com.example.account.model.User;
 import com.example.account.repository.AccountRepository;
 import com.example.account.repository.UserRepository;
 import com.example.account.security.JwtUtil;
+import com.example.account.security.UserCache;
 import com.example.account.service.RefreshTokenService;
+import com.example.account.shard.ShardMap;
+import com.example.account.shard.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -34,6 +38,9 @@ public class AuthController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
     @Autowired
     private AccountRepository accountRepository;
 
@@ -49,9 +56,18 @@ public class AuthController {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardMap shardMap;
+
     @Autowired
     private RefreshTokenService refreshTokenService;
 
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
+
     @PostMapping("/register")
     public ResponseEntity<?> registerUser(@Valid @RequestBody RegisterRequest request) {
         if (userRepository.existsByEmail(request.getEmail())) {
@@ -67,18 +83,22 @@ public class AuthController {
         user.setRole("USER");
         User savedUser = userRepository.save(user);
 
-        // Auto-create wallet for the user
+        // Auto-create wallet for the user, on the shard the user is placed on
+        int shard = shardMap.assign(savedUser.getId());
         Account wallet = new Account();
+        wallet.setAccountNumber(ShardRouter.newAccountNumber(shard));
         wallet.setOwnerName(request.getName());
         wallet.setAccountType(Account.AccountType.CHECKING);
         wallet.setBalance(BigDecimal.ZERO);
         wallet.setUserId(savedUser.getId());
-        accountRepository.save(wallet);
+        router.onShard(shard, () -> accountRepository.save(wallet));
 
         // Generate tokens
         UserDetails userDetails = userDetailsService.loadUserByUsername(savedUser.getEmail());
         String accessToken = jwtUtil.generateToken(userDetails);
         RefreshToken refreshToken = refreshTokenService.createRefreshToken(savedUser.getId());
+        // The request had no principal to pin; pin the one the new token carries
+        routingDataSource.recordWrite(userDetails.getUsername());
 
         return ResponseEntity.ok(
                 new AuthResponse(accessToken, refreshToken.getToken(),
@@ -94,7 +114,7 @@ public class AuthController {
                             request.getEmail(), request.getPassword()));
 
             UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
-            User user = userRepository.findByEmail(request.getEmail())
+            User user = userCache.findByEmail(request.getEmail())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             String accessToken = jwtUtil.generateToken(userDetails);
@@ -118,7 +138,7 @@ public class AuthController {
 
         refreshTokenService.verifyExpiration(refreshToken);
 
-        User user = userRepository.findById(refreshToken.getUserId())
+        User user = userCache.findById(refreshToken.getUserId())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         UserDetails userDetails = userDetailsService.loadUserByUsername(user.getEmail());
@@ -140,7 +160,7 @@ public class AuthController {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String email = authentication.getName();
 
-        User user = userRepository.findByEmail(email)
+        User user = userCache.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         refreshTokenService.revokeAllUserTokens(user.getId());
@@ -1,20 +1,27 @@
 package com.example.account.controller;
 
+import com.example.account.client.TransactionClient;
+import com.example.account.config.ReadWriteRoutingDataSource;
+import com.example.account.exception.TransactionServiceException;
+import com.example.account.idempotency.IdempotencyFilter;
 import com.example.account.model.Account;
 import com.example.account.model.User;
 import com.example.account.repository.AccountRepository;
-import com.example.account.repository.UserRepository;
+import com.example.account.security.UserCache;
+import com.example.account.shard.ShardMap;
+import com.example.account.shard.ShardRouter;
 import com.stripe.Stripe;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
 import com.stripe.model.checkout.Session;
 import com.stripe.net.Webhook;
 import com.stripe.param.checkout.SessionCreateParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
@@ -22,11 +29,17 @@ import org.springframework.web.bind.annotation.*;
 import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/payments")
 public class StripeController {
 
+    private static final Logger log = LoggerFactory.getLogger(StripeController.class);
+
+    // Same key from the redirect and the webhook, as the frontend uses for verify-session
+    private static final String STRIPE_KEY_PREFIX = "stripe-session-";
+
     @Value("${stripe.secret-key:sk_test_placeholder}")
     private String stripeSecretKey;
 
@@ -43,10 +56,19 @@ public class StripeController {
     private AccountRepository accountRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserCache userCache;
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private TransactionClient transactionClient;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
 
     @PostConstruct
     public void init() {
@@ -63,7 +85,7 @@ public class StripeController {
             Authentication auth = SecurityContextHolder.getContext().getAuthentication();
             String email = auth.getName();
 
-            User user = userRepository.findByEmail(email)
+            User user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             // Get amount in cents (Stripe uses smallest currency unit)
@@ -75,7 +97,8 @@ public class StripeController {
             }
 
             // Get user's account ID for metadata
-            Account wallet = accountRepository.findByUserId(user.getId()).stream()
+            Account wallet = router.onShard(shardMap.shardForUser(user.getId()),
+                            () -> accountRepository.findByUserId(user.getId())).stream()
                     .findFirst()
                     .orElseThrow(() -> new RuntimeException("Wallet not found"));
 
@@ -130,18 +153,8 @@ public class StripeController {
                     Long accountId = Long.parseLong(accountIdStr);
                     BigDecimal amount = new BigDecimal(amountStr);
 
-                    Account account = accountRepository.findById(accountId).orElse(null);
+                    Account account = credit(accountId, amount, "Stripe deposit", sessionId);
                     if (account != null) {
-                        account.setBalance(account.getBalance().add(amount));
-                        accountRepository.save(account);
-
-                        // Also record the deposit transaction directly in the transaction table
-                        // (same database, shared by both services)
-                        jdbcTemplate.update(
-                            "INSERT INTO transaction (account_id, amount, type, category, description, created_at) VALUES (?, ?, 'DEPOSIT', 'OTHER', ?, NOW())",
-                            accountId, amount, "Stripe deposit"
-                        );
-
                         return ResponseEntity.ok(Map.of(
                                 "message", "Deposit successful",
                                 "amount", amount,
@@ -185,15 +198,13 @@ public class StripeController {
                         Long accountId = Long.parseLong(accountIdStr);
                         BigDecimal amount = new BigDecimal(amountStr);
 
-                        Account account = accountRepository.findById(accountId).orElse(null);
-                        if (account != null) {
-                            account.setBalance(account.getBalance().add(amount));
-                            accountRepository.save(account);
+                        credit(accountId, amount, "Stripe deposit", session.getId());
 
-                            jdbcTemplate.update(
-                                "INSERT INTO transaction (account_id, amount, type, category, description, created_at) VALUES (?, ?, 'DEPOSIT', 'OTHER', ?, NOW())",
-                                accountId, amount, "Stripe deposit"
-                            );
+                        // Stripe is the caller here; pin the user who paid, so their next balance read sees it
+                        String userIdStr = session.getMetadata().get("userId");
+                        if (userIdStr != null) {
+                            userCache.findById(Long.parseLong(userIdStr))
+                                    .ifPresent(user -> routingDataSource.recordWrite(user.getEmail()));
                         }
                     }
                 }
@@ -208,7 +219,7 @@ public class StripeController {
 
     /**
      * Simulated deposit - for when Stripe keys aren't configured (demo/development).
-     * Falls back to direct balance credit.
+     * Deposits without a Stripe payment.
      */
     @PostMapping("/deposit-direct")
     public ResponseEntity<?> depositDirect(@RequestBody Map<String, Object> request) {
@@ -216,7 +227,7 @@ public class StripeController {
             Authentication auth = SecurityContextHolder.getContext().getAuthentication();
             String email = auth.getName();
 
-            User user = userRepository.findByEmail(email)
+            User user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             double amount = Double.parseDouble(request.get("amount").toString());
@@ -224,18 +235,12 @@ public class StripeController {
                 return ResponseEntity.badRequest().body(Map.of("error", "Amount must be positive"));
             }
 
-            Account wallet = accountRepository.findByUserId(user.getId()).stream()
+            Account wallet = router.onShard(shardMap.shardForUser(user.getId()),
+                            () -> accountRepository.findByUserId(user.getId())).stream()
                     .findFirst()
                     .orElseThrow(() -> new RuntimeException("Wallet not found"));
 
-            wallet.setBalance(wallet.getBalance().add(BigDecimal.valueOf(amount)));
-            accountRepository.save(wallet);
-
-            // Record transaction
-            jdbcTemplate.update(
-                "INSERT INTO transaction (account_id, amount, type, category, description, created_at) VALUES (?, ?, 'DEPOSIT', 'OTHER', ?, NOW())",
-                wallet.getId(), BigDecimal.valueOf(amount), "Direct deposit"
-            );
+            wallet = credit(wallet.getId(), BigDecimal.valueOf(amount), "Direct deposit", null);
 
             return ResponseEntity.ok(Map.of(
                     "message", "Deposit successful",
@@ -247,4 +252,30 @@ public class StripeController {
                     .body(Map.of("error", e.getMessage()));
         }
     }
+
+    /**
+     * Deposit through transaction-service, so the credit is a posting and the DEPOSIT row is
+     * journaled and published like any other deposit. Returns the account with its balance
+     * read back from the primary, or null if the account doesn't exist.
+     *
+     * A Stripe session is claimed in the posting that credits it, so whichever of the
+     * redirect and the webhook comes second finds it processed and credits nothing.
+     */
+    private Account credit(Long accountId, BigDecimal amount, String description, String sessionId) {
+        int shard = ShardRouter.shardOfAccount(accountId);
+        Account account = router.onShard(shard, () -> accountRepository.findById(accountId)).orElse(null);
+        if (account == null) return null;
+        User owner = userCache.findById(account.getUserId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        IdempotencyFilter.markPostingSent();
+        String idempotencyKey = sessionId != null ? STRIPE_KEY_PREFIX + sessionId : UUID.randomUUID().toString();
+        try {
+            transactionClient.deposit(owner.getEmail(), accountId, amount, description, sessionId, idempotencyKey);
+        } catch (TransactionServiceException e) {
+            if (sessionId == null || e.getStatus() != HttpStatus.CONFLICT.value()) throw e;
+            log.info("Stripe session {} was already credited", sessionId);
+        }
+        return router.onShard(shard, () -> accountRepository.findById(accountId)).orElse(account);
+    }
 }
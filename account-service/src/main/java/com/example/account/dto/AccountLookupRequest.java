@@ -0,0 +1,26 @@
+package com.example.account.dto;
+
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk read by id and/or account number. Ids are resolved only against the caller's
+ * own accounts (like GET /accounts/{id}); numbers resolve any account (like
+ * GET /accounts/by-number/{n}). Unknown entries are simply left out of the result.
+ */
+public class AccountLookupRequest {
+
+    @Size(max = 500, message = "At most 500 ids per lookup")
+    private List<Long> ids = new ArrayList<>();
+
+    @Size(max = 500, message = "At most 500 account numbers per lookup")
+    private List<String> accountNumbers = new ArrayList<>();
+
+    public AccountLookupRequest() {}
+
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids; }
+    public List<String> getAccountNumbers() { return accountNumbers; }
+    public void setAccountNumbers(List<String> accountNumbers) { this.accountNumbers = accountNumbers; }
+}
@@ -0,0 +1,51 @@
+package com.example.account.dto;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.List;
+
+public class PostingRequest {
+
+    @NotEmpty(message = "At least one leg is required")
+    @Valid
+    private List<Leg> legs;
+
+    public PostingRequest() {}
+
+    public List<Leg> getLegs() { return legs; }
+    public void setLegs(List<Leg> legs) { this.legs = legs; }
+
+    /**
+     * One balance change. The account is identified either by id or by account number.
+     * Counterparty legs (crediting someone else's account during a transfer) skip the
+     * ownership check and may only carry a positive delta. A leg paid for by a Stripe
+     * checkout session names it, and the whole posting is rejected with 409 if that
+     * session was already credited.
+     */
+    public static class Leg {
+        private Long accountId;
+        private String accountNumber;
+
+        @NotNull(message = "Delta is required")
+        private BigDecimal delta;
+
+        private boolean counterparty;
+
+        private String paymentSessionId;
+
+        public Leg() {}
+
+        public Long getAccountId() { return accountId; }
+        public void setAccountId(Long accountId) { this.accountId = accountId; }
+        public String getAccountNumber() { return accountNumber; }
+        public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
+        public BigDecimal getDelta() { return delta; }
+        public void setDelta(BigDecimal delta) { this.delta = delta; }
+        public boolean isCounterparty() { return counterparty; }
+        public void setCounterparty(boolean counterparty) { this.counterparty = counterparty; }
+        public String getPaymentSessionId() { return paymentSessionId; }
+        public void setPaymentSessionId(String paymentSessionId) { this.paymentSessionId = paymentSessionId; }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.account.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class PostingResponse {
+
+    // One entry per request leg, in request order
+    private List<LegResult> legs;
+
+    public PostingResponse() {}
+
+    public PostingResponse(List<LegResult> legs) {
+        this.legs = legs;
+    }
+
+    public List<LegResult> getLegs() { return legs; }
+    public void setLegs(List<LegResult> legs) { this.legs = legs; }
+
+    public static class LegResult {
+        private Long id;
+        private String accountNumber;
+        private String ownerName;
+        private Long userId;
+        private BigDecimal balance;
+
+        public LegResult() {}
+
+        public LegResult(Long id, String accountNumber, String ownerName, Long userId, BigDecimal balance) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.ownerName = ownerName;
+            this.userId = userId;
+            this.balance = balance;
+        }
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getAccountNumber() { return accountNumber; }
+        public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
+        public String getOwnerName() { return ownerName; }
+        public void setOwnerName(String ownerName) { this.ownerName = ownerName; }
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public BigDecimal getBalance() { return balance; }
+        public void setBalance(BigDecimal balance) { this.balance = balance; }
+    }
+}
@@ -41,6 +41,13 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
     }
 
+    @ExceptionHandler(PostingRejectedException.class)
+    public ResponseEntity<ErrorResponse> handlePostingRejected(PostingRejectedException ex, HttpServletRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                ex.getStatus().value(), ex.getStatus().getReasonPhrase(), ex.getMessage(), request.getRequestURI());
+        return ResponseEntity.status(ex.getStatus()).body(error);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<ErrorResponse> handleRuntime(RuntimeException ex, HttpServletRequest request) {
         ErrorResponse error = new ErrorResponse(
@@ -0,0 +1,15 @@
+package com.example.account.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class PostingRejectedException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public PostingRejectedException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() { return status; }
+}
@@ -0,0 +1,16 @@
+package com.example.account.exception;
+
+/**
+ * An error answer from transaction-service, with its status.
+ */
+public class TransactionServiceException extends RuntimeException {
+
+    private final int status;
+
+    public TransactionServiceException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() { return status; }
+}
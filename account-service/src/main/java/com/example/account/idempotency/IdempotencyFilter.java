@@ -0,0 +1,230 @@
+package com.example.account.idempotency;
+
+import com.example.account.exception.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Honors the Idempotency-Key header on payment endpoints, so a retried or refreshed
+ * Stripe return can't credit the wallet twice.
+ *
+ * The first request with a key runs normally and its response is recorded. Retries with the
+ * same key get the recorded response back without reaching the controller. Duplicates that
+ * arrive while the first one is still running on this instance wait for its outcome.
+ * Keys are scoped to the authenticated user, and reusing a key for a different request
+ * body is rejected with 422.
+ *
+ * A server error only releases the key if it happened before the wallet was credited (see
+ * {@link #markPostingSent}). After that the credit may have committed, so the key keeps an
+ * "outcome unknown" response and a retry with it can't credit a second time.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String POSTING_SENT_ATTRIBUTE = IdempotencyFilter.class.getName() + ".POSTING_SENT";
+
+    private static final String UNKNOWN_OUTCOME_MESSAGE = "The request failed after the credit was started, so it may "
+            + "have been applied. Check the balance before retrying with a new Idempotency-Key.";
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.paths:/payments/verify-session,/payments/deposit-direct}")
+    private Set<String> paths;
+
+    @Value("${idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Called right before money may move. A failure from here on is recorded against the
+     * key instead of releasing it. No-op outside an idempotent request.
+     */
+    public static void markPostingSent() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(POSTING_SENT_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || request.getHeader(HEADER) == null
+                || !paths.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String clientKey = request.getHeader(HEADER);
+        if (clientKey.isBlank() || clientKey.length() > 255) {
+            writeError(response, request, HttpStatus.BAD_REQUEST, "Idempotency-Key must be between 1 and 255 characters");
+            return;
+        }
+
+        // Security has already run, so unauthenticated requests never get here
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String key = auth.getName() + ":" + clientKey;
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        String requestHash = hash(request.getRequestURI(), cachedRequest.getBody());
+
+        StoredResponse stored = store.find(key);
+        if (stored != null) {
+            replay(stored, requestHash, request, response);
+            return;
+        }
+
+        CompletableFuture<StoredResponse> execution = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(key, execution);
+        if (running != null) {
+            awaitAndReplay(running, requestHash, request, response);
+            return;
+        }
+
+        try {
+            if (!store.claim(key, requestHash)) {
+                // Taken by another instance, or finished between our lookup and the claim
+                stored = store.find(key);
+                if (stored != null) {
+                    replay(stored, requestHash, request, response);
+                } else {
+                    writeError(response, request, HttpStatus.CONFLICT,
+                            "A request with this Idempotency-Key is still being processed");
+                }
+                execution.complete(stored);
+                return;
+            }
+
+            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+            try {
+                filterChain.doFilter(cachedRequest, wrapper);
+            } catch (IOException | ServletException | RuntimeException e) {
+                failed(key, requestHash, execution, request);
+                throw e;
+            }
+
+            if (wrapper.getStatus() >= 500) {
+                failed(key, requestHash, execution, request);
+            } else {
+                stored = new StoredResponse(requestHash, wrapper.getStatus(), wrapper.getContentType(),
+                        new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8));
+                store.complete(key, stored);
+                execution.complete(stored);
+            }
+            wrapper.copyBodyToResponse();
+        } finally {
+            inFlight.remove(key, execution);
+            execution.complete(null);
+        }
+    }
+
+    // Before the credit the client can simply retry with the same key; after it the outcome is unknown
+    private void failed(String key, String requestHash, CompletableFuture<StoredResponse> execution,
+                        HttpServletRequest request) throws IOException {
+        if (request.getAttribute(POSTING_SENT_ATTRIBUTE) == null) {
+            store.release(key);
+            return;
+        }
+        StoredResponse unknown = new StoredResponse(requestHash, HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                MediaType.APPLICATION_JSON_VALUE, objectMapper.writeValueAsString(new ErrorResponse(
+                        HttpStatus.INTERNAL_SERVER_ERROR.value(), "Outcome Unknown", UNKNOWN_OUTCOME_MESSAGE,
+                        request.getRequestURI())));
+        store.complete(key, unknown);
+        execution.complete(unknown);
+    }
+
+    private void awaitAndReplay(CompletableFuture<StoredResponse> running, String requestHash,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StoredResponse stored;
+        try {
+            stored = running.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stored = null;
+        } catch (ExecutionException | TimeoutException e) {
+            stored = null;
+        }
+
+        if (stored == null) {
+            writeError(response, request, HttpStatus.CONFLICT,
+                    "The original request with this Idempotency-Key did not complete. Please retry.");
+        } else {
+            replay(stored, requestHash, request, response);
+        }
+    }
+
+    private void replay(StoredResponse stored, String requestHash,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!stored.getRequestHash().equals(requestHash)) {
+            writeError(response, request, HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key was already used for a different request");
+            return;
+        }
+        response.setStatus(stored.getStatus());
+        response.setHeader("Idempotent-Replayed", "true");
+        if (stored.getContentType() != null) {
+            response.setContentType(stored.getContentType());
+        }
+        if (stored.getBody() != null) {
+            response.getOutputStream().write(stored.getBody().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeError(HttpServletResponse response, HttpServletRequest request,
+                            HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(status.value(), status.getReasonPhrase(), message, request.getRequestURI()));
+    }
+
+    private String hash(String path, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(path.getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
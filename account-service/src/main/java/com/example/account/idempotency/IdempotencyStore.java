@@ -0,0 +1,121 @@
+package com.example.account.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency keys and their recorded responses.
+ * Recent completed keys are answered from a bounded in-memory cache; the
+ * payment_idempotency_keys table is the durable copy shared by all instances.
+ *
+ * A claim is a lease: while its request runs here it is renewed every third of the claim
+ * timeout, so a slow request (e.g. waiting on Stripe) is never re-executed by
+ * another instance. Only a claim whose holder died goes stale and can be taken over.
+ */
+@Repository
+@EnableScheduling
+public class IdempotencyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, StoredResponse> recent;
+    private final long retentionSeconds;
+    private final long claimTimeoutSeconds;
+    // Claims held by requests running on this instance
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    public IdempotencyStore(JdbcTemplate jdbcTemplate,
+                            @Value("${idempotency.cache.max-entries:100000}") long maxEntries,
+                            @Value("${idempotency.retention-hours:24}") long retentionHours,
+                            @Value("${idempotency.claim-timeout-seconds:60}") long claimTimeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionSeconds = Duration.ofHours(retentionHours).getSeconds();
+        this.claimTimeoutSeconds = claimTimeoutSeconds;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofHours(retentionHours))
+                .build();
+    }
+
+    // Completed response for this key, or null if the key is unknown or still running
+    public StoredResponse find(String key) {
+        StoredResponse cached = recent.getIfPresent(key);
+        if (cached != null) return cached;
+
+        List<StoredResponse> rows = jdbcTemplate.query(
+                "SELECT request_hash, response_status, content_type, response_body FROM payment_idempotency_keys " +
+                "WHERE idempotency_key = ? AND response_status IS NOT NULL",
+                (rs, i) -> new StoredResponse(rs.getString(1), rs.getInt(2), rs.getString(3), rs.getString(4)),
+                key);
+        if (rows.isEmpty()) return null;
+
+        recent.put(key, rows.get(0));
+        return rows.get(0);
+    }
+
+    /**
+     * Atomically reserve a key before executing the request. Returns false if another request
+     * already holds it. Claims left behind by a crashed instance can be taken over after the timeout.
+     */
+    public boolean claim(String key, String requestHash) {
+        int rows = jdbcTemplate.update(
+                "INSERT INTO payment_idempotency_keys (idempotency_key, request_hash, created_at) VALUES (?, ?, NOW()) " +
+                "ON CONFLICT (idempotency_key) DO UPDATE SET request_hash = EXCLUDED.request_hash, created_at = NOW() " +
+                "WHERE payment_idempotency_keys.response_status IS NULL " +
+                "AND payment_idempotency_keys.created_at < NOW() - (? * INTERVAL '1 second')",
+                key, requestHash, claimTimeoutSeconds);
+        if (rows == 1) held.add(key);
+        return rows == 1;
+    }
+
+    public void complete(String key, StoredResponse response) {
+        held.remove(key);
+        jdbcTemplate.update(
+                "UPDATE payment_idempotency_keys SET response_status = ?, content_type = ?, response_body = ?, completed_at = NOW() " +
+                "WHERE idempotency_key = ?",
+                response.getStatus(), response.getContentType(), response.getBody(), key);
+        recent.put(key, response);
+    }
+
+    // Drop an unfinished claim so the client can retry with the same key
+    public void release(String key) {
+        held.remove(key);
+        jdbcTemplate.update(
+                "DELETE FROM payment_idempotency_keys WHERE idempotency_key = ? AND response_status IS NULL", key);
+    }
+
+    @Scheduled(fixedDelayString = "#{${idempotency.claim-timeout-seconds:60} * 1000 / 3}")
+    public void renewClaims() {
+        if (held.isEmpty()) return;
+        Object[] keys = held.toArray();
+        jdbcTemplate.update(connection -> {
+            Array array = connection.createArrayOf("text", keys);
+            PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE payment_idempotency_keys SET created_at = NOW() " +
+                    "WHERE idempotency_key = ANY(?) AND response_status IS NULL");
+            statement.setArray(1, array);
+            return statement;
+        });
+    }
+
+    /**
+     * Delete keys past their retention window daily at 2:30 AM
+     */
+    @Scheduled(cron = "0 30 2 * * *")
+    public void purgeExpired() {
+        jdbcTemplate.update(
+                "DELETE FROM payment_idempotency_keys WHERE created_at < NOW() - (? * INTERVAL '1 second')",
+                retentionSeconds);
+    }
+}
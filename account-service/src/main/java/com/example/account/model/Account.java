@@ -4,7 +4,6 @@ import javax.persistence.*;
 import lombok.*;
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.concurrent.ThreadLocalRandom;
 
 @Entity
 @Table(name = "account", indexes = {
@@ -22,6 +21,7 @@ public class Account {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Encodes the account's shard, see ShardRouter.newAccountNumber
     @Column(nullable = false, unique = true)
     private String accountNumber;
 
@@ -53,9 +53,6 @@ public class Account {
         if (balance == null) {
             balance = BigDecimal.ZERO;
         }
-        if (accountNumber == null) {
-            accountNumber = generateAccountNumber();
-        }
     }
 
     @PreUpdate
@@ -63,12 +60,6 @@ public class Account {
         updatedAt = Instant.now();
     }
 
-    private String generateAccountNumber() {
-        int year = java.time.Year.now().getValue();
-        int random = ThreadLocalRandom.current().nextInt(100000, 999999);
-        return String.format("PL-%d-%06d", year, random);
-    }
-
     public enum AccountType {
         SAVINGS, CHECKING
     }
@@ -1,11 +1,13 @@
 package com.example.account.model;
 
+import com.example.account.security.UserCacheInvalidator;
 import javax.persistence.*;
 import lombok.*;
 import java.time.Instant;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCacheInvalidator.class)
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
@@ -0,0 +1,353 @@
+package com.example.account.reconciliation;
+
+import com.example.account.shard.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks every account's balance against the sum of its transaction rows. Balances only
+ * move through postings (Stripe deposits included, via transaction-service), but the
+ * transaction rows are written by transaction-service after the posting commits, so the
+ * two can drift apart if it fails in between.
+ *
+ * The id space up to the largest account id is cut into fixed ranges. A fork/join pool
+ * splits the pending ranges in halves until single ranges are left; each one is a single
+ * aggregate query streamed with a fetch size, and its result and drift rows are
+ * checkpointed together. An interrupted run resumes with the ranges it has not done yet.
+ * Once all ranges are done the drifted accounts are checked once more, since a posting
+ * that was in flight during the scan shows up as a transient difference.
+ *
+ * Every shard is covered: account ids on shard n start at n << 40, so each shard's id
+ * space is cut into ranges of its own and the largest id per shard is fixed when the run
+ * starts. Checkpoints and the drift report are kept on shard 0.
+ *
+ * Scan queries run on small read-only pools of their own, one per shard (one connection
+ * per worker), so a full pass can't take connections from request handling. An advisory
+ * lock on shard 0 keeps it to one instance at a time.
+ */
+@Component
+@EnableScheduling
+public class ReconciliationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ReconciliationJob.class);
+
+    private static final long ADVISORY_LOCK_KEY = 0x7265636f6e63L;
+
+    private static final String LEDGER_SUM =
+            "SUM(CASE WHEN t.type IN ('DEPOSIT', 'TRANSFER_IN') THEN t.amount ELSE -t.amount END)";
+
+    // Rows before the transaction archive's watermark are gone from the table; their net per account
+    // is kept in transaction_archive_summary (both owned by transaction-service)
+    private static final String LIVE_ROWS =
+            "t.created_at >= COALESCE((SELECT s.archived_before FROM transaction_archive_state s WHERE s.id = 1), '-infinity')";
+
+    private static final String RANGE_SQL =
+            "SELECT a.id, a.balance, COALESCE(l.ledger, 0) + COALESCE(arc.net_amount, 0) FROM account a " +
+            "LEFT JOIN (SELECT t.account_id, " + LEDGER_SUM + " AS ledger FROM transaction t " +
+            "           WHERE t.account_id >= ? AND t.account_id < ? AND " + LIVE_ROWS + " GROUP BY t.account_id) l " +
+            "ON l.account_id = a.id " +
+            "LEFT JOIN transaction_archive_summary arc ON arc.account_id = a.id " +
+            "WHERE a.id >= ? AND a.id < ?";
+
+    private static final String ACCOUNTS_SQL =
+            "SELECT a.id, a.balance, " +
+            "COALESCE((SELECT " + LEDGER_SUM + " FROM transaction t WHERE t.account_id = a.id AND " + LIVE_ROWS + "), 0) " +
+            "+ COALESCE((SELECT arc.net_amount FROM transaction_archive_summary arc WHERE arc.account_id = a.id), 0) " +
+            "FROM account a WHERE a.id = ANY(?)";
+
+    @Autowired
+    private ReconciliationRepository repository;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${reconciliation.enabled:true}")
+    private boolean enabled;
+
+    // Workers, and so connections, used by a pass
+    @Value("${reconciliation.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reconciliation.range-size:10000}")
+    private int rangeSize;
+
+    @Value("${reconciliation.fetch-size:2000}")
+    private int fetchSize;
+
+    // Grace period before re-checking drifted accounts, for postings still being recorded
+    @Value("${reconciliation.confirm-delay-ms:2000}")
+    private long confirmDelayMs;
+
+    @Value("${reconciliation.report-size:20}")
+    private int reportSize;
+
+    // Shards 1..n, as in DataSourceConfig
+    @Value("${sharding.shard-urls:}")
+    private List<String> shardUrls;
+
+    // Indexed by shard
+    private final List<HikariDataSource> scanDataSources = new ArrayList<>();
+    private final List<JdbcTemplate> scanJdbc = new ArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private Counter accountsChecked;
+    private Timer duration;
+    private final AtomicLong driftedAccounts = new AtomicLong();
+    private final AtomicReference<BigDecimal> totalAbsDrift = new AtomicReference<>(BigDecimal.ZERO);
+    private final AtomicLong rangesTotal = new AtomicLong();
+    private final AtomicLong rangesDone = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        accountsChecked = Counter.builder("reconciliation.accounts.checked")
+                .description("Accounts compared against their transaction rows")
+                .register(meterRegistry);
+        duration = Timer.builder("reconciliation.duration")
+                .description("Time taken by a full reconciliation pass")
+                .register(meterRegistry);
+        Gauge.builder("reconciliation.drifted.accounts", driftedAccounts, AtomicLong::get)
+                .description("Accounts whose balance disagreed with their ledger in the last finished pass")
+                .register(meterRegistry);
+        Gauge.builder("reconciliation.drift.total", totalAbsDrift, drift -> drift.get().doubleValue())
+                .description("Sum of absolute drift in the last finished pass")
+                .register(meterRegistry);
+        Gauge.builder("reconciliation.progress", this, job -> job.rangesTotal.get() == 0
+                        ? 1.0 : (double) job.rangesDone.get() / job.rangesTotal.get())
+                .description("Share of the current pass's ranges that are done")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        scanDataSources.forEach(HikariDataSource::close);
+    }
+
+    // Pick up a pass that was interrupted by a restart
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        if (!enabled || repository.findUnfinishedRun().isEmpty()) return;
+
+        Thread thread = new Thread(this::reconcile, "reconciliation-resume");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:0 30 3 * * *}")
+    public void scheduled() {
+        if (enabled) reconcile();
+    }
+
+    public void reconcile() {
+        if (!running.compareAndSet(false, true)) return;
+        try (Connection lockConnection = scanDataSource().getConnection()) {
+            if (!advisoryLock(lockConnection, "pg_try_advisory_lock")) {
+                log.info("Reconciliation already running on another instance");
+                return;
+            }
+            try {
+                duration.record(this::runPass);
+            } finally {
+                advisoryLock(lockConnection, "pg_advisory_unlock");
+            }
+        } catch (Exception e) {
+            log.error("Reconciliation stopped, will resume from its checkpoints: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void runPass() {
+        ReconciliationRepository.Run run = repository.findUnfinishedRun().orElseGet(() -> {
+            Map<Integer, Long> maxIds = new TreeMap<>();
+            for (int shard = 0; shard < scanJdbc.size(); shard++) {
+                maxIds.put(shard, scanJdbc.get(shard).queryForObject(
+                        "SELECT COALESCE(MAX(id), ?) FROM account", Long.class, firstAccountId(shard)));
+            }
+            return repository.createRun(maxIds, rangeSize);
+        });
+
+        // Range starts are account ids, so they don't collide across shards
+        Set<Long> finished = repository.finishedRanges(run.getId());
+        List<Long> pending = new ArrayList<>();
+        run.getMaxAccountIds().forEach((shard, maxId) -> {
+            for (long start = firstAccountId(shard); start <= maxId; start += run.getRangeSize()) {
+                if (!finished.contains(start)) pending.add(start);
+            }
+        });
+        rangesTotal.set(finished.size() + pending.size());
+        rangesDone.set(finished.size());
+        log.info("Reconciliation run {}: {} of {} ranges to scan", run.getId(), pending.size(), rangesTotal.get());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeTask(run, pending, 0, pending.size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        confirm(run);
+        ReconciliationRepository.Summary summary = repository.finishRun(run.getId());
+        driftedAccounts.set(summary.getDriftedAccounts());
+        totalAbsDrift.set(summary.getTotalAbsDrift());
+
+        log.info("Reconciliation run {} finished: {} accounts checked, {} drifted, total drift {}",
+                run.getId(), summary.getAccountsChecked(), summary.getDriftedAccounts(), summary.getTotalAbsDrift());
+        for (ReconciliationRepository.Drift drift : repository.largestDrifts(run.getId(), reportSize)) {
+            log.warn("Account {} balance {} but ledger {} (drift {})",
+                    drift.getAccountId(), drift.getBalance(), drift.getLedgerBalance(), drift.getDrift());
+        }
+    }
+
+    private class RangeTask extends RecursiveAction {
+        private final ReconciliationRepository.Run run;
+        private final List<Long> starts;
+        private final int from;
+        private final int to;
+
+        RangeTask(ReconciliationRepository.Run run, List<Long> starts, int from, int to) {
+            this.run = run;
+            this.starts = starts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                scanRange(run, starts.get(from));
+            } else if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(run, starts, from, mid), new RangeTask(run, starts, mid, to));
+            }
+        }
+    }
+
+    private void scanRange(ReconciliationRepository.Run run, long start) {
+        long end = start + run.getRangeSize();
+        List<ReconciliationRepository.Drift> drifts = new ArrayList<>();
+        long[] checked = {0};
+        scanJdbc.get(ShardRouter.shardOfAccount(start)).query(RANGE_SQL, rs -> {
+            checked[0]++;
+            BigDecimal balance = rs.getBigDecimal(2);
+            BigDecimal ledger = rs.getBigDecimal(3);
+            if (balance.compareTo(ledger) != 0) {
+                drifts.add(new ReconciliationRepository.Drift(rs.getLong(1), balance, ledger));
+            }
+        }, start, end, start, end);
+
+        repository.saveRange(run.getId(), start, checked[0], drifts);
+        accountsChecked.increment(checked[0]);
+        rangesDone.incrementAndGet();
+    }
+
+    // Re-check everything reported so far; differences that have since closed were in-flight postings
+    private void confirm(ReconciliationRepository.Run run) {
+        List<Long> reported = repository.driftedAccountIds(run.getId());
+        if (reported.isEmpty()) return;
+        try {
+            Thread.sleep(confirmDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before confirming drift", e);
+        }
+
+        for (int i = 0; i < reported.size(); i += 1000) {
+            List<Long> chunk = reported.subList(i, Math.min(i + 1000, reported.size()));
+            Map<Integer, List<Long>> byShard = new TreeMap<>();
+            chunk.forEach(id -> byShard.computeIfAbsent(ShardRouter.shardOfAccount(id), s -> new ArrayList<>()).add(id));
+
+            Map<Long, ReconciliationRepository.Drift> current = new HashMap<>();
+            byShard.forEach((shard, ids) -> scanJdbc.get(shard).query(con -> {
+                PreparedStatement ps = con.prepareStatement(ACCOUNTS_SQL);
+                ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+                return ps;
+            }, rs -> {
+                BigDecimal balance = rs.getBigDecimal(2);
+                BigDecimal ledger = rs.getBigDecimal(3);
+                if (balance.compareTo(ledger) != 0) {
+                    current.put(rs.getLong(1), new ReconciliationRepository.Drift(rs.getLong(1), balance, ledger));
+                }
+            }));
+
+            List<Long> resolved = new ArrayList<>();
+            chunk.forEach(id -> {
+                if (!current.containsKey(id)) resolved.add(id);
+            });
+            repository.confirmDrifts(run.getId(), resolved, new ArrayList<>(current.values()));
+        }
+    }
+
+    private boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT " + function + "(?)")) {
+            ps.setLong(1, ADVISORY_LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static long firstAccountId(int shard) {
+        return (long) shard << ShardRouter.ACCOUNT_ID_SHARD_SHIFT;
+    }
+
+    // Created on first use, one pool per shard; returns shard 0's, whose extra connection holds the advisory lock
+    private synchronized HikariDataSource scanDataSource() {
+        if (scanDataSources.isEmpty()) {
+            List<String> urls = new ArrayList<>();
+            urls.add(dataSourceProperties.determineUrl());
+            shardUrls.stream().filter(url -> !url.isBlank()).forEach(url -> urls.add(url.trim()));
+            for (int shard = 0; shard < urls.size(); shard++) {
+                HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                        .type(HikariDataSource.class).url(urls.get(shard)).build();
+                dataSource.setPoolName("reconciliation-" + shard);
+                dataSource.setMaximumPoolSize(shard == 0 ? parallelism + 1 : parallelism);
+                dataSource.setMinimumIdle(0);
+                dataSource.setIdleTimeout(60_000);
+                dataSource.setReadOnly(true);
+                // Postgres only streams with a fetch size inside a transaction
+                dataSource.setAutoCommit(false);
+                JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+                jdbc.setFetchSize(fetchSize);
+                scanDataSources.add(dataSource);
+                scanJdbc.add(jdbc);
+            }
+        }
+        return scanDataSources.get(0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.account.reconciliation;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Bookkeeping for {@link ReconciliationJob}: runs, per-range checkpoints and the drift report.
+ */
+@Repository
+public class ReconciliationRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Optional<Run> findUnfinishedRun() {
+        List<long[]> runs = jdbcTemplate.query(
+                "SELECT id, max_account_id, range_size FROM reconciliation_run WHERE status = 'RUNNING' ORDER BY id DESC LIMIT 1",
+                (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2), rs.getInt(3)});
+        if (runs.isEmpty()) return Optional.empty();
+
+        long[] run = runs.get(0);
+        Map<Integer, Long> maxAccountIds = new TreeMap<>();
+        jdbcTemplate.query("SELECT shard, max_account_id FROM reconciliation_run_shard WHERE run_id = ?", rs -> {
+            maxAccountIds.put(rs.getInt(1), rs.getLong(2));
+        }, run[0]);
+        // Started before reconciliation covered every shard
+        if (maxAccountIds.isEmpty()) maxAccountIds.put(0, run[1]);
+        return Optional.of(new Run(run[0], maxAccountIds, (int) run[2]));
+    }
+
+    // Largest account id per shard at the start of the run
+    @Transactional
+    public Run createRun(Map<Integer, Long> maxAccountIds, int rangeSize) {
+        long overall = maxAccountIds.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        Long id = jdbcTemplate.queryForObject(
+                "INSERT INTO reconciliation_run (max_account_id, range_size) VALUES (?, ?) RETURNING id",
+                Long.class, overall, rangeSize);
+        maxAccountIds.forEach((shard, maxAccountId) -> jdbcTemplate.update(
+                "INSERT INTO reconciliation_run_shard (run_id, shard, max_account_id) VALUES (?, ?, ?)",
+                id, shard, maxAccountId));
+        return new Run(id, maxAccountIds, rangeSize);
+    }
+
+    public Set<Long> finishedRanges(long runId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT range_start FROM reconciliation_range WHERE run_id = ?", Long.class, runId));
+    }
+
+    // The range's drift rows and its checkpoint commit together
+    @Transactional
+    public void saveRange(long runId, long rangeStart, long accountsChecked, List<Drift> drifts) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO reconciliation_drift (run_id, account_id, balance, ledger_balance, drift) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (run_id, account_id) DO NOTHING",
+                drifts, 500, (ps, drift) -> {
+                    ps.setLong(1, runId);
+                    ps.setLong(2, drift.getAccountId());
+                    ps.setBigDecimal(3, drift.getBalance());
+                    ps.setBigDecimal(4, drift.getLedgerBalance());
+                    ps.setBigDecimal(5, drift.getDrift());
+                });
+        jdbcTemplate.update(
+                "INSERT INTO reconciliation_range (run_id, range_start, accounts_checked, drifted_accounts) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (run_id, range_start) DO NOTHING",
+                runId, rangeStart, accountsChecked, drifts.size());
+    }
+
+    public List<Long> driftedAccountIds(long runId) {
+        return jdbcTemplate.queryForList(
+                "SELECT account_id FROM reconciliation_drift WHERE run_id = ? ORDER BY account_id", Long.class, runId);
+    }
+
+    // Confirmation pass: drop accounts that agree now, refresh the figures of the rest
+    @Transactional
+    public void confirmDrifts(long runId, List<Long> resolved, List<Drift> remaining) {
+        jdbcTemplate.batchUpdate("DELETE FROM reconciliation_drift WHERE run_id = ? AND account_id = ?",
+                resolved, 500, (ps, accountId) -> {
+                    ps.setLong(1, runId);
+                    ps.setLong(2, accountId);
+                });
+        jdbcTemplate.batchUpdate(
+                "UPDATE reconciliation_drift SET balance = ?, ledger_balance = ?, drift = ? WHERE run_id = ? AND account_id = ?",
+                remaining, 500, (ps, drift) -> {
+                    ps.setBigDecimal(1, drift.getBalance());
+                    ps.setBigDecimal(2, drift.getLedgerBalance());
+                    ps.setBigDecimal(3, drift.getDrift());
+                    ps.setLong(4, runId);
+                    ps.setLong(5, drift.getAccountId());
+                });
+    }
+
+    // Totals come from the checkpoints and the confirmed report, so a resumed run counts everything once
+    public Summary finishRun(long runId) {
+        jdbcTemplate.update(
+                "UPDATE reconciliation_run SET status = 'FINISHED', finished_at = NOW(), " +
+                "accounts_checked = (SELECT COALESCE(SUM(accounts_checked), 0) FROM reconciliation_range WHERE run_id = ?), " +
+                "drifted_accounts = (SELECT COUNT(*) FROM reconciliation_drift WHERE run_id = ?), " +
+                "total_abs_drift = (SELECT COALESCE(SUM(ABS(drift)), 0) FROM reconciliation_drift WHERE run_id = ?) " +
+                "WHERE id = ?",
+                runId, runId, runId, runId);
+        return jdbcTemplate.queryForObject(
+                "SELECT accounts_checked, drifted_accounts, total_abs_drift FROM reconciliation_run WHERE id = ?",
+                (rs, rowNum) -> new Summary(rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3)), runId);
+    }
+
+    public List<Drift> largestDrifts(long runId, int limit) {
+        return jdbcTemplate.query(
+                "SELECT account_id, balance, ledger_balance FROM reconciliation_drift WHERE run_id = ? " +
+                "ORDER BY ABS(drift) DESC LIMIT ?",
+                (rs, rowNum) -> new Drift(rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3)), runId, limit);
+    }
+
+    public static class Run {
+        private final long id;
+        private final Map<Integer, Long> maxAccountIds;
+        private final int rangeSize;
+
+        public Run(long id, Map<Integer, Long> maxAccountIds, int rangeSize) {
+            this.id = id;
+            this.maxAccountIds = maxAccountIds;
+            this.rangeSize = rangeSize;
+        }
+
+        public long getId() { return id; }
+        public Map<Integer, Long> getMaxAccountIds() { return maxAccountIds; }
+        public int getRangeSize() { return rangeSize; }
+    }
+
+    public static class Drift {
+        private final long accountId;
+        private final BigDecimal balance;
+        private final BigDecimal ledgerBalance;
+
+        public Drift(long accountId, BigDecimal balance, BigDecimal ledgerBalance) {
+            this.accountId = accountId;
+            this.balance = balance;
+            this.ledgerBalance = ledgerBalance;
+        }
+
+        public long getAccountId() { return accountId; }
+        public BigDecimal getBalance() { return balance; }
+        public BigDecimal getLedgerBalance() { return ledgerBalance; }
+        public BigDecimal getDrift() { return balance.subtract(ledgerBalance); }
+    }
+
+    public static class Summary {
+        private final long accountsChecked;
+        private final long driftedAccounts;
+        private final BigDecimal totalAbsDrift;
+
+        public Summary(long accountsChecked, long driftedAccounts, BigDecimal totalAbsDrift) {
+            this.accountsChecked = accountsChecked;
+            this.driftedAccounts = driftedAccounts;
+            this.totalAbsDrift = totalAbsDrift;
+        }
+
+        public long getAccountsChecked() { return accountsChecked; }
+        public long getDriftedAccounts() { return driftedAccounts; }
+        public BigDecimal getTotalAbsDrift() { return totalAbsDrift; }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.account.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+
+/**
+ * processed_payment_session on whichever shard is current.
+ */
+@Repository
+public class ProcessedSessionRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // True the first time for a session; a concurrent claim waits on the key and then gets false
+    public boolean claim(String sessionId, Long accountId, BigDecimal amount) {
+        return jdbcTemplate.update(
+                "INSERT INTO processed_payment_session (session_id, account_id, amount) VALUES (?, ?, ?) " +
+                "ON CONFLICT (session_id) DO NOTHING", sessionId, accountId, amount) == 1;
+    }
+}
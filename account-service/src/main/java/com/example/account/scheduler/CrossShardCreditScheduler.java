@@ -0,0 +1,62 @@
+package com.example.account.scheduler;
+
+import com.example.account.service.PostingService;
+import com.example.account.shard.CrossShardCreditRepository;
+import com.example.account.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Finishes cross-shard credits whose second step didn't complete during the posting
+ * (receiving shard unreachable, instance stopped in between). Applying a credit is
+ * idempotent, so racing the original request or another instance is harmless.
+ */
+@Component
+public class CrossShardCreditScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(CrossShardCreditScheduler.class);
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private CrossShardCreditRepository creditRepository;
+
+    @Autowired
+    private PostingService postingService;
+
+    // Leave credits this young to the request that created them
+    @Value("${sharding.credit-retry-after-ms:30000}")
+    private long retryAfterMs;
+
+    @Value("${sharding.credit-retry-batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${sharding.credit-retry-interval-ms:10000}")
+    public void retryPendingCredits() {
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            int home = shard;
+            List<CrossShardCreditRepository.Credit> pending = router.onShard(home, () ->
+                    creditRepository.findPending(Instant.now().minusMillis(retryAfterMs), batchSize));
+            for (CrossShardCreditRepository.Credit credit : pending) {
+                try {
+                    postingService.applyCredit(credit);
+                    router.onShard(home, () -> {
+                        creditRepository.complete(credit.getId());
+                        return null;
+                    });
+                    log.info("Applied cross-shard credit {} to account {}", credit.getId(), credit.getAccountId());
+                } catch (Exception e) {
+                    log.error("Cross-shard credit {} still pending: {}", credit.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.account.security;
+
+import com.example.account.model.User;
+import com.example.account.repository.UserRepository;
+import com.example.account.shard.ShardRouter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Users by email and by id, so authenticating a request and then looking up the caller
+ * doesn't query the users table twice.
+ *
+ * The first lookup in a request is pinned to that request, later ones in the same request
+ * get the same user without touching the shared cache. The shared cache is bounded and
+ * entries expire after user-cache.ttl-seconds, which is how changes made by another
+ * instance show up; changes made here evict at once (see {@link UserCacheInvalidator}).
+ * Both caches report to actuator under cache.* with cache=user.*, and request-level hits
+ * under user.cache.request.hits.
+ */
+@Component
+public class UserCache {
+
+    private static final String REQUEST_ATTRIBUTE = UserCache.class.getName() + ".users";
+
+    private final UserRepository userRepository;
+    private final ShardRouter router;
+    private final Cache<String, User> byEmail;
+    private final Cache<Long, User> byId;
+    private final Counter requestHits;
+
+    public UserCache(UserRepository userRepository,
+                     ShardRouter router,
+                     MeterRegistry meterRegistry,
+                     @Value("${user-cache.max-entries:100000}") long maxEntries,
+                     @Value("${user-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.router = router;
+        this.byEmail = build(maxEntries, ttlSeconds);
+        this.byId = build(maxEntries, ttlSeconds);
+        this.requestHits = Counter.builder("user.cache.request.hits").register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, byEmail, "user.email");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "user.id");
+    }
+
+    private static <K, V> Cache<K, V> build(long maxEntries, long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public Optional<User> findByEmail(String email) {
+        return find("email:" + email, () -> {
+            User cached = byEmail.getIfPresent(email);
+            return cached != null ? cached : load(router.onShard(0, () -> userRepository.findByEmail(email)));
+        });
+    }
+
+    public Optional<User> findById(Long id) {
+        return find("id:" + id, () -> {
+            User cached = byId.getIfPresent(id);
+            return cached != null ? cached : load(router.onShard(0, () -> userRepository.findById(id)));
+        });
+    }
+
+    // Also drops the entry under the email the user had before, should that have changed
+    public void evict(User user) {
+        if (user.getId() != null) {
+            User previous = byId.getIfPresent(user.getId());
+            if (previous != null) byEmail.invalidate(previous.getEmail());
+            byId.invalidate(user.getId());
+        }
+        if (user.getEmail() != null) byEmail.invalidate(user.getEmail());
+
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) request.removeAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    private Optional<User> find(String key, Supplier<User> lookup) {
+        Map<String, User> pinned = requestUsers();
+        if (pinned != null && pinned.containsKey(key)) {
+            requestHits.increment();
+            return Optional.of(pinned.get(key));
+        }
+        // Callers get their own copy so nothing they do can leak into the shared cache
+        User user = lookup.get();
+        if (user == null) return Optional.empty();
+        User copy = copy(user);
+        if (pinned != null) {
+            pinned.put("email:" + copy.getEmail(), copy);
+            pinned.put("id:" + copy.getId(), copy);
+        }
+        return Optional.of(copy);
+    }
+
+    // Unknown users aren't cached, so a registration is visible straight away
+    private User load(Optional<User> found) {
+        if (found.isEmpty()) return null;
+        User user = copy(found.get());
+        byEmail.put(user.getEmail(), user);
+        byId.put(user.getId(), user);
+        return user;
+    }
+
+    // Null outside a request (schedulers, startup)
+    @SuppressWarnings("unchecked")
+    private static Map<String, User> requestUsers() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request == null) return null;
+        Map<String, User> users = (Map<String, User>) request.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (users == null) {
+            users = new HashMap<>();
+            request.setAttribute(REQUEST_ATTRIBUTE, users, RequestAttributes.SCOPE_REQUEST);
+        }
+        return users;
+    }
+
+    private static User copy(User user) {
+        return User.builder()
+                .id(user.getId())
+                .name(user.getName())
+                .email(user.getEmail())
+                .password(user.getPassword())
+                .role(user.getRole())
+                .emailVerified(user.getEmailVerified())
+                .createdAt(user.getCreatedAt())
+                .updatedAt(user.getUpdatedAt())
+                .build();
+    }
+}
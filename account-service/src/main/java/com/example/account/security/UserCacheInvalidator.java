@@ -0,0 +1,39 @@
+package com.example.account.security;
+
+import com.example.account.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA listener on {@link User} that evicts it from the {@link UserCache} whenever it is
+ * updated or deleted. Evicts again after commit, since a lookup in between would still
+ * read (and cache) the old row.
+ */
+@Component
+public class UserCacheInvalidator {
+
+    // Lazy: Hibernate asks for this listener while the repositories UserCache needs are still being built
+    @Autowired
+    @Lazy
+    private UserCache userCache;
+
+    @PostUpdate
+    @PostRemove
+    public void evict(User user) {
+        userCache.evict(user);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userCache.evict(user);
+                }
+            });
+        }
+    }
+}
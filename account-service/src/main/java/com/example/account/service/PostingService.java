@@ -0,0 +1,237 @@
+package com.example.account.service;
+
+import com.example.account.dto.PostingRequest;
+import com.example.account.dto.PostingResponse;
+import com.example.account.exception.PostingRejectedException;
+import com.example.account.model.Account;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.ProcessedSessionRepository;
+import com.example.account.shard.CrossShardCreditRepository;
+import com.example.account.shard.ShardMap;
+import com.example.account.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityNotFoundException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+@Service
+public class PostingService {
+
+    private static final Logger log = LoggerFactory.getLogger(PostingService.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private CrossShardCreditRepository creditRepository;
+
+    @Autowired
+    private ProcessedSessionRepository processedSessionRepository;
+
+    /**
+     * Apply the balance deltas of all legs. Legs on the caller's shard are applied inside
+     * one DB transaction; rows are locked in ascending id order so two postings touching
+     * the same accounts (e.g. A->B and B->A) can never deadlock each other. Once locked,
+     * the legs are applied in request order and each one must leave its account
+     * non-negative, so a debit cannot lean on a credit that comes after it. Every leg
+     * reports the balance right after it was applied.
+     *
+     * A counterparty on another shard is credited in two steps: a cross_shard_credit row
+     * commits together with the caller's legs, then the credit is applied on the other shard
+     * (and retried by CrossShardCreditScheduler if that fails). Counterparty legs only credit,
+     * so nothing can reject the posting once the first step has committed.
+     *
+     * A leg naming a payment session claims it in the same transaction, so a session is
+     * credited at most once however many times it is submitted.
+     *
+     * A posting with a counterparty leg must balance: whatever it credits to someone else
+     * has to come out of the caller's own accounts in the same posting.
+     */
+    public PostingResponse post(List<PostingRequest.Leg> legs, Long userId) {
+        requireBalanced(legs);
+        int home = shardMap.shardForUser(userId);
+        List<Long> legAccountIds = new ArrayList<>(legs.size());
+        Set<Long> localAccountIds = new TreeSet<>();
+        Map<Long, BigDecimal> remoteCredits = new LinkedHashMap<>();
+        Set<Long> ownershipRequired = new HashSet<>();
+
+        for (PostingRequest.Leg leg : legs) {
+            if (leg.isCounterparty() && leg.getDelta().signum() < 0) {
+                throw new PostingRejectedException(HttpStatus.BAD_REQUEST, "Counterparty legs can only credit an account");
+            }
+            Long accountId = resolveAccountId(leg);
+            if (ShardRouter.shardOfAccount(accountId) != home) {
+                // All of the caller's own accounts are on the caller's shard
+                if (!leg.isCounterparty()) {
+                    throw new PostingRejectedException(HttpStatus.FORBIDDEN, "You don't have permission to update this account");
+                }
+                remoteCredits.merge(accountId, leg.getDelta(), BigDecimal::add);
+            } else {
+                if (!leg.isCounterparty()) {
+                    ownershipRequired.add(accountId);
+                }
+                localAccountIds.add(accountId);
+            }
+            legAccountIds.add(accountId);
+        }
+
+        // Check the other side exists before taking the money
+        Map<Long, Account> accounts = new HashMap<>();
+        List<CrossShardCreditRepository.Credit> credits = new ArrayList<>();
+        for (Map.Entry<Long, BigDecimal> entry : remoteCredits.entrySet()) {
+            Long accountId = entry.getKey();
+            int shard = ShardRouter.shardOfAccount(accountId);
+            Account account = router.onShard(shard, () -> accountRepository.findById(accountId))
+                    .orElseThrow(() -> new EntityNotFoundException("Account not found: " + accountId));
+            accounts.put(accountId, account);
+            credits.add(new CrossShardCreditRepository.Credit(UUID.randomUUID(), shard, accountId, entry.getValue()));
+        }
+
+        BigDecimal[] balances = new BigDecimal[legs.size()];
+        accounts.putAll(router.inTransactionOnShard(home, () -> {
+            claimPaymentSessions(legs, legAccountIds);
+            Map<Long, Account> applied = applyLegs(legs, legAccountIds, localAccountIds, ownershipRequired,
+                    userId, balances);
+            if (!credits.isEmpty()) creditRepository.enqueue(credits);
+            return applied;
+        }));
+
+        // Remote legs start from the balance just before the (single) credit row update
+        Map<Long, BigDecimal> remoteRunning = new HashMap<>();
+        for (CrossShardCreditRepository.Credit credit : credits) {
+            try {
+                Account account = applyCredit(credit);
+                accounts.put(credit.getAccountId(), account);
+                remoteRunning.put(credit.getAccountId(), account.getBalance().subtract(credit.getAmount()));
+                router.onShard(home, () -> {
+                    creditRepository.complete(credit.getId());
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.warn("Cross-shard credit {} not applied yet, will retry: {}", credit.getId(), e.getMessage());
+            }
+        }
+
+        List<PostingResponse.LegResult> results = new ArrayList<>(legAccountIds.size());
+        for (int i = 0; i < legs.size(); i++) {
+            Long accountId = legAccountIds.get(i);
+            Account account = accounts.get(accountId);
+            BigDecimal balance = balances[i];
+            if (!localAccountIds.contains(accountId)) {
+                // Unknown until the retried credit lands
+                BigDecimal delta = legs.get(i).getDelta();
+                balance = remoteRunning.computeIfPresent(accountId, (id, running) -> running.add(delta));
+            }
+            results.add(new PostingResponse.LegResult(account.getId(), account.getAccountNumber(),
+                    account.getOwnerName(), account.getUserId(), balance));
+        }
+        return new PostingResponse(results);
+    }
+
+    /**
+     * Second step of a cross-shard credit, in one transaction on the receiving shard.
+     * Applying the same credit again is a no-op.
+     */
+    public Account applyCredit(CrossShardCreditRepository.Credit credit) {
+        return router.inTransactionOnShard(credit.getTargetShard(), () -> {
+            Account account = accountRepository.findByIdForUpdate(credit.getAccountId())
+                    .orElseThrow(() -> new EntityNotFoundException("Account not found: " + credit.getAccountId()));
+            if (!creditRepository.markApplied(credit.getId())) {
+                return account;
+            }
+            account.setBalance(account.getBalance().add(credit.getAmount()));
+            return accountRepository.save(account);
+        });
+    }
+
+    private void claimPaymentSessions(List<PostingRequest.Leg> legs, List<Long> legAccountIds) {
+        for (int i = 0; i < legs.size(); i++) {
+            PostingRequest.Leg leg = legs.get(i);
+            if (leg.getPaymentSessionId() == null) continue;
+            if (!processedSessionRepository.claim(leg.getPaymentSessionId(), legAccountIds.get(i), leg.getDelta())) {
+                throw new PostingRejectedException(HttpStatus.CONFLICT,
+                        "Payment session already processed: " + leg.getPaymentSessionId());
+            }
+        }
+    }
+
+    private Map<Long, Account> applyLegs(List<PostingRequest.Leg> legs, List<Long> legAccountIds,
+                                         Set<Long> localAccountIds, Set<Long> ownershipRequired,
+                                         Long userId, BigDecimal[] balances) {
+        Map<Long, Account> locked = new HashMap<>();
+        for (Long accountId : localAccountIds) {
+            Account account = accountRepository.findByIdForUpdate(accountId)
+                    .orElseThrow(() -> new EntityNotFoundException("Account not found: " + accountId));
+
+            if (ownershipRequired.contains(accountId) && !userId.equals(account.getUserId())) {
+                throw new PostingRejectedException(HttpStatus.FORBIDDEN, "You don't have permission to update this account");
+            }
+            locked.put(accountId, account);
+        }
+
+        for (int i = 0; i < legs.size(); i++) {
+            Account account = locked.get(legAccountIds.get(i));
+            if (account == null) continue;
+
+            BigDecimal newBalance = account.getBalance().add(legs.get(i).getDelta());
+            if (newBalance.signum() < 0) {
+                throw new PostingRejectedException(HttpStatus.BAD_REQUEST,
+                        "Insufficient balance. Current: " + account.getBalance());
+            }
+            account.setBalance(newBalance);
+            balances[i] = newBalance;
+        }
+
+        Map<Long, Account> updated = new HashMap<>();
+        for (Account account : locked.values()) {
+            updated.put(account.getId(), accountRepository.save(account));
+        }
+        return updated;
+    }
+
+    private static void requireBalanced(List<PostingRequest.Leg> legs) {
+        boolean counterparty = false;
+        BigDecimal sum = BigDecimal.ZERO;
+        for (PostingRequest.Leg leg : legs) {
+            counterparty |= leg.isCounterparty();
+            sum = sum.add(leg.getDelta());
+        }
+        if (counterparty && sum.signum() != 0) {
+            throw new PostingRejectedException(HttpStatus.BAD_REQUEST,
+                    "Counterparty credits must be matched by debits on your own accounts");
+        }
+    }
+
+    private Long resolveAccountId(PostingRequest.Leg leg) {
+        if (leg.getAccountId() != null) {
+            return leg.getAccountId();
+        }
+        if (leg.getAccountNumber() == null || leg.getAccountNumber().isBlank()) {
+            throw new PostingRejectedException(HttpStatus.BAD_REQUEST, "Each leg needs an accountId or accountNumber");
+        }
+        // The number says which shard to ask
+        return router.onShard(ShardRouter.shardOfAccountNumber(leg.getAccountNumber()),
+                        () -> accountRepository.findByAccountNumber(leg.getAccountNumber()))
+                .map(Account::getId)
+                .orElseThrow(() -> new EntityNotFoundException("Account not found: " + leg.getAccountNumber()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.account.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * cross_shard_credit on the paying shard and cross_shard_credit_applied on the receiving
+ * one. Every method runs on whichever shard is current.
+ */
+@Repository
+public class CrossShardCreditRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void enqueue(List<Credit> credits) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO cross_shard_credit (id, target_shard, account_id, amount) VALUES (?, ?, ?, ?)",
+                credits, credits.size(), (ps, credit) -> {
+                    ps.setObject(1, credit.getId());
+                    ps.setInt(2, credit.getTargetShard());
+                    ps.setLong(3, credit.getAccountId());
+                    ps.setBigDecimal(4, credit.getAmount());
+                });
+    }
+
+    public List<Credit> findPending(Instant createdBefore, int limit) {
+        return jdbcTemplate.query(
+                "SELECT id, target_shard, account_id, amount FROM cross_shard_credit " +
+                "WHERE status = 'PENDING' AND created_at < ? ORDER BY created_at LIMIT ?",
+                (rs, i) -> new Credit(rs.getObject("id", UUID.class), rs.getInt("target_shard"),
+                        rs.getLong("account_id"), rs.getBigDecimal("amount")),
+                Timestamp.from(createdBefore), limit);
+    }
+
+    public void complete(UUID id) {
+        jdbcTemplate.update("UPDATE cross_shard_credit SET status = 'COMPLETED', completed_at = NOW() WHERE id = ?", id);
+    }
+
+    // True the first time for a given credit; a concurrent retry waits on the key and then gets false
+    public boolean markApplied(UUID id) {
+        return jdbcTemplate.update(
+                "INSERT INTO cross_shard_credit_applied (id) VALUES (?) ON CONFLICT (id) DO NOTHING", id) == 1;
+    }
+
+    public static class Credit {
+        private final UUID id;
+        private final int targetShard;
+        private final long accountId;
+        private final BigDecimal amount;
+
+        public Credit(UUID id, int targetShard, long accountId, BigDecimal amount) {
+            this.id = id;
+            this.targetShard = targetShard;
+            this.accountId = accountId;
+            this.amount = amount;
+        }
+
+        public UUID getId() { return id; }
+        public int getTargetShard() { return targetShard; }
+        public long getAccountId() { return accountId; }
+        public BigDecimal getAmount() { return amount; }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.account.shard;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * user id -> shard, kept in the user_shard table on shard 0. A user's shard never changes,
+ * so lookups are cached without expiry. Users registered before sharding have no row and
+ * stay on shard 0.
+ *
+ * New users are spread by id over all configured shards; adding a shard only affects
+ * users registered after it was added.
+ */
+@Component
+public class ShardMap {
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Cache<Long, Integer> shards = Caffeine.newBuilder()
+            .maximumSize(1_000_000)
+            .build();
+
+    public int shardForUser(Long userId) {
+        return shards.get(userId, id -> router.onShard(0, () -> {
+            List<Integer> found = jdbcTemplate.queryForList(
+                    "SELECT shard FROM user_shard WHERE user_id = ?", Integer.class, id);
+            return found.isEmpty() ? 0 : found.get(0);
+        }));
+    }
+
+    // Called once at registration, before the user's first account is created
+    public int assign(Long userId) {
+        int shard = (int) (userId % router.shardCount());
+        router.onShard(0, () -> jdbcTemplate.update(
+                "INSERT INTO user_shard (user_id, shard) VALUES (?, ?) ON CONFLICT (user_id) DO NOTHING", userId, shard));
+        shards.invalidate(userId);
+        return shardForUser(userId);
+    }
+}
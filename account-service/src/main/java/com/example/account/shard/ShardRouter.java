@@ -0,0 +1,100 @@
+package com.example.account.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Where account data lives. Users are assigned a shard once (see {@link ShardMap}) and all
+ * of their accounts are created there; account ids and account numbers both carry their
+ * shard, so a lookup by either goes straight to one database.
+ *
+ * Work runs on a shard by wrapping it in {@link #onShard}; anything outside runs on shard 0.
+ */
+@Component
+public class ShardRouter {
+
+    // Account ids on shard n start at n << 40, so the shard is the id's top bits
+    public static final int ACCOUNT_ID_SHARD_SHIFT = 40;
+
+    // PL-S<shard>-<8 digits>. Numbers issued before sharding (PL-<year>-<6 digits>) are all on shard 0.
+    private static final Pattern SHARDED_NUMBER = Pattern.compile("PL-S(\\d{2})-\\d{8}");
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private TransactionTemplate readOnlyTemplate;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnlyTemplate.setReadOnly(true);
+    }
+
+    public int shardCount() {
+        return shardRoutingDataSource.getShardCount();
+    }
+
+    public static int shardOfAccount(long accountId) {
+        return (int) (accountId >>> ACCOUNT_ID_SHARD_SHIFT);
+    }
+
+    public static int shardOfAccountNumber(String accountNumber) {
+        Matcher matcher = SHARDED_NUMBER.matcher(accountNumber);
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    public static String newAccountNumber(int shard) {
+        return String.format("PL-S%02d-%08d", shard, ThreadLocalRandom.current().nextInt(100_000_000));
+    }
+
+    /**
+     * Run work with every statement going to the given shard. Must be entered before the
+     * transaction it belongs to starts; a transaction already running stays where it is.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (shard < 0 || shard >= shardCount()) {
+            // Only reachable through a made-up id or account number
+            throw new EntityNotFoundException("Account not found");
+        }
+        Integer previous = ShardRoutingDataSource.current();
+        if (TransactionSynchronizationManager.isActualTransactionActive() && shard != (previous != null ? previous : 0)) {
+            throw new IllegalStateException("Cannot switch to shard " + shard + " inside a transaction");
+        }
+        ShardRoutingDataSource.set(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardRoutingDataSource.set(previous);
+        }
+    }
+
+    // Read-only transaction on the shard; on shard 0 that can be served by a read replica
+    public <T> T readOnShard(int shard, Supplier<T> work) {
+        return onShard(shard, () -> readOnlyTemplate.execute(status -> work.get()));
+    }
+
+    public <T> T inTransactionOnShard(int shard, Supplier<T> work) {
+        return onShard(shard, () -> transactionTemplate.execute(status -> work.get()));
+    }
+
+    public void forEachShard(Runnable work) {
+        for (int shard = 0; shard < shardCount(); shard++) {
+            onShard(shard, () -> {
+                work.run();
+                return null;
+            });
+        }
+    }
+}
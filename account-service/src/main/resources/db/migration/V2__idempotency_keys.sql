@@ -0,0 +1,13 @@
+-- Idempotency keys for payment endpoints (verify-session, deposit-direct).
+-- A row with a NULL response_status is a claim held by a request that is still running.
+CREATE TABLE IF NOT EXISTS payment_idempotency_keys (
+    idempotency_key VARCHAR(512) PRIMARY KEY,
+    request_hash VARCHAR(64) NOT NULL,
+    response_status INT,
+    content_type VARCHAR(255),
+    response_body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_payment_idempotency_created_at ON payment_idempotency_keys(created_at);
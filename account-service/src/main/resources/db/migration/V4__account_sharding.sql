@@ -0,0 +1,29 @@
+-- Sharding by user id. Every shard database runs the same migrations; which tables are
+-- used where is up to the service.
+
+-- Shard map, used on shard 0 only. Users without a row are on shard 0.
+CREATE TABLE IF NOT EXISTS user_shard (
+    user_id BIGINT PRIMARY KEY,
+    shard INT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+-- Credits to accounts on another shard, written on the paying side in the same transaction
+-- as the debit. PENDING until the credit has been applied on the target shard.
+CREATE TABLE IF NOT EXISTS cross_shard_credit (
+    id UUID PRIMARY KEY,
+    target_shard INT NOT NULL,
+    account_id BIGINT NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_cross_shard_credit_pending ON cross_shard_credit(created_at) WHERE status = 'PENDING';
+
+-- On the receiving side: credits already applied, so a retried credit is applied once
+CREATE TABLE IF NOT EXISTS cross_shard_credit_applied (
+    id UUID PRIMARY KEY,
+    applied_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
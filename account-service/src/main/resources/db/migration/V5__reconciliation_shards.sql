@@ -0,0 +1,9 @@
+-- Reconciliation scans every shard; the id range covered on each is fixed when the run
+-- starts. Used on shard 0 only, like the rest of the reconciliation bookkeeping. Runs with
+-- no rows here cover shard 0 up to reconciliation_run.max_account_id.
+CREATE TABLE IF NOT EXISTS reconciliation_run_shard (
+    run_id BIGINT NOT NULL REFERENCES reconciliation_run(id) ON DELETE CASCADE,
+    shard INT NOT NULL,
+    max_account_id BIGINT NOT NULL,
+    PRIMARY KEY (run_id, shard)
+);
@@ -0,0 +1,9 @@
+-- One row per Stripe checkout session that has been credited. Claimed in the same
+-- transaction as the posting that credits it (on the payer's shard), so the redirect and
+-- the webhook can't both credit one session.
+CREATE TABLE IF NOT EXISTS processed_payment_session (
+    session_id VARCHAR(255) PRIMARY KEY,
+    account_id BIGINT NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL,
+    processed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
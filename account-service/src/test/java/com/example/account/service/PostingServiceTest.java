@@ -0,0 +1,48 @@
+package com.example.account.service;
+
+import com.example.account.dto.PostingRequest;
+import com.example.account.exception.ErrorResponse;
+import com.example.account.exception.GlobalExceptionHandler;
+import com.example.account.exception.PostingRejectedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PostingServiceTest {
+
+    @Test
+    void loneCounterpartyCreditIsRejected() {
+        PostingService service = new PostingService();
+        List<PostingRequest.Leg> legs = List.of(leg("ACC-OTHER", "500.00", true));
+
+        PostingRejectedException ex = assertThrows(PostingRejectedException.class, () -> service.post(legs, 1L));
+        ResponseEntity<ErrorResponse> response = new GlobalExceptionHandler()
+                .handlePostingRejected(ex, new MockHttpServletRequest("POST", "/accounts/postings"));
+        assertEquals(400, response.getStatusCodeValue());
+    }
+
+    @Test
+    void counterpartyCreditLargerThanDebitIsRejected() {
+        PostingService service = new PostingService();
+        List<PostingRequest.Leg> legs = List.of(
+                leg("ACC-MINE", "-10.00", false),
+                leg("ACC-OTHER", "500.00", true));
+
+        PostingRejectedException ex = assertThrows(PostingRejectedException.class, () -> service.post(legs, 1L));
+        assertEquals(400, ex.getStatus().value());
+    }
+
+    private static PostingRequest.Leg leg(String accountNumber, String delta, boolean counterparty) {
+        PostingRequest.Leg leg = new PostingRequest.Leg();
+        leg.setAccountNumber(accountNumber);
+        leg.setDelta(new BigDecimal(delta));
+        leg.setCounterparty(counterparty);
+        return leg;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.events;
+
+// Bytes that are not a readable event: wrong header, unknown schema, or truncated
+public class EventFormatException extends RuntimeException {
+    public EventFormatException(String message) {
+        super(message);
+    }
+
+    public EventFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
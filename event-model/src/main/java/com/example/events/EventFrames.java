@@ -0,0 +1,54 @@
+package com.example.events;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several encoded events packed into one record, each preceded by its length as a varint.
+ * Used where one broker record carries many events (Kinesis aggregation).
+ */
+public final class EventFrames {
+
+    private EventFrames() {
+    }
+
+    // Bytes one event takes up inside a packed record
+    public static int frameSize(byte[] event) {
+        return CodedOutputStream.computeUInt32SizeNoTag(event.length) + event.length;
+    }
+
+    public static byte[] pack(List<byte[]> events) {
+        int size = 0;
+        for (byte[] event : events) size += frameSize(event);
+
+        byte[] bytes = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        try {
+            for (byte[] event : events) {
+                out.writeUInt32NoTag(event.length);
+                out.writeRawBytes(event);
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes;
+    }
+
+    public static List<byte[]> unpack(byte[] bytes) {
+        List<byte[]> events = new ArrayList<>();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        try {
+            while (!in.isAtEnd()) {
+                events.add(in.readRawBytes(in.readUInt32()));
+            }
+        } catch (IOException e) {
+            throw new EventFormatException("Malformed event frame", e);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.events;
+
+public enum EventType {
+    DEPOSIT(1),
+    WITHDRAW(2),
+    TRANSFER(3);
+
+    private final int number;
+
+    EventType(int number) {
+        this.number = number;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public static EventType forNumber(int number) {
+        switch (number) {
+            case 1: return DEPOSIT;
+            case 2: return WITHDRAW;
+            case 3: return TRANSFER;
+            default: throw new UnknownEventTypeException(number);
+        }
+    }
+
+    public static EventType parse(String value) {
+        try {
+            return EventType.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new EventFormatException("Unknown event type " + value);
+        }
+    }
+}
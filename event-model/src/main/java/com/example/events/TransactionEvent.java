@@ -0,0 +1,53 @@
+package com.example.events;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A balance change published on the transactions stream. Every event names the account
+ * it happened on; transfers also carry the destination account number.
+ */
+public final class TransactionEvent {
+    private final EventType type;
+    private final String user;
+    private final long accountId;
+    private final BigDecimal amount;
+    private final String counterpartyAccountNumber;
+    private final Instant occurredAt;
+
+    public TransactionEvent(EventType type, String user, long accountId, BigDecimal amount,
+                            String counterpartyAccountNumber, Instant occurredAt) {
+        this.type = type;
+        this.user = user;
+        this.accountId = accountId;
+        this.amount = amount;
+        this.counterpartyAccountNumber = counterpartyAccountNumber;
+        this.occurredAt = occurredAt;
+    }
+
+    public static TransactionEvent deposit(String user, long accountId, BigDecimal amount) {
+        return new TransactionEvent(EventType.DEPOSIT, user, accountId, amount, null, Instant.now());
+    }
+
+    public static TransactionEvent withdrawal(String user, long accountId, BigDecimal amount) {
+        return new TransactionEvent(EventType.WITHDRAW, user, accountId, amount, null, Instant.now());
+    }
+
+    public static TransactionEvent transfer(String user, long fromAccountId, String toAccountNumber, BigDecimal amount) {
+        return new TransactionEvent(EventType.TRANSFER, user, fromAccountId, amount, toAccountNumber, Instant.now());
+    }
+
+    public EventType getType() { return type; }
+    public String getUser() { return user; }
+    public long getAccountId() { return accountId; }
+    public BigDecimal getAmount() { return amount; }
+    public String getCounterpartyAccountNumber() { return counterpartyAccountNumber; }
+    public Instant getOccurredAt() { return occurredAt; }
+
+    @Override
+    public String toString() {
+        return type + " " + amount.toPlainString() + " on account " + accountId
+                + (counterpartyAccountNumber != null ? " to " + counterpartyAccountNumber : "")
+                + " by " + user + " at " + occurredAt;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.events;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+
+/**
+ * Binary encoding of {@link TransactionEvent}: a 10-byte header followed by the
+ * protobuf-encoded body described in transaction_event.proto.
+ *
+ * The header is the two marker bytes C3 01 and the schema fingerprint (first 8 bytes of
+ * SHA-256 over {@link #SCHEMA}, little-endian), so a reader can tell which schema wrote a
+ * message before touching the body. Fields are read and written by hand with the protobuf
+ * runtime's coded streams - no generated classes, no reflection.
+ *
+ * Schema changes must stay wire compatible (new fields get new numbers, nothing is
+ * renumbered), so any fingerprint is decoded: fields this reader doesn't know are skipped.
+ * An event whose type is newer than this reader raises {@link UnknownEventTypeException},
+ * which consumers skip rather than treat as a broken message.
+ */
+public final class TransactionEventCodec {
+
+    // Canonical form of the current schema; changing it changes the fingerprint
+    public static final String SCHEMA = "primeledger.events.v1.TransactionEvent{"
+            + "1:type:enum,2:user:string,3:account_id:int64,4:amount_unscaled:sint64,"
+            + "5:amount_scale:int32,6:counterparty_account_number:string,7:occurred_at_millis:int64}";
+
+    public static final long FINGERPRINT = fingerprint(SCHEMA);
+
+    private static final byte MARKER_0 = (byte) 0xC3;
+    private static final byte MARKER_1 = (byte) 0x01;
+    private static final int HEADER_SIZE = 10;
+
+    private static final int TYPE = 1;
+    private static final int USER = 2;
+    private static final int ACCOUNT_ID = 3;
+    private static final int AMOUNT_UNSCALED = 4;
+    private static final int AMOUNT_SCALE = 5;
+    private static final int COUNTERPARTY = 6;
+    private static final int OCCURRED_AT = 7;
+
+    private TransactionEventCodec() {
+    }
+
+    public static byte[] encode(TransactionEvent event) {
+        long unscaled;
+        try {
+            unscaled = event.getAmount().unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new EventFormatException("Amount out of range: " + event.getAmount());
+        }
+        int scale = event.getAmount().scale();
+        long occurredAt = event.getOccurredAt().toEpochMilli();
+
+        int size = CodedOutputStream.computeEnumSize(TYPE, event.getType().getNumber())
+                + CodedOutputStream.computeInt64Size(ACCOUNT_ID, event.getAccountId())
+                + CodedOutputStream.computeSInt64Size(AMOUNT_UNSCALED, unscaled)
+                + CodedOutputStream.computeInt64Size(OCCURRED_AT, occurredAt);
+        if (event.getUser() != null) size += CodedOutputStream.computeStringSize(USER, event.getUser());
+        if (scale != 0) size += CodedOutputStream.computeInt32Size(AMOUNT_SCALE, scale);
+        if (event.getCounterpartyAccountNumber() != null) {
+            size += CodedOutputStream.computeStringSize(COUNTERPARTY, event.getCounterpartyAccountNumber());
+        }
+
+        byte[] bytes = new byte[HEADER_SIZE + size];
+        writeHeader(bytes);
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes, HEADER_SIZE, size);
+        try {
+            out.writeEnum(TYPE, event.getType().getNumber());
+            if (event.getUser() != null) out.writeString(USER, event.getUser());
+            out.writeInt64(ACCOUNT_ID, event.getAccountId());
+            out.writeSInt64(AMOUNT_UNSCALED, unscaled);
+            if (scale != 0) out.writeInt32(AMOUNT_SCALE, scale);
+            if (event.getCounterpartyAccountNumber() != null) {
+                out.writeString(COUNTERPARTY, event.getCounterpartyAccountNumber());
+            }
+            out.writeInt64(OCCURRED_AT, occurredAt);
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // Only possible if the size computation above is wrong
+            throw new IllegalStateException(e);
+        }
+        return bytes;
+    }
+
+    public static TransactionEvent decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    // Reads from the buffer's position to its limit without copying (e.g. a mapped event log)
+    public static TransactionEvent decode(ByteBuffer buffer) {
+        if (!isEncoded(buffer)) {
+            throw new EventFormatException("Missing event header");
+        }
+        int start = buffer.position();
+
+        int typeNumber = 0;
+        String user = null;
+        long accountId = 0;
+        long unscaled = 0;
+        int scale = 0;
+        String counterparty = null;
+        long occurredAt = 0;
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_SIZE);
+        CodedInputStream in = CodedInputStream.newInstance(body);
+        try {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (tag >>> 3) {
+                    case TYPE: typeNumber = in.readEnum(); break;
+                    case USER: user = in.readString(); break;
+                    case ACCOUNT_ID: accountId = in.readInt64(); break;
+                    case AMOUNT_UNSCALED: unscaled = in.readSInt64(); break;
+                    case AMOUNT_SCALE: scale = in.readInt32(); break;
+                    case COUNTERPARTY: counterparty = in.readString(); break;
+                    case OCCURRED_AT: occurredAt = in.readInt64(); break;
+                    // Fields added by newer writers
+                    default: in.skipField(tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new EventFormatException("Malformed event body", e);
+        }
+        if (typeNumber == 0) {
+            throw new EventFormatException("Event has no type");
+        }
+        return new TransactionEvent(EventType.forNumber(typeNumber), user, accountId,
+                new BigDecimal(BigInteger.valueOf(unscaled), scale), counterparty, Instant.ofEpochMilli(occurredAt));
+    }
+
+    // True if the bytes start with the event header (as opposed to e.g. legacy JSON)
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes.length >= HEADER_SIZE && bytes[0] == MARKER_0 && bytes[1] == MARKER_1;
+    }
+
+    public static boolean isEncoded(ByteBuffer buffer) {
+        int start = buffer.position();
+        return buffer.remaining() >= HEADER_SIZE && buffer.get(start) == MARKER_0 && buffer.get(start + 1) == MARKER_1;
+    }
+
+    private static void writeHeader(byte[] bytes) {
+        bytes[0] = MARKER_0;
+        bytes[1] = MARKER_1;
+        long fingerprint = FINGERPRINT;
+        for (int i = 2; i < HEADER_SIZE; i++) {
+            bytes[i] = (byte) fingerprint;
+            fingerprint >>>= 8;
+        }
+    }
+
+    private static long fingerprint(String schema) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(schema.getBytes(StandardCharsets.UTF_8));
+            long fingerprint = 0;
+            for (int i = 7; i >= 0; i--) {
+                fingerprint = (fingerprint << 8) | (digest[i] & 0xFF);
+            }
+            return fingerprint;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
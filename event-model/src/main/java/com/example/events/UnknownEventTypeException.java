@@ -0,0 +1,15 @@
+package com.example.events;
+
+// A well-formed event of a type added after this reader was built; safe to skip
+public class UnknownEventTypeException extends EventFormatException {
+    private final int typeNumber;
+
+    public UnknownEventTypeException(int typeNumber) {
+        super("Unknown event type " + typeNumber);
+        this.typeNumber = typeNumber;
+    }
+
+    public int getTypeNumber() {
+        return typeNumber;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.events.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Append-only event log in a directory of fixed-size, memory-mapped segment files.
+ *
+ * Each record is a 4-byte length followed by the payload, padded to 8 bytes. The length is
+ * written last with release semantics, so a reader in another process that sees a non-zero
+ * length also sees the whole payload. A length of -1 marks the end of a segment; the next
+ * one is the file with the following index. Appending is a copy into the mapping - there is
+ * no system call on the write path - and the OS writes pages back in the background.
+ *
+ * One writer per directory, enforced with a file lock.
+ *
+ * Rolling to a new segment deletes segments more than retainSegments behind it, except
+ * those a reader's {@code *.cursor} file still points into or after: a slow reader holds
+ * on to its segments rather than lose events. Delete the cursor file of a reader that is
+ * gone for good, or its segments are kept forever.
+ */
+public final class EventLog implements Closeable {
+
+    static final int HEADER = 4;
+    static final int END_OF_SEGMENT = -1;
+    static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int retainSegments;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+    private int position;
+
+    private EventLog(Path dir, int segmentBytes, int retainSegments) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retainSegments = retainSegments;
+
+        Files.createDirectories(dir);
+        lockChannel = FileChannel.open(dir.resolve("writer.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Event log " + dir + " is already open for writing");
+        }
+    }
+
+    public static EventLog open(Path dir, int segmentBytes, int retainSegments) throws IOException {
+        EventLog log = new EventLog(dir, segmentBytes, retainSegments);
+        log.recover();
+        return log;
+    }
+
+    public synchronized void append(byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Empty event");
+        }
+        int frame = frameSize(payload.length);
+        if (frame + HEADER > segmentBytes) {
+            throw new IllegalArgumentException("Event of " + payload.length + " bytes does not fit in a segment");
+        }
+        // Always leave room for the end-of-segment marker
+        if (position + frame + HEADER > segment.capacity()) {
+            LENGTH.setRelease(segment, position, END_OF_SEGMENT);
+            roll(segmentIndex + 1);
+        }
+        segment.put(position + HEADER, payload);
+        LENGTH.setRelease(segment, position, payload.length);
+        position += frame;
+    }
+
+    // Push written pages to disk; appends do not wait for this
+    public synchronized void force() {
+        segment.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segment.force();
+        lock.release();
+        lockChannel.close();
+    }
+
+    static int frameSize(int length) {
+        return (HEADER + length + 7) & ~7;
+    }
+
+    static Path segmentPath(Path dir, long index) {
+        return dir.resolve(String.format("%020d.seg", index));
+    }
+
+    // Continue after the last complete record of the newest segment
+    private void recover() throws IOException {
+        long last = -1;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg")) {
+                    last = Math.max(last, Long.parseLong(name.substring(0, name.length() - 4)));
+                }
+            }
+        }
+        if (last < 0) {
+            roll(0);
+            return;
+        }
+
+        segmentIndex = last;
+        segment = map(segmentPath(dir, last));
+        position = 0;
+        while (position + HEADER <= segment.capacity()) {
+            int length = (int) LENGTH.getAcquire(segment, position);
+            if (length == 0) return;
+            if (length == END_OF_SEGMENT) {
+                // Crashed between closing this segment and creating the next
+                roll(last + 1);
+                return;
+            }
+            position += frameSize(length);
+        }
+        roll(last + 1);
+    }
+
+    private void roll(long index) throws IOException {
+        if (segment != null) segment.force();
+        segment = map(segmentPath(dir, index));
+        segmentIndex = index;
+        position = 0;
+
+        long keepFrom = Math.min(index - retainSegments + 1, oldestCursorSegment());
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg") && Long.parseLong(name.substring(0, name.length() - 4)) < keepFrom) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // Lowest segment any reader still has to read (see EventLogReader's cursor layout)
+    private long oldestCursorSegment() throws IOException {
+        long oldest = Long.MAX_VALUE;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".cursor")) continue;
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer cursor = ByteBuffer.allocate(8);
+                    if (channel.read(cursor, 0) == 8) {
+                        oldest = Math.min(oldest, cursor.getLong(0));
+                    }
+                }
+            }
+        }
+        return oldest;
+    }
+
+    // Existing segments keep their size even if segment-bytes has since changed
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() == 0) file.setLength(segmentBytes);
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.events.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Tailing reader over an {@link EventLog} directory.
+ *
+ * Records are handed out as read-only slices of the mapped segment, so nothing is copied
+ * unless the handler copies it. The read position (segment index and offset) is kept in a
+ * small mapped file, {@code <name>.cursor}, next to the segments; {@link #commit()} updates
+ * it, and a reader opened with the same name resumes from there. The writer keeps every
+ * segment at or after a cursor, so events are only lost if a segment is removed by other
+ * means; the reader then skips to the oldest segment left and counts the skipped ones
+ * in {@link #segmentsLost()}.
+ */
+public final class EventLogReader implements Closeable {
+
+    private static final int CURSOR_BYTES = 16;
+
+    private final Path dir;
+    private final MappedByteBuffer cursor;
+
+    private long segmentIndex;
+    private int position;
+    private MappedByteBuffer segment;
+    private long segmentsLost;
+    // A new reader starts at the oldest segment; skipping to it is not a loss
+    private boolean fresh;
+
+    private EventLogReader(Path dir, MappedByteBuffer cursor, boolean fresh) {
+        this.dir = dir;
+        this.cursor = cursor;
+        this.fresh = fresh;
+        this.segmentIndex = cursor.getLong(0);
+        this.position = (int) cursor.getLong(8);
+    }
+
+    public static EventLogReader open(Path dir, String name) throws IOException {
+        Files.createDirectories(dir);
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(name + ".cursor").toFile(), "rw")) {
+            boolean fresh = file.length() < CURSOR_BYTES;
+            if (fresh) file.setLength(CURSOR_BYTES);
+            return new EventLogReader(dir, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_BYTES), fresh);
+        }
+    }
+
+    /**
+     * Hand up to maxRecords new records to the handler, in log order. Returns how many were
+     * read; 0 means the reader has caught up with the writer.
+     */
+    public int poll(Consumer<ByteBuffer> handler, int maxRecords) throws IOException {
+        int count = 0;
+        while (count < maxRecords) {
+            if (segment == null && !openSegment()) break;
+
+            if (position + EventLog.HEADER > segment.capacity()) break;
+            int length = (int) EventLog.LENGTH.getAcquire(segment, position);
+            if (length == 0) break;
+            if (length == EventLog.END_OF_SEGMENT) {
+                if (!Files.exists(EventLog.segmentPath(dir, segmentIndex + 1))) break;
+                segmentIndex++;
+                position = 0;
+                segment = null;
+                continue;
+            }
+
+            handler.accept(segment.slice(position + EventLog.HEADER, length).asReadOnlyBuffer());
+            position += EventLog.frameSize(length);
+            count++;
+        }
+        return count;
+    }
+
+    // Segments skipped because they were deleted before this reader got to them
+    public long segmentsLost() {
+        return segmentsLost;
+    }
+
+    // Remember the current position; cheap enough to call after every poll
+    public void commit() {
+        cursor.putLong(0, segmentIndex);
+        cursor.putLong(8, position);
+    }
+
+    @Override
+    public void close() {
+        commit();
+        cursor.force();
+    }
+
+    private boolean openSegment() throws IOException {
+        Path path = EventLog.segmentPath(dir, segmentIndex);
+        if (!Files.exists(path)) {
+            // Our segment is gone: continue from the oldest one left
+            long oldest = oldestSegment();
+            if (oldest <= segmentIndex) return false;
+            if (!fresh) segmentsLost += oldest - segmentIndex;
+            segmentIndex = oldest;
+            position = 0;
+            path = EventLog.segmentPath(dir, segmentIndex);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() == 0) return false;
+            segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        fresh = false;
+        return true;
+    }
+
+    private long oldestSegment() throws IOException {
+        long oldest = -1;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg")) {
+                    long index = Long.parseLong(name.substring(0, name.length() - 4));
+                    if (oldest < 0 || index < oldest) oldest = index;
+                }
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.events;
+
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransactionEventCodecTest {
+
+    private static final Instant OCCURRED_AT = Instant.parse("2026-03-14T09:26:53.589Z");
+
+    @Test
+    void roundTripsEveryField() {
+        TransactionEvent event = new TransactionEvent(EventType.TRANSFER, "alice@example.com", 1L << 40 | 7,
+                new BigDecimal("-1234.5600"), "ACC-000042", OCCURRED_AT);
+
+        TransactionEvent decoded = TransactionEventCodec.decode(TransactionEventCodec.encode(event));
+
+        assertSameEvent(event, decoded);
+    }
+
+    @Test
+    void roundTripsWithoutOptionalFields() {
+        TransactionEvent event = new TransactionEvent(EventType.DEPOSIT, null, 3, new BigDecimal("25"), null, OCCURRED_AT);
+
+        TransactionEvent decoded = TransactionEventCodec.decode(TransactionEventCodec.encode(event));
+
+        assertSameEvent(event, decoded);
+        assertNull(decoded.getUser());
+        assertNull(decoded.getCounterpartyAccountNumber());
+    }
+
+    @Test
+    void decodesFromBufferPosition() {
+        TransactionEvent event = new TransactionEvent(EventType.WITHDRAW, "bob", 9, new BigDecimal("10.05"), null, OCCURRED_AT);
+        byte[] encoded = TransactionEventCodec.encode(event);
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 5);
+        buffer.position(5);
+        buffer.put(encoded);
+        buffer.position(5);
+
+        assertSameEvent(event, TransactionEventCodec.decode(buffer));
+    }
+
+    @Test
+    void skipsFieldsFromNewerWriters() throws IOException {
+        TransactionEvent event = new TransactionEvent(EventType.DEPOSIT, "carol", 11, new BigDecimal("1.5"), null, OCCURRED_AT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(TransactionEventCodec.encode(event));
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeString(15, "added later");
+        out.writeFixed64(16, 42L);
+        out.flush();
+
+        assertSameEvent(event, TransactionEventCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void decodesOtherSchemaFingerprints() {
+        TransactionEvent event = new TransactionEvent(EventType.DEPOSIT, "dave", 12, new BigDecimal("3"), null, OCCURRED_AT);
+        byte[] encoded = TransactionEventCodec.encode(event);
+        encoded[5] ^= 0x5A;
+
+        assertSameEvent(event, TransactionEventCodec.decode(encoded));
+    }
+
+    @Test
+    void unknownTypeIsReportedAsSkippable() throws IOException {
+        byte[] encoded = TransactionEventCodec.encode(
+                new TransactionEvent(EventType.DEPOSIT, "erin", 13, new BigDecimal("4"), null, OCCURRED_AT));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(encoded);
+        // A later type field overrides the earlier one, as in protobuf
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeEnum(1, 9);
+        out.flush();
+
+        UnknownEventTypeException e = assertThrows(UnknownEventTypeException.class,
+                () -> TransactionEventCodec.decode(bytes.toByteArray()));
+        assertEquals(9, e.getTypeNumber());
+    }
+
+    @Test
+    void rejectsBytesWithoutHeader() {
+        assertThrows(EventFormatException.class,
+                () -> TransactionEventCodec.decode("{\"type\":\"DEPOSIT\"}".getBytes()));
+    }
+
+    private static void assertSameEvent(TransactionEvent expected, TransactionEvent actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getUser(), actual.getUser());
+        assertEquals(expected.getAccountId(), actual.getAccountId());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getCounterpartyAccountNumber(), actual.getCounterpartyAccountNumber());
+        assertEquals(expected.getOccurredAt(), actual.getOccurredAt());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.events.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    // Three 8-byte frames plus the end-of-segment marker, so segment n holds events 3n..3n+2
+    private static final int SEGMENT_BYTES = 28;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void retentionKeepsSegmentsAReaderHasNotFinished() throws IOException {
+        try (EventLog log = EventLog.open(dir, SEGMENT_BYTES, 1);
+             EventLogReader reader = EventLogReader.open(dir, "slow")) {
+            append(log, 0, 3);
+            assertEquals(List.of("e0", "e1"), poll(reader, 2));
+            reader.commit();
+
+            append(log, 3, 9);
+            assertTrue(Files.exists(EventLog.segmentPath(dir, 0)));
+
+            assertEquals(List.of("e2", "e3", "e4", "e5", "e6", "e7", "e8"), poll(reader, 100));
+            assertEquals(0, reader.segmentsLost());
+            reader.commit();
+
+            append(log, 9, 12);
+            assertFalse(Files.exists(EventLog.segmentPath(dir, 0)));
+            assertFalse(Files.exists(EventLog.segmentPath(dir, 1)));
+        }
+    }
+
+    @Test
+    void readerCountsSegmentsDeletedUnderIt() throws IOException {
+        try (EventLog log = EventLog.open(dir, SEGMENT_BYTES, 1);
+             EventLogReader reader = EventLogReader.open(dir, "late")) {
+            append(log, 0, 1);
+            assertEquals(List.of("e0"), poll(reader, 100));
+            reader.commit();
+            append(log, 1, 6);
+
+            reader.close();
+            Files.delete(EventLog.segmentPath(dir, 0));
+            try (EventLogReader reopened = EventLogReader.open(dir, "late")) {
+                assertEquals(List.of("e3", "e4", "e5"), poll(reopened, 100));
+                assertEquals(1, reopened.segmentsLost());
+            }
+        }
+    }
+
+    private static void append(EventLog log, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            log.append(("e" + i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> poll(EventLogReader reader, int max) throws IOException {
+        List<String> events = new ArrayList<>();
+        reader.poll(buffer -> events.add(utf8(buffer)), max);
+        return events;
+    }
+
+    private static String utf8(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
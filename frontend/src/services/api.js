@@ -49,22 +49,30 @@ export const getAccountByNumber = (number) =>
 export const createCheckoutSession = (amount) =>
   api.post('/payments/create-checkout-session', { amount });
 
+// Keyed on the session so reloading the Stripe return page never credits twice
 export const verifyStripeSession = (sessionId) =>
-  api.post('/payments/verify-session', { sessionId });
+  api.post('/payments/verify-session', { sessionId },
+    { headers: { 'Idempotency-Key': `stripe-session-${sessionId}` } });
 
 export const depositDirect = (amount) =>
   api.post('/payments/deposit-direct', { amount });
 
 // Transactions (withdraw/transfer only - deposit goes through Stripe)
+// Each call gets its own Idempotency-Key so a retried request is applied only once
+const idempotent = () => ({ headers: { 'Idempotency-Key': crypto.randomUUID() } });
+
 export const withdraw = (accountId, amount, category, description) =>
-  transactionApi.post('/transactions/withdraw', { accountId, amount, category, description });
+  transactionApi.post('/transactions/withdraw', { accountId, amount, category, description }, idempotent());
 
 export const transfer = (fromAccountId, toAccountNumber, amount, description) =>
-  transactionApi.post('/transactions/transfer', { fromAccountId, toAccountNumber, amount, description });
+  transactionApi.post('/transactions/transfer', { fromAccountId, toAccountNumber, amount, description }, idempotent());
 
 export const getTransactions = () => transactionApi.get('/transactions');
+// params: { cursor, limit, type, category, from, to } - response is { items, nextCursor }
+export const getTransactionHistory = (params) => transactionApi.get('/transactions/history', { params });
 export const getCategories = () => transactionApi.get('/transactions/categories');
 export const getStats = () => transactionApi.get('/transactions/stats');
+export const getAnalytics = (params) => transactionApi.get('/transactions/analytics', { params });
 export const getFrequentRecipients = () => transactionApi.get('/transactions/frequent-recipients');
 
 // Admin
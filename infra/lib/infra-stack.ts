@@ -218,6 +218,7 @@ export class PrimeLedgerStack extends cdk.Stack {
         DYNAMODB_VERIFICATION_TABLE: verificationCodesTable.tableName,
         AWS_REGION: this.region,
         STRIPE_SECRET_KEY: process.env.STRIPE_SECRET_KEY || 'sk_test_placeholder',
+        TRANSACTION_SERVICE_URL: 'http://transaction-service.primeledger.local:8082',
       },
       secrets: {
         SPRING_DATASOURCE_USERNAME: ecs.Secret.fromSecretsManager(dbSecret, 'username'),
@@ -329,9 +330,15 @@ export class PrimeLedgerStack extends cdk.Stack {
       environment: {
         SPRING_PROFILES_ACTIVE: 'aws',
         SERVER_PORT: '8083',
+        SPRING_DATASOURCE_URL: `jdbc:postgresql://${dbEndpointHostname}:5432/banking`,
         KINESIS_STREAM_NAME: eventStreamName,
         AWS_REGION: this.region,
       },
+      // Shard checkpoints live in the shared database
+      secrets: {
+        SPRING_DATASOURCE_USERNAME: ecs.Secret.fromSecretsManager(dbSecret, 'username'),
+        SPRING_DATASOURCE_PASSWORD: ecs.Secret.fromSecretsManager(dbSecret, 'password'),
+      },
       logging: ecs.LogDrivers.awsLogs({
         streamPrefix: 'notification-service',
         logGroup: new logs.LogGroup(this, 'NotificationServiceLogs', {
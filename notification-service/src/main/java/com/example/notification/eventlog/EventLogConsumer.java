@@ -0,0 +1,99 @@
+package com.example.notification.eventlog;
+
+import com.example.events.EventFormatException;
+import com.example.events.TransactionEventCodec;
+import com.example.events.UnknownEventTypeException;
+import com.example.events.log.EventLogReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tails the embedded event log written by transaction-service when events.log.dir is set
+ * (single-node deployments without Kafka or Kinesis). The read position is committed to the
+ * cursor file after every batch, so a restart resumes where it stopped.
+ */
+@Service
+public class EventLogConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLogConsumer.class);
+
+    @Value("${events.log.dir:}")
+    private String dir;
+
+    @Value("${events.log.consumer-name:notification-service}")
+    private String consumerName;
+
+    @Value("${events.log.max-records:1000}")
+    private int maxRecords;
+
+    // Longest pause between polls once caught up
+    @Value("${events.log.max-idle-micros:1000}")
+    private long maxIdleMicros;
+
+    private EventLogReader reader;
+    private Thread thread;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (dir == null || dir.isBlank()) return;
+
+        reader = EventLogReader.open(Path.of(dir), consumerName);
+        thread = new Thread(this::run, "event-log-reader");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Event log consumer reading {}", dir);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (thread == null) return;
+        running = false;
+        thread.join(1000);
+        reader.close();
+    }
+
+    private void run() {
+        long idleMicros = 1;
+        long segmentsLost = 0;
+        while (running) {
+            try {
+                int read = reader.poll(this::processEvent, maxRecords);
+                if (reader.segmentsLost() > segmentsLost) {
+                    log.warn("Event log segments deleted before they were read; skipped {} segment(s)",
+                            reader.segmentsLost() - segmentsLost);
+                    segmentsLost = reader.segmentsLost();
+                }
+                if (read > 0) {
+                    reader.commit();
+                    idleMicros = 1;
+                } else {
+                    LockSupport.parkNanos(idleMicros * 1000);
+                    idleMicros = Math.min(idleMicros * 2, maxIdleMicros);
+                }
+            } catch (Exception e) {
+                log.error("Error reading event log: {}", e.getMessage());
+                LockSupport.parkNanos(maxIdleMicros * 1000);
+            }
+        }
+    }
+
+    private void processEvent(ByteBuffer event) {
+        try {
+            log.info("📩 Notification received: {}", TransactionEventCodec.decode(event));
+        } catch (UnknownEventTypeException e) {
+            log.debug("Skipping event of unknown type {}", e.getTypeNumber());
+        } catch (EventFormatException e) {
+            log.warn("Skipping unreadable event log record: {}", e.getMessage());
+        }
+    }
+}
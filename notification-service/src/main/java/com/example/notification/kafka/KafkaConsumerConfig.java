@@ -0,0 +1,70 @@
+package com.example.notification.kafka;
+
+import com.example.events.EventFormatException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+/**
+ * Error handling for the transactions listener. Boot picks the CommonErrorHandler bean up
+ * for the default container factory.
+ *
+ * A record that keeps failing is retried a bounded number of times and then published to
+ * transactions.DLT, after which the listener moves on. Records that cannot be decoded go
+ * to the dead-letter topic straight away.
+ */
+@Configuration
+public class KafkaConsumerConfig {
+
+    public static final String DEAD_LETTER_TOPIC = "transactions.DLT";
+
+    @Value("${notifications.kafka.retry.attempts:3}")
+    private long retryAttempts;
+
+    @Value("${notifications.kafka.retry.backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${notifications.kafka.dead-letter.partitions:1}")
+    private int deadLetterPartitions;
+
+    @Bean
+    public NewTopic transactionsDeadLetterTopic() {
+        return TopicBuilder.name(DEAD_LETTER_TOPIC).partitions(deadLetterPartitions).replicas(1).build();
+    }
+
+    // The template only exists where Kafka auto-configuration is enabled (not on AWS)
+    @Bean
+    public CommonErrorHandler kafkaErrorHandler(ObjectProvider<KafkaTemplate<Object, Object>> kafkaTemplate,
+                                                MeterRegistry meterRegistry) {
+        Counter deadLettered = Counter.builder("notifications.kafka.dead-lettered")
+                .description("Records published to the dead-letter topic")
+                .register(meterRegistry);
+
+        KafkaTemplate<Object, Object> template = kafkaTemplate.getIfAvailable();
+        DefaultErrorHandler handler;
+        if (template != null) {
+            // Partition -1 lets the producer pick by key, so the DLT can have any partition count
+            DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(template,
+                    (record, e) -> new TopicPartition(DEAD_LETTER_TOPIC, -1));
+            handler = new DefaultErrorHandler((record, e) -> {
+                recoverer.accept(record, e);
+                deadLettered.increment();
+            }, new FixedBackOff(retryBackoffMs, retryAttempts));
+        } else {
+            handler = new DefaultErrorHandler(new FixedBackOff(retryBackoffMs, retryAttempts));
+        }
+        handler.addNotRetryableExceptions(EventFormatException.class);
+        return handler;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.notification.kafka;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fixed set of single-threaded lanes. Work with the same key always runs on the same lane,
+ * so it runs in submission order, while different keys spread across all lanes.
+ */
+@Component
+public class OrderedWorkerPool {
+
+    private final ExecutorService[] lanes;
+
+    public OrderedWorkerPool(@Value("${notifications.kafka.workers:0}") int workers) {
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        lanes = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            String name = "notification-worker-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public CompletableFuture<Void> submit(Object key, Runnable task) {
+        return CompletableFuture.runAsync(task, lanes[Math.floorMod(key.hashCode(), lanes.length)]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
@@ -1,12 +1,169 @@
 package com.example.notification.kafka;
 
+import com.example.events.TransactionEventCodec;
+import com.example.events.UnknownEventTypeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumes the transactions topic a poll-batch at a time. Records are handed to the worker
+ * pool keyed by account id, so one account's events are handled in order while others run
+ * in parallel. Offsets are committed once the whole batch is done; if a record fails, the
+ * error handler (KafkaConsumerConfig) commits everything before it and retries from there.
+ *
+ * Once a record has failed, records after it in the batch are not started, so nothing is
+ * handled ahead of a failed record of the same account. Those after it that other lanes
+ * had already handled are remembered and skipped when the retry delivers them again.
+ */
 @Service
 public class TransactionConsumer {
-    @KafkaListener(topics = "transactions", groupId = "banking-group")
-    public void listen(String message) {
-        System.out.println("📩 Notification Service received: " + message);
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionConsumer.class);
+
+    private final OrderedWorkerPool workers;
+    private final MeterRegistry meterRegistry;
+    private final Counter records;
+    private final Timer batchTimer;
+    private final Map<TopicPartition, AtomicLong> lag = new ConcurrentHashMap<>();
+    // Offsets handled after an earlier record in their batch failed, skipped on redelivery
+    private final Map<TopicPartition, Set<Long>> handledAhead = new ConcurrentHashMap<>();
+
+    public TransactionConsumer(OrderedWorkerPool workers, MeterRegistry meterRegistry) {
+        this.workers = workers;
+        this.meterRegistry = meterRegistry;
+        this.records = Counter.builder("notifications.kafka.records")
+                .description("Transaction events consumed")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("notifications.kafka.batch")
+                .description("Time to handle one poll batch")
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(topics = "transactions", groupId = "banking-group", batch = "true",
+            concurrency = "${notifications.kafka.concurrency:3}")
+    public void listen(List<ConsumerRecord<String, byte[]>> batch, Acknowledgment ack, Consumer<?, ?> consumer) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        boolean[] handled = new boolean[batch.size()];
+        List<CompletableFuture<Void>> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ConsumerRecord<String, byte[]> record = batch.get(i);
+            if (skipHandledAhead(record)) {
+                handled[i] = true;
+                results.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            int index = i;
+            Object key = record.key() != null ? record.key() : record.partition();
+            results.add(workers.submit(key, () -> {
+                if (index > firstFailure.get()) return;
+                try {
+                    handle(record.value());
+                    handled[index] = true;
+                } catch (RuntimeException e) {
+                    firstFailure.accumulateAndGet(index, Math::min);
+                    throw e;
+                }
+            }));
+        }
+        // Let every lane finish before reporting, so a retry never overtakes work still running
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+
+        // Everything before the lowest failure was handled; the retry starts there
+        int failedAt = firstFailure.get();
+        if (failedAt < batch.size()) {
+            for (int i = failedAt + 1; i < batch.size(); i++) {
+                if (!handled[i]) continue;
+                ConsumerRecord<String, byte[]> record = batch.get(i);
+                handledAhead.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+                        tp -> ConcurrentHashMap.newKeySet()).add(record.offset());
+            }
+            records.increment(failedAt);
+            try {
+                results.get(failedAt).join();
+            } catch (CompletionException e) {
+                throw new BatchListenerFailedException("Notification failed", e.getCause(), failedAt);
+            }
+        }
+
+        ack.acknowledge();
+        forgetHandledAhead(batch);
+        records.increment(batch.size());
+        sample.stop(batchTimer);
+        recordLag(batch, consumer);
+    }
+
+    private boolean skipHandledAhead(ConsumerRecord<String, byte[]> record) {
+        Set<Long> offsets = handledAhead.get(new TopicPartition(record.topic(), record.partition()));
+        return offsets != null && offsets.remove(record.offset());
+    }
+
+    // Committed now, so whatever was remembered up to here can't come back
+    private void forgetHandledAhead(List<ConsumerRecord<String, byte[]>> batch) {
+        if (handledAhead.isEmpty()) return;
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            Set<Long> offsets = handledAhead.get(new TopicPartition(record.topic(), record.partition()));
+            if (offsets != null) offsets.removeIf(offset -> offset <= record.offset());
+        }
+        handledAhead.values().removeIf(Set::isEmpty);
+    }
+
+    private void handle(byte[] message) {
+        // Events queued before the binary format are plain JSON
+        if (!TransactionEventCodec.isEncoded(message)) {
+            log.info("📩 Notification received: {}", new String(message, StandardCharsets.UTF_8));
+            return;
+        }
+        try {
+            log.info("📩 Notification received: {}", TransactionEventCodec.decode(message));
+        } catch (UnknownEventTypeException e) {
+            // Written by a newer publisher; not a poison message
+            log.debug("Skipping event of unknown type {}", e.getTypeNumber());
+        }
+    }
+
+    private void recordLag(List<ConsumerRecord<String, byte[]>> batch, Consumer<?, ?> consumer) {
+        ConsumerRecord<String, byte[]> previous = null;
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            if (previous != null && previous.partition() == record.partition()) continue;
+            previous = record;
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            consumer.currentLag(partition).ifPresent(value -> lagGauge(partition).set(value));
+        }
+    }
+
+    private AtomicLong lagGauge(TopicPartition partition) {
+        return lag.computeIfAbsent(partition, tp -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("notifications.kafka.lag", value, AtomicLong::get)
+                    .description("Records behind the end of the partition")
+                    .tags(Tags.of("topic", tp.topic(), "partition", String.valueOf(tp.partition())))
+                    .register(meterRegistry);
+            return value;
+        });
     }
 }
@@ -0,0 +1,97 @@
+package com.example.notification.kinesis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-shard read positions and reader leases in kinesis_checkpoint. Checkpoint writes only
+ * succeed for the current lease owner, so an instance that lost its lease can't move the
+ * position backwards.
+ */
+@Repository
+public class CheckpointRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Map<String, Checkpoint> findAll(String streamName) {
+        Map<String, Checkpoint> checkpoints = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT shard_id, sequence_number, finished FROM kinesis_checkpoint WHERE stream_name = ?",
+                rs -> {
+                    checkpoints.put(rs.getString(1), new Checkpoint(rs.getString(2), rs.getBoolean(3)));
+                },
+                streamName);
+        return checkpoints;
+    }
+
+    public Checkpoint find(String streamName, String shardId) {
+        List<Checkpoint> found = jdbcTemplate.query(
+                "SELECT sequence_number, finished FROM kinesis_checkpoint WHERE stream_name = ? AND shard_id = ?",
+                (rs, i) -> new Checkpoint(rs.getString(1), rs.getBoolean(2)),
+                streamName, shardId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // Take the shard if nobody holds it or the holder's lease has run out
+    public boolean tryAcquireLease(String streamName, String shardId, String owner, long leaseMs) {
+        return jdbcTemplate.update(
+                "INSERT INTO kinesis_checkpoint (stream_name, shard_id, lease_owner, lease_expires_at, updated_at) " +
+                "VALUES (?, ?, ?, NOW() + (? * INTERVAL '1 millisecond'), NOW()) " +
+                "ON CONFLICT (stream_name, shard_id) DO UPDATE SET lease_owner = EXCLUDED.lease_owner, " +
+                "lease_expires_at = EXCLUDED.lease_expires_at, updated_at = NOW() " +
+                "WHERE kinesis_checkpoint.lease_owner IS NULL OR kinesis_checkpoint.lease_owner = EXCLUDED.lease_owner " +
+                "OR kinesis_checkpoint.lease_expires_at < NOW()",
+                streamName, shardId, owner, leaseMs) == 1;
+    }
+
+    // False once another instance has taken the shard over
+    public boolean renewLease(String streamName, String shardId, String owner, long leaseMs) {
+        return jdbcTemplate.update(
+                "UPDATE kinesis_checkpoint SET lease_expires_at = NOW() + (? * INTERVAL '1 millisecond') " +
+                "WHERE stream_name = ? AND shard_id = ? AND lease_owner = ?",
+                leaseMs, streamName, shardId, owner) == 1;
+    }
+
+    public void releaseLease(String streamName, String shardId, String owner) {
+        jdbcTemplate.update(
+                "UPDATE kinesis_checkpoint SET lease_owner = NULL, lease_expires_at = NULL " +
+                "WHERE stream_name = ? AND shard_id = ? AND lease_owner = ?",
+                streamName, shardId, owner);
+    }
+
+    // Everything up to and including this sequence number has been processed; false if the lease was lost
+    public boolean save(String streamName, String shardId, String owner, String sequenceNumber, long leaseMs) {
+        return jdbcTemplate.update(
+                "UPDATE kinesis_checkpoint SET sequence_number = ?, " +
+                "lease_expires_at = NOW() + (? * INTERVAL '1 millisecond'), updated_at = NOW() " +
+                "WHERE stream_name = ? AND shard_id = ? AND lease_owner = ?",
+                sequenceNumber, leaseMs, streamName, shardId, owner) == 1;
+    }
+
+    // A closed shard has been read to the end
+    public void markFinished(String streamName, String shardId, String owner) {
+        jdbcTemplate.update(
+                "UPDATE kinesis_checkpoint SET finished = TRUE, lease_owner = NULL, lease_expires_at = NULL, updated_at = NOW() " +
+                "WHERE stream_name = ? AND shard_id = ? AND lease_owner = ?",
+                streamName, shardId, owner);
+    }
+
+    public static class Checkpoint {
+        private final String sequenceNumber;
+        private final boolean finished;
+
+        public Checkpoint(String sequenceNumber, boolean finished) {
+            this.sequenceNumber = sequenceNumber;
+            this.finished = finished;
+        }
+
+        public String getSequenceNumber() { return sequenceNumber; }
+        public boolean isFinished() { return finished; }
+    }
+}
@@ -1,22 +1,53 @@
 package com.example.notification.kinesis;
 
+import com.example.events.EventFormatException;
+import com.example.events.EventFrames;
+import com.example.events.TransactionEvent;
+import com.example.events.TransactionEventCodec;
+import com.example.events.UnknownEventTypeException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.KinesisClientBuilder;
 import software.amazon.awssdk.services.kinesis.model.*;
 
 import javax.annotation.PostConstruct;
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Polls Kinesis stream for transaction events and processes notifications.
- * Uses simple polling (not KCL) to keep dependencies minimal for a demo.
+ * Reads the Kinesis stream with one long-running reader thread per shard.
+ *
+ * Each reader polls GetRecords back-to-back while it is behind (every min-interval) and
+ * backs off towards max-interval once it has caught up. After each batch it checkpoints the
+ * last sequence number to kinesis_checkpoint, so a restart resumes from there. A shard
+ * never checkpointed starts at kinesis.initial-position (LATEST by default).
+ *
+ * Several instances can run this consumer: a shard is only read by the instance holding
+ * its lease in kinesis_checkpoint. The reader renews the lease as it goes and stops as
+ * soon as it finds it taken over; an instance that dies loses its shards once their
+ * leases run out (kinesis.lease-ms) and discovery elsewhere picks them up.
+ *
+ * A timer re-lists the shards to pick up resharding. A closed shard is read to the end and
+ * marked finished; its children start only once all their parents are finished, so
+ * per-account order holds across splits and merges.
  */
 @Service
 @EnableScheduling
@@ -24,15 +55,43 @@ public class KinesisConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(KinesisConsumer.class);
 
+    @Autowired
+    private CheckpointRepository checkpointRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${kinesis.stream-name:}")
     private String streamName;
 
+    @Value("${kinesis.endpoint:}")
+    private String endpoint;
+
     @Value("${aws.region:us-east-1}")
     private String awsRegion;
 
+    // Where to start on a shard that has never been checkpointed (children of a reshard always read it all)
+    @Value("${kinesis.initial-position:LATEST}")
+    private ShardIteratorType initialPosition;
+
+    @Value("${kinesis.lease-ms:30000}")
+    private long leaseMs;
+
+    @Value("${kinesis.max-records:10000}")
+    private int maxRecords;
+
+    // GetRecords allows 5 calls/s per shard
+    @Value("${kinesis.poll.min-interval-ms:200}")
+    private long minIntervalMs;
+
+    @Value("${kinesis.poll.max-interval-ms:1000}")
+    private long maxIntervalMs;
+
     private KinesisClient kinesisClient;
-    private final Map<String, String> shardIterators = new HashMap<>();
-    private boolean initialized = false;
+    private final Map<String, ShardReader> readers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> millisBehind = new ConcurrentHashMap<>();
+    private final String owner = UUID.randomUUID().toString();
+    private volatile boolean running = true;
 
     @PostConstruct
     public void init() {
@@ -42,64 +101,224 @@ public class KinesisConsumer {
         }
 
         try {
-            kinesisClient = KinesisClient.builder()
-                    .region(Region.of(awsRegion))
-                    .build();
-
-            // Get shard iterators
-            ListShardsResponse shardsResponse = kinesisClient.listShards(
-                    ListShardsRequest.builder().streamName(streamName).build());
-
-            for (Shard shard : shardsResponse.shards()) {
-                GetShardIteratorResponse iteratorResponse = kinesisClient.getShardIterator(
-                        GetShardIteratorRequest.builder()
-                                .streamName(streamName)
-                                .shardId(shard.shardId())
-                                .shardIteratorType(ShardIteratorType.LATEST)
-                                .build());
-                shardIterators.put(shard.shardId(), iteratorResponse.shardIterator());
+            KinesisClientBuilder builder = KinesisClient.builder().region(Region.of(awsRegion));
+            if (endpoint != null && !endpoint.isBlank()) {
+                builder.endpointOverride(URI.create(endpoint));
             }
-
-            initialized = true;
-            log.info("Kinesis consumer initialized for stream: {} ({} shards)", streamName, shardIterators.size());
+            kinesisClient = builder.build();
+            log.info("Kinesis consumer initialized for stream: {}", streamName);
         } catch (Exception e) {
             log.warn("Failed to initialize Kinesis consumer: {}. Running without event consumption.", e.getMessage());
         }
     }
 
-    @Scheduled(fixedDelay = 5000) // Poll every 5 seconds
-    public void pollKinesis() {
-        if (!initialized || kinesisClient == null) return;
+    @PreDestroy
+    public void stop() {
+        running = false;
+        readers.values().forEach(reader -> reader.thread.interrupt());
+    }
+
+    /**
+     * Start a reader for every shard that needs one: not already running, not finished,
+     * and with no unfinished parent.
+     */
+    @Scheduled(fixedDelayString = "${kinesis.shard-discovery-interval-ms:30000}")
+    public void discoverShards() {
+        if (kinesisClient == null || !running) return;
+
+        try {
+            List<Shard> shards = listShards();
+            Map<String, CheckpointRepository.Checkpoint> checkpoints = checkpointRepository.findAll(streamName);
+            Set<String> listed = new HashSet<>();
+            shards.forEach(shard -> listed.add(shard.shardId()));
+
+            for (Shard shard : shards) {
+                if (readers.containsKey(shard.shardId())) continue;
+                CheckpointRepository.Checkpoint checkpoint = checkpoints.get(shard.shardId());
+                if (checkpoint != null && checkpoint.isFinished()) continue;
+                if (!parentFinished(shard.parentShardId(), checkpoints, listed)
+                        || !parentFinished(shard.adjacentParentShardId(), checkpoints, listed)) continue;
+                if (!checkpointRepository.tryAcquireLease(streamName, shard.shardId(), owner, leaseMs)) continue;
+
+                // Re-read under the lease: the previous holder may have moved on since the listing
+                checkpoint = checkpointRepository.find(streamName, shard.shardId());
+                if (checkpoint != null && checkpoint.isFinished()) {
+                    checkpointRepository.releaseLease(streamName, shard.shardId(), owner);
+                    continue;
+                }
+                ShardReader reader = new ShardReader(shard.shardId(),
+                        checkpoint != null ? checkpoint.getSequenceNumber() : null,
+                        shard.parentShardId() != null);
+                readers.put(shard.shardId(), reader);
+                reader.thread.start();
+                log.info("Started Kinesis reader for shard {}", shard.shardId());
+            }
+        } catch (Exception e) {
+            log.error("Kinesis shard discovery failed: {}", e.getMessage());
+        }
+    }
+
+    private List<Shard> listShards() {
+        List<Shard> shards = new ArrayList<>();
+        ListShardsResponse response = kinesisClient.listShards(
+                ListShardsRequest.builder().streamName(streamName).build());
+        shards.addAll(response.shards());
+        while (response.nextToken() != null) {
+            response = kinesisClient.listShards(ListShardsRequest.builder().nextToken(response.nextToken()).build());
+            shards.addAll(response.shards());
+        }
+        return shards;
+    }
+
+    // A parent no longer listed has aged out of retention, so there is nothing left to wait for
+    private boolean parentFinished(String parentId, Map<String, CheckpointRepository.Checkpoint> checkpoints,
+                                   Set<String> listed) {
+        if (parentId == null || !listed.contains(parentId)) return true;
+        CheckpointRepository.Checkpoint checkpoint = checkpoints.get(parentId);
+        return checkpoint != null && checkpoint.isFinished();
+    }
+
+    private AtomicLong millisBehindGauge(String shardId) {
+        return millisBehind.computeIfAbsent(shardId, id -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("notifications.kinesis.millis-behind-latest", value, AtomicLong::get)
+                    .description("How far the shard reader is behind the tip of the stream")
+                    .tag("shard", id)
+                    .register(meterRegistry);
+            return value;
+        });
+    }
 
-        for (Map.Entry<String, String> entry : shardIterators.entrySet()) {
+    private class ShardReader implements Runnable {
+        final String shardId;
+        final boolean child;
+        final Thread thread;
+        String lastSequenceNumber;
+
+        ShardReader(String shardId, String lastSequenceNumber, boolean child) {
+            this.shardId = shardId;
+            this.lastSequenceNumber = lastSequenceNumber;
+            this.child = child;
+            this.thread = new Thread(this, "kinesis-" + shardId);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            AtomicLong behind = millisBehindGauge(shardId);
+            String iterator = null;
+            long delay = minIntervalMs;
+            long leaseRenewedAt = System.currentTimeMillis();
             try {
-                String shardId = entry.getKey();
-                String iterator = entry.getValue();
+                while (running) {
+                    try {
+                        // Checkpoints renew the lease too; an idle shard renews it every third of the lease
+                        if (System.currentTimeMillis() - leaseRenewedAt > leaseMs / 3) {
+                            if (!checkpointRepository.renewLease(streamName, shardId, owner, leaseMs)) {
+                                log.info("Kinesis shard {} taken over by another instance", shardId);
+                                return;
+                            }
+                            leaseRenewedAt = System.currentTimeMillis();
+                        }
+                        if (iterator == null) iterator = shardIterator();
 
-                if (iterator == null) continue;
+                        GetRecordsResponse response = kinesisClient.getRecords(
+                                GetRecordsRequest.builder()
+                                        .shardIterator(iterator)
+                                        .limit(maxRecords)
+                                        .build());
 
-                GetRecordsResponse response = kinesisClient.getRecords(
-                        GetRecordsRequest.builder()
-                                .shardIterator(iterator)
-                                .limit(100)
-                                .build());
+                        List<software.amazon.awssdk.services.kinesis.model.Record> records = response.records();
+                        for (software.amazon.awssdk.services.kinesis.model.Record record : records) {
+                            processRecord(record.data().asByteArray());
+                        }
+                        if (!records.isEmpty()) {
+                            lastSequenceNumber = records.get(records.size() - 1).sequenceNumber();
+                            if (!checkpointRepository.save(streamName, shardId, owner, lastSequenceNumber, leaseMs)) {
+                                log.info("Kinesis shard {} taken over by another instance", shardId);
+                                return;
+                            }
+                            leaseRenewedAt = System.currentTimeMillis();
+                        }
+                        long millisBehindLatest = response.millisBehindLatest() != null ? response.millisBehindLatest() : 0;
+                        behind.set(millisBehindLatest);
 
-                for (software.amazon.awssdk.services.kinesis.model.Record record : response.records()) {
-                    String data = record.data().asUtf8String();
-                    processEvent(data);
+                        iterator = response.nextShardIterator();
+                        if (iterator == null) {
+                            // Shard was closed by a reshard and has been read to the end
+                            checkpointRepository.markFinished(streamName, shardId, owner);
+                            log.info("Kinesis shard {} finished", shardId);
+                            return;
+                        }
+
+                        // Keep pulling while behind, back off gradually once caught up
+                        delay = !records.isEmpty() || millisBehindLatest > 0
+                                ? minIntervalMs
+                                : Math.min(delay * 2, maxIntervalMs);
+                    } catch (ExpiredIteratorException e) {
+                        iterator = null;
+                    } catch (ProvisionedThroughputExceededException e) {
+                        delay = maxIntervalMs;
+                    } catch (ResourceNotFoundException e) {
+                        log.warn("Kinesis shard {} no longer readable: {}", shardId, e.getMessage());
+                        return;
+                    } catch (Exception e) {
+                        log.error("Error polling Kinesis shard {}: {}", shardId, e.getMessage());
+                        delay = maxIntervalMs;
+                    }
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Discovery starts a fresh reader (here or elsewhere) if the shard still needs one
+                try {
+                    checkpointRepository.releaseLease(streamName, shardId, owner);
+                } catch (Exception e) {
+                    log.warn("Could not release Kinesis lease for shard {}: {}", shardId, e.getMessage());
                 }
+                readers.remove(shardId, this);
+            }
+        }
+
+        private String shardIterator() {
+            GetShardIteratorRequest.Builder request = GetShardIteratorRequest.builder()
+                    .streamName(streamName)
+                    .shardId(shardId);
+            if (lastSequenceNumber != null) {
+                request.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                        .startingSequenceNumber(lastSequenceNumber);
+            } else {
+                // A child of a reshard continues where its parents stopped, so read it all
+                request.shardIteratorType(child ? ShardIteratorType.TRIM_HORIZON : initialPosition);
+            }
+            return kinesisClient.getShardIterator(request.build()).shardIterator();
+        }
+    }
 
-                // Update iterator for next poll
-                shardIterators.put(shardId, response.nextShardIterator());
-            } catch (Exception e) {
-                log.error("Error polling Kinesis shard {}: {}", entry.getKey(), e.getMessage());
+    // The publisher packs an account's events into one record; older records hold one JSON event
+    private void processRecord(byte[] data) {
+        if (data.length > 0 && data[0] == '{') {
+            log.info("📩 Notification received: {}", new String(data, StandardCharsets.UTF_8));
+            return;
+        }
+        try {
+            for (byte[] event : EventFrames.unpack(data)) {
+                try {
+                    processEvent(TransactionEventCodec.decode(event));
+                } catch (UnknownEventTypeException e) {
+                    // Written by a newer publisher; the rest of the record is still ours
+                    log.debug("Skipping event of unknown type {}", e.getTypeNumber());
+                }
             }
+        } catch (EventFormatException e) {
+            log.warn("Skipping unreadable Kinesis record: {}", e.getMessage());
         }
     }
 
-    private void processEvent(String eventJson) {
-        log.info("📩 Notification received: {}", eventJson);
-        // In production: parse JSON, send email via SES, push notification, etc.
+    private void processEvent(TransactionEvent event) {
+        log.info("📩 Notification received: {}", event);
+        // In production: send email via SES, push notification, etc.
         // For demo: just log it
     }
 }
@@ -0,0 +1,11 @@
+-- Last processed sequence number per Kinesis shard, so a restart resumes where it stopped.
+-- finished marks a closed shard (after resharding) that has been read to the end; its
+-- children are only read once all their parents are finished.
+CREATE TABLE IF NOT EXISTS kinesis_checkpoint (
+    stream_name VARCHAR(128) NOT NULL,
+    shard_id VARCHAR(128) NOT NULL,
+    sequence_number VARCHAR(128),
+    finished BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (stream_name, shard_id)
+);
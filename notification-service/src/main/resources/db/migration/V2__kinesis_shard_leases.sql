@@ -0,0 +1,4 @@
+-- A shard is read by whichever instance holds its lease. The holder renews it while reading
+-- and only it may move the checkpoint; a lease past lease_expires_at can be taken over.
+ALTER TABLE kinesis_checkpoint ADD COLUMN IF NOT EXISTS lease_owner VARCHAR(128);
+ALTER TABLE kinesis_checkpoint ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP WITH TIME ZONE;
@@ -0,0 +1,3 @@
+#!/bin/bash
+# Creates the event stream when LocalStack is ready (docker compose --profile kinesis)
+awslocal kinesis create-stream --stream-name primeledger-events --shard-count 2
@@ -0,0 +1,186 @@
+package com.example.transaction.analytics;
+
+import com.example.transaction.dto.AnalyticsReport;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Ad-hoc range/granularity aggregations over a user's ledger.
+ *
+ * Each user's transactions are loaded once into a {@link ColumnarLedger} and kept in a
+ * size-bounded cache. Later queries only pull rows created since the last refresh; rows
+ * are re-read from a short overlap window behind the watermark so a transaction that
+ * commits slightly out of created_at order is still picked up.
+ */
+@Service
+public class AnalyticsService {
+
+    // Ten-thousandths, matching NUMERIC(19, 4)
+    private static final int AMOUNT_SCALE = 4;
+
+    private static final String SELECT_ROWS =
+            "SELECT id, created_at, (created_at::date - DATE '1970-01-01') AS epoch_day, " +
+            "(amount * 10000)::bigint AS amount_minor, type, category " +
+            "FROM transaction WHERE account_id IN (:accountIds)";
+
+    private static final TransactionCategory[] CATEGORIES = TransactionCategory.values();
+
+    private final NamedParameterJdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTemplate;
+    private final Cache<String, ColumnarLedger> ledgers;
+    private final long refreshIntervalMillis;
+    private final long refreshGraceMillis;
+
+    public AnalyticsService(DataSource dataSource,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${analytics.cache.max-bytes:268435456}") long maxBytes,
+                            @Value("${analytics.cache.expire-after-access-minutes:30}") long expireMinutes,
+                            @Value("${analytics.refresh-interval-ms:1000}") long refreshIntervalMillis,
+                            @Value("${analytics.refresh-grace-seconds:30}") long refreshGraceSeconds,
+                            @Value("${analytics.fetch-size:5000}") int fetchSize) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        this.cursorTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+        this.readOnlyTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTemplate.setReadOnly(true);
+
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.refreshGraceMillis = Duration.ofSeconds(refreshGraceSeconds).toMillis();
+        this.ledgers = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String user, ColumnarLedger ledger) -> ledger.weight())
+                .expireAfterAccess(Duration.ofMinutes(expireMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, ledgers, "transaction.analytics");
+    }
+
+    public AnalyticsReport aggregate(String username, List<Long> accountIds,
+                                     LocalDate from, LocalDate to, Granularity granularity) {
+        ColumnarLedger ledger = ledgerFor(username, accountIds);
+
+        // Map every day in the range to its output bucket
+        int fromDay = (int) from.toEpochDay();
+        int[] dayToBucket = new int[(int) (to.toEpochDay() - fromDay) + 1];
+        List<LocalDate> bucketStarts = new ArrayList<>();
+        LocalDate currentPeriod = null;
+        for (int i = 0; i < dayToBucket.length; i++) {
+            LocalDate day = from.plusDays(i);
+            LocalDate period = granularity.periodStart(day);
+            if (!period.equals(currentPeriod)) {
+                currentPeriod = period;
+                bucketStarts.add(day);
+            }
+            dayToBucket[i] = bucketStarts.size() - 1;
+        }
+
+        int buckets = bucketStarts.size();
+        long[] credits = new long[buckets];
+        long[] debits = new long[buckets];
+        int[] counts = new int[buckets];
+        long[] spendByCategory = new long[CATEGORIES.length];
+        ledger.aggregate(fromDay, dayToBucket, credits, debits, counts, spendByCategory);
+
+        List<AnalyticsReport.Bucket> result = new ArrayList<>(buckets);
+        for (int b = 0; b < buckets; b++) {
+            result.add(new AnalyticsReport.Bucket(bucketStarts.get(b),
+                    toAmount(credits[b]), toAmount(debits[b]), toAmount(credits[b] - debits[b]), counts[b]));
+        }
+        Map<String, BigDecimal> expenseByCategory = new LinkedHashMap<>();
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            if (spendByCategory[c] != 0) {
+                expenseByCategory.put(CATEGORIES[c].name(), toAmount(spendByCategory[c]));
+            }
+        }
+        return new AnalyticsReport(from, to, granularity, result, expenseByCategory);
+    }
+
+    private ColumnarLedger ledgerFor(String username, List<Long> accountIds) {
+        long[] ids = accountIds.stream().mapToLong(Long::longValue).sorted().toArray();
+
+        ColumnarLedger ledger = ledgers.get(username, user -> load(ids));
+        if (!Arrays.equals(ledger.getAccountIds(), ids)) {
+            // Account opened or closed since the ledger was built
+            ledgers.invalidate(username);
+            ledger = ledgers.get(username, user -> load(ids));
+        }
+
+        if (System.currentTimeMillis() - ledger.getRefreshedAtMillis() >= refreshIntervalMillis) {
+            if (refresh(ledger)) {
+                // Re-put so the cache picks up the new weight
+                ledgers.put(username, ledger);
+            }
+        }
+        return ledger;
+    }
+
+    private ColumnarLedger load(long[] accountIds) {
+        ColumnarLedger ledger = new ColumnarLedger(accountIds, 1024, refreshGraceMillis);
+        readRows(ledger, null);
+        ledger.markRefreshed(System.currentTimeMillis());
+        return ledger;
+    }
+
+    // Pull rows created since the watermark. Returns true if anything was added.
+    private boolean refresh(ColumnarLedger ledger) {
+        synchronized (ledger) {
+            long now = System.currentTimeMillis();
+            if (now - ledger.getRefreshedAtMillis() < refreshIntervalMillis) return false;
+
+            int before = ledger.size();
+            long watermark = ledger.getMaxCreatedAtMillis();
+            readRows(ledger, watermark == Long.MIN_VALUE ? null : new Timestamp(watermark - refreshGraceMillis));
+            ledger.markRefreshed(now);
+            return ledger.size() > before;
+        }
+    }
+
+    private void readRows(ColumnarLedger ledger, Timestamp since) {
+        List<Long> accountIds = Arrays.stream(ledger.getAccountIds()).boxed().collect(Collectors.toList());
+        MapSqlParameterSource params = new MapSqlParameterSource("accountIds", accountIds);
+        String sql = SELECT_ROWS;
+        if (since != null) {
+            sql += " AND created_at >= :since";
+            params.addValue("since", since);
+        }
+
+        String query = sql;
+        readOnlyTemplate.executeWithoutResult(status ->
+                cursorTemplate.query(query, params, rs -> {
+                    ledger.append(rs.getLong("id"),
+                            rs.getTimestamp("created_at").getTime(),
+                            rs.getInt("epoch_day"),
+                            rs.getLong("amount_minor"),
+                            TransactionType.valueOf(rs.getString("type")).ordinal(),
+                            TransactionCategory.valueOf(rs.getString("category")).ordinal());
+                }));
+    }
+
+    private static BigDecimal toAmount(long minor) {
+        return BigDecimal.valueOf(minor, AMOUNT_SCALE);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.transaction.archive;
+
+import com.example.transaction.repository.TransactionHistoryRepository;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves whole months of transaction rows older than archive.after-months into the
+ * {@link TransactionArchive}, oldest month first.
+ *
+ * A month goes in three steps, each safe to interrupt:
+ * 1. Write one segment per account range, checkpointing next_account_id after each. Rows
+ *    are streamed through a cursor into the segment writer, so a busy range isn't loaded
+ *    into memory as a whole.
+ * 2. In one DB transaction, fold the month into transaction_archive_summary and move the
+ *    watermark past it. From here on readers take the month from the archive.
+ * 3. Remove the month's rows from the table: monthly partitions that lie wholly below the
+ *    watermark are detached and dropped, and what's left (e.g. the pre-partitioning table)
+ *    is deleted in batches.
+ *
+ * Each step locks the state row with SKIP LOCKED, so only one instance works at a time.
+ * Every shard has its own state and watermark and is archived in turn; account ids never
+ * span shards, so their segments share the directory without overlapping.
+ */
+@Component
+public class ArchivalJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchivalJob.class);
+
+    private static final String MONTH_SUMMARY_SQL =
+            "INSERT INTO transaction_archive_summary (account_id, net_amount, row_count) " +
+            "SELECT account_id, SUM(CASE WHEN type IN ('DEPOSIT', 'TRANSFER_IN') THEN amount ELSE -amount END), COUNT(*) " +
+            "FROM transaction WHERE created_at >= ? AND created_at < ? GROUP BY account_id " +
+            "ON CONFLICT (account_id) DO UPDATE " +
+            "SET net_amount = transaction_archive_summary.net_amount + EXCLUDED.net_amount, " +
+            "row_count = transaction_archive_summary.row_count + EXCLUDED.row_count";
+
+    private static final String ARCHIVED_PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'transaction'::regclass AND c.relname LIKE 'transaction\\_p%' " +
+            "AND (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1]::timestamptz <= ?";
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    // Months younger than this stay in the table
+    @Value("${archive.after-months:3}")
+    private int afterMonths;
+
+    // Accounts per segment file
+    @Value("${archive.account-range-size:10000}")
+    private int accountRangeSize;
+
+    @Value("${archive.delete-batch-size:10000}")
+    private int deleteBatchSize;
+
+    @Value("${archive.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate cursorTemplate;
+
+    @PostConstruct
+    public void init() {
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+    }
+
+    @Scheduled(cron = "${archive.cron:0 45 1 * * *}")
+    public void run() {
+        if (!archive.isEnabled()) return;
+        YearMonth cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(afterMonths);
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int current = shard;
+            shardRouter.onShard(shard, () -> {
+                runShard(current, cutoff);
+                return null;
+            });
+        }
+    }
+
+    private void runShard(int shard, YearMonth cutoff) {
+        try {
+            int segments = 0;
+            Boolean progressed;
+            while ((progressed = transactionTemplate.execute(status -> archiveNext(cutoff))) != null && progressed) {
+                segments++;
+            }
+            int deleted = purgeArchivedRows();
+            if (segments > 0 || deleted > 0) {
+                log.info("Archival run on shard {} done: {} steps, {} archived rows removed from the table",
+                        shard, segments, deleted);
+            }
+        } catch (Exception e) {
+            log.error("Archival of shard {} stopped, will resume on the next run: {}", shard, e.getMessage());
+        }
+    }
+
+    // One segment, or one month boundary. Null when another instance holds the state row.
+    private Boolean archiveNext(YearMonth cutoff) {
+        List<Map<String, Object>> state = jdbcTemplate.queryForList(
+                "SELECT archived_before, next_account_id FROM transaction_archive_state WHERE id = 1 FOR UPDATE SKIP LOCKED");
+        if (state.isEmpty()) return null;
+
+        Timestamp archivedBefore = (Timestamp) state.get(0).get("archived_before");
+        long nextAccountId = ((Number) state.get(0).get("next_account_id")).longValue();
+        YearMonth month;
+        if (archivedBefore != null) {
+            month = YearMonth.from(archivedBefore.toInstant().atOffset(ZoneOffset.UTC));
+        } else {
+            Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created_at) FROM transaction", Timestamp.class);
+            if (oldest == null) return false;
+            month = YearMonth.from(oldest.toInstant().atOffset(ZoneOffset.UTC));
+        }
+        if (!month.isBefore(cutoff)) return false;
+
+        Timestamp monthStart = Timestamp.from(monthStart(month));
+        Timestamp monthEnd = Timestamp.from(monthStart(month.plusMonths(1)));
+        Long first = jdbcTemplate.queryForObject(
+                "SELECT MIN(account_id) FROM transaction WHERE created_at >= ? AND created_at < ? AND account_id >= ?",
+                Long.class, monthStart, monthEnd, nextAccountId);
+
+        if (first == null) {
+            // Every range of the month is written: hand the month over to the archive
+            jdbcTemplate.update(MONTH_SUMMARY_SQL, monthStart, monthEnd);
+            jdbcTemplate.update("UPDATE transaction_archive_state SET archived_before = ?, next_account_id = 0, " +
+                    "updated_at = NOW() WHERE id = 1", monthEnd);
+            log.info("Archived transactions of {}", month);
+            return true;
+        }
+
+        long last = first + accountRangeSize - 1;
+        Path path = archive.segmentPath(month, first, last);
+        ArchiveSegment.Writer writer = ArchiveSegment.writer(path);
+        cursorTemplate.query(
+                "SELECT id, account_id, amount, type, category, description, counterparty_account_number, created_at " +
+                "FROM transaction WHERE created_at >= ? AND created_at < ? AND account_id BETWEEN ? AND ? " +
+                "ORDER BY account_id, created_at, id",
+                rs -> {
+                    writer.add(TransactionHistoryRepository.VIEW_MAPPER.mapRow(rs, 0));
+                },
+                monthStart, monthEnd, first, last);
+        try {
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + path, e);
+        }
+        archive.add(month, first, last, path);
+        jdbcTemplate.update("UPDATE transaction_archive_state SET next_account_id = ?, updated_at = NOW() WHERE id = 1",
+                last + 1);
+        return true;
+    }
+
+    // Step 3: rows below the watermark are already served from the archive
+    private int purgeArchivedRows() {
+        Instant watermark = archive.watermark();
+        if (watermark == null) return 0;
+
+        for (String partition : jdbcTemplate.queryForList(ARCHIVED_PARTITIONS_SQL, String.class, Timestamp.from(watermark))) {
+            // CONCURRENTLY doesn't block inserts; it must run outside a transaction block
+            jdbcTemplate.execute("ALTER TABLE transaction DETACH PARTITION " + partition + " CONCURRENTLY");
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            log.info("Dropped archived transaction partition {}", partition);
+        }
+
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(
+                    "DELETE FROM transaction WHERE (id, created_at) IN " +
+                    "(SELECT id, created_at FROM transaction WHERE created_at < ? LIMIT ?)",
+                    Timestamp.from(watermark), deleteBatchSize);
+            total += deleted;
+        } while (deleted > 0);
+        return total;
+    }
+
+    private static Instant monthStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.transaction.archive;
+
+import com.example.transaction.dto.TransactionView;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One archive file: the transactions of one account range in one month, sorted by
+ * (account_id, created_at, id) and stored column by column.
+ *
+ * Each column is varint-encoded (deltas for the sorted id, account and timestamp columns,
+ * a small dictionary for type and category) and deflated on its own, so a lookup only
+ * inflates the columns it needs. The footer holds the row count, min/max account id and
+ * created_at, the column offsets and a Bloom filter over the account ids; it is read once
+ * when the segment is opened, and is enough to skip the file for most lookups.
+ */
+final class ArchiveSegment {
+
+    private static final int MAGIC = 0x504C5347; // "PLSG"
+    private static final byte VERSION = 1;
+    private static final int AMOUNT_SCALE = 4;
+
+    private static final int ACCOUNT_ID = 0;
+    private static final int CREATED_AT = 1;
+    private static final int ID = 2;
+    private static final int AMOUNT = 3;
+    private static final int TYPE = 4;
+    private static final int CATEGORY = 5;
+    private static final int DESCRIPTION = 6;
+    private static final int COUNTERPARTY = 7;
+    private static final int COLUMNS = 8;
+
+    private final Path path;
+    private final int rowCount;
+    private final long minAccountId;
+    private final long maxAccountId;
+    private final Instant minCreatedAt;
+    private final Instant maxCreatedAt;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final BloomFilter accounts;
+
+    private ArchiveSegment(Path path, ByteBuffer footer) {
+        this.path = path;
+        this.rowCount = footer.getInt();
+        this.minAccountId = footer.getLong();
+        this.maxAccountId = footer.getLong();
+        this.minCreatedAt = fromMicros(footer.getLong());
+        this.maxCreatedAt = fromMicros(footer.getLong());
+        this.offsets = new long[COLUMNS];
+        this.compressedLengths = new int[COLUMNS];
+        this.rawLengths = new int[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            offsets[i] = footer.getLong();
+            compressedLengths[i] = footer.getInt();
+            rawLengths[i] = footer.getInt();
+        }
+        this.accounts = BloomFilter.readFrom(footer);
+    }
+
+    Path getPath() { return path; }
+    int getRowCount() { return rowCount; }
+    Instant getMinCreatedAt() { return minCreatedAt; }
+    Instant getMaxCreatedAt() { return maxCreatedAt; }
+
+    // Cheap footer-only check: false means no row for these accounts is in the file
+    boolean mightContain(Collection<Long> accountIds) {
+        for (long accountId : accountIds) {
+            if (accountId >= minAccountId && accountId <= maxAccountId && accounts.mightContain(accountId)) return true;
+        }
+        return false;
+    }
+
+    // Overlap with [from, to); either end may be null
+    boolean overlaps(Instant from, Instant to) {
+        return (from == null || !maxCreatedAt.isBefore(from)) && (to == null || minCreatedAt.isBefore(to));
+    }
+
+    /**
+     * Rows for the given accounts with from <= created_at < to, in file order
+     * (account, then created_at, then id).
+     */
+    List<TransactionView> read(Collection<Long> accountIds, Instant from, Instant to) throws IOException {
+        List<TransactionView> rows = new ArrayList<>();
+        if (!mightContain(accountIds) || !overlaps(from, to)) return rows;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] accountColumn = new long[rowCount];
+            ByteBuffer in = column(channel, ACCOUNT_ID);
+            long account = 0;
+            boolean any = false;
+            boolean[] wanted = new boolean[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                account += readVarLong(in);
+                accountColumn[i] = account;
+                wanted[i] = accountIds.contains(account);
+                any |= wanted[i];
+            }
+            // Bloom filter false positive
+            if (!any) return rows;
+
+            long[] createdAt = deltas(column(channel, CREATED_AT));
+            long[] ids = deltas(column(channel, ID));
+            ByteBuffer amounts = column(channel, AMOUNT);
+            ByteBuffer types = column(channel, TYPE);
+            ByteBuffer categories = column(channel, CATEGORY);
+            ByteBuffer descriptions = column(channel, DESCRIPTION);
+            ByteBuffer counterparties = column(channel, COUNTERPARTY);
+            List<String> typeNames = readDictionary(types);
+            List<String> categoryNames = readDictionary(categories);
+
+            long fromMicros = from != null ? toMicros(from) : Long.MIN_VALUE;
+            long toMicros = to != null ? toMicros(to) : Long.MAX_VALUE;
+            for (int i = 0; i < rowCount; i++) {
+                long amount = unzigzag(readVarLong(amounts));
+                int type = (int) readVarLong(types);
+                int category = (int) readVarLong(categories);
+                String description = readString(descriptions);
+                String counterparty = readString(counterparties);
+                if (!wanted[i] || createdAt[i] < fromMicros || createdAt[i] >= toMicros) continue;
+
+                rows.add(new TransactionView(ids[i], accountColumn[i], BigDecimal.valueOf(amount, AMOUNT_SCALE),
+                        TransactionType.valueOf(typeNames.get(type)),
+                        TransactionCategory.valueOf(categoryNames.get(category)),
+                        description, counterparty, fromMicros(createdAt[i])));
+            }
+        }
+        return rows;
+    }
+
+    static ArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            readFully(channel, trailer, size - 8);
+            int footerLength = trailer.getInt(0);
+            if (trailer.getInt(4) != MAGIC || footerLength <= 0 || footerLength > size - 13) {
+                throw new IOException("Not an archive segment: " + path);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(footerLength);
+            readFully(channel, footer, size - 8 - footerLength);
+            return new ArchiveSegment(path, footer);
+        }
+    }
+
+    /**
+     * Start a segment at path. Rows are added one at a time (sorted by account, created_at,
+     * id) and only their encoded columns are kept, so a range with many rows never has to be
+     * held as row objects. The file is written under a temporary name, synced and then
+     * renamed by {@link Writer#finish}, so a segment is either complete or absent.
+     */
+    static Writer writer(Path path) {
+        return new Writer(path);
+    }
+
+    static final class Writer {
+
+        private final Path path;
+        private final Column[] columns = new Column[COLUMNS];
+        private final Map<String, Integer> typeIds = new LinkedHashMap<>();
+        private final Map<String, Integer> categoryIds = new LinkedHashMap<>();
+        private final Column typeIndexes = new Column();
+        private final Column categoryIndexes = new Column();
+        private final List<Long> accountIds = new ArrayList<>();
+
+        private int rowCount;
+        private long firstAccount;
+        private long prevAccount;
+        private long prevCreatedAt;
+        private long prevId;
+        private long minCreatedAt = Long.MAX_VALUE;
+        private long maxCreatedAt = Long.MIN_VALUE;
+
+        private Writer(Path path) {
+            this.path = path;
+            for (int i = 0; i < COLUMNS; i++) columns[i] = new Column();
+        }
+
+        void add(TransactionView row) {
+            long account = row.getAccountId();
+            long createdAt = toMicros(row.getCreatedAt());
+            if (account < prevAccount) throw new IllegalArgumentException("Rows are not sorted by account");
+
+            if (rowCount == 0) firstAccount = account;
+            if (rowCount == 0 || account != prevAccount) accountIds.add(account);
+            columns[ACCOUNT_ID].putVarLong(account - prevAccount);
+            columns[CREATED_AT].putVarLong(zigzag(createdAt - prevCreatedAt));
+            columns[ID].putVarLong(zigzag(row.getId() - prevId));
+            columns[AMOUNT].putVarLong(zigzag(row.getAmount().setScale(AMOUNT_SCALE).unscaledValue().longValueExact()));
+            typeIndexes.putVarLong(typeIds.computeIfAbsent(row.getType().name(), name -> typeIds.size()));
+            categoryIndexes.putVarLong(categoryIds.computeIfAbsent(row.getCategory().name(), name -> categoryIds.size()));
+            columns[DESCRIPTION].putString(row.getDescription());
+            columns[COUNTERPARTY].putString(row.getCounterpartyAccountNumber());
+
+            prevAccount = account;
+            prevCreatedAt = createdAt;
+            prevId = row.getId();
+            minCreatedAt = Math.min(minCreatedAt, createdAt);
+            maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+            rowCount++;
+        }
+
+        void finish() throws IOException {
+            if (rowCount == 0) throw new IllegalArgumentException("Empty archive segment");
+
+            columns[TYPE].putDictionary(typeIds.keySet(), typeIndexes);
+            columns[CATEGORY].putDictionary(categoryIds.keySet(), categoryIndexes);
+            BloomFilter bloom = BloomFilter.forKeys(accountIds.size());
+            accountIds.forEach(bloom::add);
+
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(5).putInt(MAGIC).put(VERSION).flip();
+                writeFully(channel, header);
+
+                ByteBuffer footer = ByteBuffer.allocate(4 + 8 * 4 + COLUMNS * 16 + bloom.serializedSize() + 8);
+                footer.putInt(rowCount)
+                        .putLong(firstAccount)
+                        .putLong(prevAccount)
+                        .putLong(minCreatedAt)
+                        .putLong(maxCreatedAt);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    for (Column column : columns) {
+                        byte[] compressed = column.deflate(deflater);
+                        footer.putLong(channel.position()).putInt(compressed.length).putInt(column.size());
+                        writeFully(channel, ByteBuffer.wrap(compressed));
+                    }
+                } finally {
+                    deflater.end();
+                }
+                bloom.writeTo(footer);
+                int footerLength = footer.position();
+                footer.putInt(footerLength).putInt(MAGIC).flip();
+                writeFully(channel, footer);
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private ByteBuffer column(FileChannel channel, int index) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[index]);
+        readFully(channel, compressed, offsets[index]);
+        byte[] raw = new byte[rawLengths[index]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column " + index + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private long[] deltas(ByteBuffer in) {
+        long[] values = new long[rowCount];
+        long value = 0;
+        for (int i = 0; i < rowCount; i++) {
+            value += unzigzag(readVarLong(in));
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static List<String> readDictionary(ByteBuffer in) {
+        int size = (int) readVarLong(in);
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) names.add(readString(in));
+        return names;
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    // Length + 1, so 0 can stand for null
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in) - 1;
+        if (length < 0) return null;
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long toMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private static Instant fromMicros(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Truncated archive segment");
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static final class Column extends ByteArrayOutputStream {
+
+        void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        // Names first, then one varint index per row
+        void putDictionary(Collection<String> names, Column indexes) {
+            putVarLong(names.size());
+            names.forEach(this::putString);
+            write(indexes.buf, 0, indexes.count);
+        }
+
+        byte[] deflate(Deflater deflater) {
+            deflater.reset();
+            deflater.setInput(buf, 0, count);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, count / 4));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                out.write(chunk, 0, length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
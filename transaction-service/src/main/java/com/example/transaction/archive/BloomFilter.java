@@ -0,0 +1,69 @@
+package com.example.transaction.archive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over account ids for an archive segment footer. About 10 bits and 7 probes
+ * per distinct account, so roughly 1% of lookups for an absent account still open the segment.
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int PROBES = 7;
+
+    private final long[] bits;
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+    }
+
+    static BloomFilter forKeys(int expectedKeys) {
+        int words = Math.max(1, (expectedKeys * BITS_PER_KEY + 63) / 64);
+        return new BloomFilter(new long[words]);
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < PROBES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < PROBES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    int serializedSize() {
+        return 4 + bits.length * 8;
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putInt(bits.length);
+        for (long word : bits) out.putLong(word);
+    }
+
+    static BloomFilter readFrom(ByteBuffer in) {
+        long[] bits = new long[in.getInt()];
+        for (int i = 0; i < bits.length; i++) bits[i] = in.getLong();
+        return new BloomFilter(bits);
+    }
+
+    // SplitMix64 finalizer, so sequential account ids spread over the whole filter
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
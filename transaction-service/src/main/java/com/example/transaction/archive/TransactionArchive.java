@@ -0,0 +1,235 @@
+package com.example.transaction.archive;
+
+import com.example.transaction.dto.TransactionPage;
+import com.example.transaction.dto.TransactionView;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for transaction rows older than the archive watermark.
+ *
+ * {@link ArchivalJob} moves whole (UTC) months out of the transaction table into
+ * {@link ArchiveSegment} files under {@code <dir>/<yyyy-MM>/<first>-<last>.seg}, one per
+ * account range. Everything created before the watermark (transaction_archive_state) lives
+ * here and everything after it in the table, so readers split a query at the watermark and
+ * concatenate the two sides without de-duplicating.
+ *
+ * A lookup only opens the files for the months and account ranges it asks about, and skips
+ * most of those from the footer alone; footers are cached. When several instances serve
+ * traffic the directory has to be shared between them. The watermark is per shard (read
+ * from whichever shard is current), the directory is shared by all of them.
+ */
+@Component
+public class TransactionArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private static final Comparator<TransactionView> NEWEST_FIRST = Comparator
+            .comparing(TransactionView::getCreatedAt).thenComparing(TransactionView::getId).reversed();
+    private static final Comparator<TransactionView> OLDEST_FIRST = NEWEST_FIRST.reversed();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${archive.dir:./data/transaction-archive}")
+    private String dir;
+
+    @Value("${archive.footer-cache-size:10000}")
+    private long footerCacheSize;
+
+    private Path root;
+    // Month -> first account id of each segment -> segment file
+    private final NavigableMap<YearMonth, NavigableMap<Long, SegmentFile>> catalog = new ConcurrentSkipListMap<>();
+    // Watermarks of every shard the catalog is known to cover
+    private final Set<Instant> cataloguedWatermarks = ConcurrentHashMap.newKeySet();
+    private LoadingCache<Path, ArchiveSegment> footers;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) return;
+        root = Path.of(dir);
+        Files.createDirectories(root);
+        footers = Caffeine.newBuilder()
+                .maximumSize(footerCacheSize)
+                .build(path -> {
+                    try {
+                        return ArchiveSegment.open(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        scan();
+        log.info("Transaction archive at {}: {} months", root, catalog.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rows created before this are in the archive, the rest are in the table. Null until
+     * the first month has been archived (and always when the archive is disabled).
+     */
+    public Instant watermark() {
+        if (!enabled) return null;
+        Timestamp watermark = jdbcTemplate.queryForObject(
+                "SELECT archived_before FROM transaction_archive_state WHERE id = 1", Timestamp.class);
+        Instant instant = watermark != null ? watermark.toInstant() : null;
+        // Another instance sharing the directory archived more months
+        if (instant != null && !cataloguedWatermarks.contains(instant)) rescan(instant);
+        return instant;
+    }
+
+    /**
+     * One page of archived history, newest first, with the same filters as
+     * TransactionHistoryRepository.findPage. Stops reading months once it has enough rows.
+     */
+    public List<TransactionView> findPage(Collection<Long> accountIds, TransactionType type, TransactionCategory category,
+                                          Instant from, Instant to, TransactionPage.Cursor after, int limit) {
+        Set<Long> accounts = new LinkedHashSet<>(accountIds);
+        Instant upper = to;
+        if (after != null) {
+            // The cursor row itself is excluded by the comparison below, so read up to and including its instant
+            Instant cursorBound = after.getCreatedAt().plusNanos(1000);
+            if (upper == null || cursorBound.isBefore(upper)) upper = cursorBound;
+        }
+
+        List<TransactionView> rows = new ArrayList<>();
+        for (YearMonth month : months(from, upper, true)) {
+            for (TransactionView row : readMonth(month, accounts, from, upper)) {
+                if (type != null && row.getType() != type) continue;
+                if (category != null && row.getCategory() != category) continue;
+                if (after != null && !isBefore(row, after)) continue;
+                rows.add(row);
+            }
+            // Older months can't outrank what we already have
+            if (rows.size() >= limit) break;
+        }
+        rows.sort(NEWEST_FIRST);
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    // Every archived row for the accounts in [from, to), oldest first, one month at a time
+    public void forEach(Collection<Long> accountIds, Instant from, Instant to, Consumer<TransactionView> consumer) {
+        Set<Long> accounts = new LinkedHashSet<>(accountIds);
+        for (YearMonth month : months(from, to, false)) {
+            List<TransactionView> rows = readMonth(month, accounts, from, to);
+            rows.sort(OLDEST_FIRST);
+            rows.forEach(consumer);
+        }
+    }
+
+    // Register a segment written by ArchivalJob
+    void add(YearMonth month, long firstAccountId, long lastAccountId, Path path) {
+        catalog.computeIfAbsent(month, m -> new ConcurrentSkipListMap<>())
+                .put(firstAccountId, new SegmentFile(lastAccountId, path));
+        footers.invalidate(path);
+    }
+
+    Path segmentPath(YearMonth month, long firstAccountId, long lastAccountId) {
+        return root.resolve(month.toString()).resolve(String.format("%020d-%020d.seg", firstAccountId, lastAccountId));
+    }
+
+    private List<YearMonth> months(Instant from, Instant to, boolean newestFirst) {
+        if (catalog.isEmpty()) return List.of();
+        YearMonth lower = from != null ? YearMonth.from(from.atOffset(ZoneOffset.UTC)) : catalog.firstKey();
+        YearMonth upper = to != null ? YearMonth.from(to.atOffset(ZoneOffset.UTC)) : catalog.lastKey();
+        if (lower.isAfter(upper)) return List.of();
+        NavigableMap<YearMonth, ?> range = catalog.subMap(lower, true, upper, true);
+        return new ArrayList<>(newestFirst ? range.descendingKeySet() : range.keySet());
+    }
+
+    private List<TransactionView> readMonth(YearMonth month, Set<Long> accounts, Instant from, Instant to) {
+        NavigableMap<Long, SegmentFile> segments = catalog.get(month);
+        List<TransactionView> rows = new ArrayList<>();
+        if (segments == null) return rows;
+
+        Set<Path> files = new LinkedHashSet<>();
+        for (long accountId : accounts) {
+            Map.Entry<Long, SegmentFile> entry = segments.floorEntry(accountId);
+            if (entry != null && accountId <= entry.getValue().lastAccountId) files.add(entry.getValue().path);
+        }
+        try {
+            for (Path file : files) {
+                rows.addAll(footers.get(file).read(accounts, from, to));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archived transactions", e);
+        }
+        return rows;
+    }
+
+    // Strictly after the cursor in newest-first order
+    private static boolean isBefore(TransactionView row, TransactionPage.Cursor cursor) {
+        int byTime = row.getCreatedAt().compareTo(cursor.getCreatedAt());
+        return byTime < 0 || (byTime == 0 && row.getId() < cursor.getId());
+    }
+
+    private synchronized void rescan(Instant watermark) {
+        if (cataloguedWatermarks.contains(watermark)) return;
+        try {
+            scan();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the transaction archive", e);
+        }
+        cataloguedWatermarks.add(watermark);
+    }
+
+    private void scan() throws IOException {
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(".seg") || file.getParent().equals(root)) continue;
+
+                YearMonth month = YearMonth.parse(file.getParent().getFileName().toString());
+                int dash = name.indexOf('-');
+                long first = Long.parseLong(name.substring(0, dash));
+                long last = Long.parseLong(name.substring(dash + 1, name.length() - 4));
+                catalog.computeIfAbsent(month, m -> new ConcurrentSkipListMap<>()).put(first, new SegmentFile(last, file));
+            }
+        }
+    }
+
+    private static final class SegmentFile {
+        final long lastAccountId;
+        final Path path;
+
+        SegmentFile(long lastAccountId, Path path) {
+            this.lastAccountId = lastAccountId;
+            this.path = path;
+        }
+    }
+}
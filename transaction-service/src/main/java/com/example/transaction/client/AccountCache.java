@@ -0,0 +1,136 @@
+package com.example.transaction.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local copy of account-service data for {@link AccountClient}.
+ *
+ * Identity (id, number, owner, type) hardly ever changes and is kept for a long time.
+ * Balances are kept briefly and evicted as soon as this instance posts to the account
+ * or a balance-change event for it shows up on the transactions topic. A user's account
+ * list is its own short-lived entry, so new accounts show up without an event.
+ * All caches report to actuator under cache.* with cache=account.*.
+ */
+@Component
+public class AccountCache {
+
+    private final Cache<Long, AccountClient.Account> identities;
+    private final Cache<String, Long> idsByNumber;
+    private final Cache<Long, Balance> balances;
+    private final Cache<String, List<Long>> userAccounts;
+
+    public AccountCache(MeterRegistry meterRegistry,
+                        @Value("${account-cache.max-entries:100000}") long maxEntries,
+                        @Value("${account-cache.identity-ttl-seconds:3600}") long identityTtlSeconds,
+                        @Value("${account-cache.balance-ttl-seconds:5}") long balanceTtlSeconds,
+                        @Value("${account-cache.user-accounts-ttl-seconds:30}") long userAccountsTtlSeconds) {
+        this.identities = build(maxEntries, identityTtlSeconds);
+        this.idsByNumber = build(maxEntries, identityTtlSeconds);
+        this.balances = build(maxEntries, balanceTtlSeconds);
+        this.userAccounts = build(maxEntries, userAccountsTtlSeconds);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, identities, "account.identity");
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByNumber, "account.number");
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "account.balance");
+        CaffeineCacheMetrics.monitor(meterRegistry, userAccounts, "account.user-accounts");
+    }
+
+    private static <K, V> Cache<K, V> build(long maxEntries, long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    // Full account if both identity and a fresh balance are cached, otherwise null
+    public AccountClient.Account get(Long accountId) {
+        AccountClient.Account identity = identities.getIfPresent(accountId);
+        if (identity == null) return null;
+        Balance balance = balances.getIfPresent(accountId);
+        if (balance == null) return null;
+        return assemble(identity, balance);
+    }
+
+    public AccountClient.Account getByNumber(String accountNumber) {
+        Long accountId = idsByNumber.getIfPresent(accountNumber);
+        return accountId != null ? get(accountId) : null;
+    }
+
+    // All of a user's accounts, or null if any part of the list is missing or stale
+    public List<AccountClient.Account> getForUser(String username) {
+        List<Long> accountIds = userAccounts.getIfPresent(username);
+        if (accountIds == null) return null;
+
+        List<AccountClient.Account> accounts = new ArrayList<>(accountIds.size());
+        for (Long accountId : accountIds) {
+            AccountClient.Account account = get(accountId);
+            if (account == null) return null;
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    public void put(AccountClient.Account account) {
+        if (account == null || account.getId() == null) return;
+        identities.put(account.getId(), assemble(account, null));
+        if (account.getAccountNumber() != null) {
+            idsByNumber.put(account.getAccountNumber(), account.getId());
+        }
+        balances.put(account.getId(), new Balance(account.getBalance(), account.getVersion()));
+    }
+
+    public void putForUser(String username, List<AccountClient.Account> accounts) {
+        List<Long> accountIds = new ArrayList<>(accounts.size());
+        for (AccountClient.Account account : accounts) {
+            put(account);
+            accountIds.add(account.getId());
+        }
+        userAccounts.put(username, List.copyOf(accountIds));
+    }
+
+    public void evictBalance(Long accountId) {
+        if (accountId != null) balances.invalidate(accountId);
+    }
+
+    public void evictBalanceByNumber(String accountNumber) {
+        if (accountNumber == null) return;
+        Long accountId = idsByNumber.getIfPresent(accountNumber);
+        if (accountId != null) balances.invalidate(accountId);
+    }
+
+    // Callers get their own copy so nothing they do can leak into the cache
+    private static AccountClient.Account assemble(AccountClient.Account identity, Balance balance) {
+        AccountClient.Account copy = new AccountClient.Account();
+        copy.setId(identity.getId());
+        copy.setAccountNumber(identity.getAccountNumber());
+        copy.setOwnerName(identity.getOwnerName());
+        copy.setUserId(identity.getUserId());
+        copy.setAccountType(identity.getAccountType());
+        if (balance != null) {
+            copy.setBalance(balance.amount);
+            copy.setVersion(balance.version);
+        }
+        return copy;
+    }
+
+    private static class Balance {
+        final BigDecimal amount;
+        final Long version;
+
+        Balance(BigDecimal amount, Long version) {
+            this.amount = amount;
+            this.version = version;
+        }
+    }
+}
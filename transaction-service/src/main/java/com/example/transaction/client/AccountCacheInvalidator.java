@@ -0,0 +1,65 @@
+package com.example.transaction.client;
+
+import com.example.events.TransactionEvent;
+import com.example.events.TransactionEventCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Drops cached balances when any instance publishes a balance change on the transactions
+ * topic. Every instance consumes with its own group id so each one sees every event.
+ * Only active where Kafka is configured; elsewhere the short balance TTL covers it.
+ */
+@Component
+public class AccountCacheInvalidator {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountCacheInvalidator.class);
+
+    @Autowired
+    private AccountCache cache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @KafkaListener(topics = "transactions",
+            groupId = "transaction-service-cache-#{T(java.util.UUID).randomUUID()}",
+            autoStartup = "${account-cache.invalidation.enabled:true}",
+            properties = "auto.offset.reset=latest")
+    public void onEvent(byte[] message) {
+        try {
+            if (TransactionEventCodec.isEncoded(message)) {
+                TransactionEvent event = TransactionEventCodec.decode(message);
+                cache.evictBalance(event.getAccountId());
+                if (event.getCounterpartyAccountNumber() != null) {
+                    cache.evictBalanceByNumber(event.getCounterpartyAccountNumber());
+                }
+            } else {
+                onLegacyEvent(message);
+            }
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable transactions event: {}", e.getMessage());
+        }
+    }
+
+    // JSON events written before the binary format
+    private void onLegacyEvent(byte[] message) throws IOException {
+        JsonNode event = objectMapper.readTree(message);
+        if (event.hasNonNull("accountId")) {
+            cache.evictBalance(event.get("accountId").asLong());
+        }
+        // Transfers carry the source id and the destination account number
+        if (event.hasNonNull("from")) {
+            cache.evictBalance(event.get("from").asLong());
+        }
+        if (event.hasNonNull("to")) {
+            cache.evictBalanceByNumber(event.get("to").asText());
+        }
+    }
+}
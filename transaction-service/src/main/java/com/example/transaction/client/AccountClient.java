@@ -1,80 +1,129 @@
 package com.example.transaction.client;
 
+import com.example.transaction.exception.AccountServiceException;
+import com.example.transaction.security.JwtUtil;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * HTTP client for account-service. Reads are served from {@link AccountCache} when it
+ * has fresh data; postings always go through and evict the balances they touched.
+ */
 @Component
 public class AccountClient {
 
+    private static final int LOOKUP_MAX_SIZE = 500;
+
     private final WebClient webClient;
+    private final AccountCache cache;
+    private final JwtUtil jwtUtil;
 
     public AccountClient(WebClient.Builder webClientBuilder,
+                         AccountCache cache,
+                         JwtUtil jwtUtil,
                          @Value("${account-service.url:http://localhost:8081}") String accountServiceUrl) {
         this.webClient = webClientBuilder.baseUrl(accountServiceUrl).build();
+        this.cache = cache;
+        this.jwtUtil = jwtUtil;
     }
 
-    public Account getAccount(Long accountId, String jwtToken) {
-        return webClient.get()
-                .uri("/accounts/" + accountId)
-                .header("Authorization", "Bearer " + jwtToken)
-                .retrieve()
-                .bodyToMono(Account.class)
-                .block();
-    }
-
-    public Account getAccountByNumber(String accountNumber, String jwtToken) {
-        try {
-            return webClient.get()
-                    .uri("/accounts/by-number/" + accountNumber)
-                    .header("Authorization", "Bearer " + jwtToken)
-                    .retrieve()
-                    .bodyToMono(Account.class)
-                    .block();
-        } catch (Exception e) {
-            return null;
+    /**
+     * Resolve many accounts in one call. Ids only match the caller's own accounts;
+     * account numbers match any account. Unknown keys are left out of the result.
+     */
+    public List<Account> lookup(Collection<Long> ids, Collection<String> accountNumbers, String jwtToken) {
+        List<Account> found = new ArrayList<>();
+        List<String> missingNumbers = new ArrayList<>();
+        for (String accountNumber : new LinkedHashSet<>(accountNumbers)) {
+            Account cached = cache.getByNumber(accountNumber);
+            if (cached != null) {
+                found.add(cached);
+            } else {
+                missingNumbers.add(accountNumber);
+            }
         }
+        List<Long> missingIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        // account-service takes at most LOOKUP_MAX_SIZE of each key type per call
+        for (int i = 0; i < Math.max(missingIds.size(), missingNumbers.size()); i += LOOKUP_MAX_SIZE) {
+            List<Account> fetched = lookupAsync(
+                    missingIds.subList(Math.min(i, missingIds.size()), Math.min(i + LOOKUP_MAX_SIZE, missingIds.size())),
+                    missingNumbers.subList(Math.min(i, missingNumbers.size()), Math.min(i + LOOKUP_MAX_SIZE, missingNumbers.size())),
+                    jwtToken).block();
+            if (fetched != null) found.addAll(fetched);
+        }
+        return found;
     }
 
-    public void updateAccountBalance(Long accountId, BigDecimal newBalance, String jwtToken) {
-        BalanceUpdateRequest request = new BalanceUpdateRequest();
-        request.setNewBalance(newBalance);
+    private Mono<List<Account>> lookupAsync(List<Long> ids, List<String> accountNumbers, String jwtToken) {
+        LookupRequest request = new LookupRequest();
+        request.setIds(ids);
+        request.setAccountNumbers(accountNumbers);
 
-        webClient.put()
-                .uri("/accounts/" + accountId + "/balance")
+        return webClient.post()
+                .uri("/accounts/lookup")
                 .header("Authorization", "Bearer " + jwtToken)
                 .bodyValue(request)
                 .retrieve()
-                .bodyToMono(Account.class)
-                .block();
+                .onStatus(HttpStatus::isError, response -> response.bodyToMono(ErrorBody.class)
+                        .defaultIfEmpty(new ErrorBody())
+                        .map(body -> new AccountServiceException(response.rawStatusCode(), body.getMessage())))
+                .bodyToFlux(Account.class)
+                .collectList()
+                .doOnNext(accounts -> accounts.forEach(cache::put));
     }
 
-    // System-level balance update (for crediting transfer recipients)
-    // Uses the same endpoint but with the JWT of the sending user
-    // In production, this would use service-to-service auth
-    public void updateAccountBalanceSystem(Long accountId, BigDecimal newBalance, String jwtToken) {
-        BalanceUpdateRequest request = new BalanceUpdateRequest();
-        request.setNewBalance(newBalance);
+    /**
+     * Apply all legs in a single account-service transaction. Emits the resulting account
+     * state for each leg, in request order; nothing is sent until the Mono is subscribed.
+     */
+    public Mono<PostingResult> post(List<PostingLeg> legs, String jwtToken) {
+        PostingRequest request = new PostingRequest();
+        request.setLegs(legs);
 
-        webClient.put()
-                .uri("/accounts/" + accountId + "/balance")
+        return webClient.post()
+                .uri("/accounts/postings")
                 .header("Authorization", "Bearer " + jwtToken)
-                .header("X-System-Call", "true")
                 .bodyValue(request)
                 .retrieve()
-                .bodyToMono(Account.class)
-                .block();
+                .onStatus(HttpStatus::isError, response -> response.bodyToMono(ErrorBody.class)
+                        .defaultIfEmpty(new ErrorBody())
+                        .map(body -> new AccountServiceException(response.rawStatusCode(), body.getMessage())))
+                .bodyToMono(PostingResult.class)
+                // Evict even on failure: the outcome of a timed-out posting is unknown
+                .doFinally(signal -> {
+                    for (PostingLeg leg : legs) {
+                        cache.evictBalance(leg.getAccountId());
+                        cache.evictBalanceByNumber(leg.getAccountNumber());
+                    }
+                });
     }
 
     public Account[] getAllAccounts(String jwtToken) {
-        return webClient.get()
+        String username = jwtUtil.extractUsername(jwtToken);
+        List<Account> cached = cache.getForUser(username);
+        if (cached != null) return cached.toArray(new Account[0]);
+
+        Account[] accounts = webClient.get()
                 .uri("/accounts")
                 .header("Authorization", "Bearer " + jwtToken)
                 .retrieve()
                 .bodyToMono(Account[].class)
                 .block();
+        if (accounts != null) {
+            cache.putForUser(username, Arrays.asList(accounts));
+        }
+        return accounts;
     }
 
     public static class Account {
@@ -104,9 +153,69 @@ public class AccountClient {
         public void setAccountType(String accountType) { this.accountType = accountType; }
     }
 
-    public static class BalanceUpdateRequest {
-        private BigDecimal newBalance;
-        public BigDecimal getNewBalance() { return newBalance; }
-        public void setNewBalance(BigDecimal newBalance) { this.newBalance = newBalance; }
+    public static class PostingLeg {
+        private Long accountId;
+        private String accountNumber;
+        private BigDecimal delta;
+        private boolean counterparty;
+        // Rejects the posting with 409 if this Stripe checkout session was already credited
+        private String paymentSessionId;
+
+        public PostingLeg() {}
+
+        // A change to one of the caller's own accounts (ownership is checked)
+        public static PostingLeg owned(Long accountId, BigDecimal delta) {
+            PostingLeg leg = new PostingLeg();
+            leg.setAccountId(accountId);
+            leg.setDelta(delta);
+            return leg;
+        }
+
+        // A credit to somebody else's account, e.g. the receiving side of a transfer
+        public static PostingLeg counterpartyCredit(String accountNumber, BigDecimal amount) {
+            PostingLeg leg = new PostingLeg();
+            leg.setAccountNumber(accountNumber);
+            leg.setDelta(amount);
+            leg.setCounterparty(true);
+            return leg;
+        }
+
+        public Long getAccountId() { return accountId; }
+        public void setAccountId(Long accountId) { this.accountId = accountId; }
+        public String getAccountNumber() { return accountNumber; }
+        public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
+        public BigDecimal getDelta() { return delta; }
+        public void setDelta(BigDecimal delta) { this.delta = delta; }
+        public boolean isCounterparty() { return counterparty; }
+        public void setCounterparty(boolean counterparty) { this.counterparty = counterparty; }
+        public String getPaymentSessionId() { return paymentSessionId; }
+        public void setPaymentSessionId(String paymentSessionId) { this.paymentSessionId = paymentSessionId; }
+    }
+
+    public static class PostingRequest {
+        private List<PostingLeg> legs;
+        public List<PostingLeg> getLegs() { return legs; }
+        public void setLegs(List<PostingLeg> legs) { this.legs = legs; }
+    }
+
+    public static class LookupRequest {
+        private List<Long> ids;
+        private List<String> accountNumbers;
+        public List<Long> getIds() { return ids; }
+        public void setIds(List<Long> ids) { this.ids = ids; }
+        public List<String> getAccountNumbers() { return accountNumbers; }
+        public void setAccountNumbers(List<String> accountNumbers) { this.accountNumbers = accountNumbers; }
+    }
+
+    public static class PostingResult {
+        private List<Account> legs;
+        public List<Account> getLegs() { return legs; }
+        public void setLegs(List<Account> legs) { this.legs = legs; }
+    }
+
+    public static class ErrorBody {
+        private String message;
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
     }
 }
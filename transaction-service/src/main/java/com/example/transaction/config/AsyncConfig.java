@@ -0,0 +1,43 @@
+package com.example.transaction.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Money-moving endpoints return a CompletableFuture, so the servlet thread is released
+ * while account-service applies the posting. The follow-up JPA writes run on this pool,
+ * sized to the connection pool so it never waits on a connection it can't get.
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Value("${transactions.async.write-threads:10}")
+    private int writeThreads;
+
+    @Value("${transactions.async.write-queue-capacity:10000}")
+    private int writeQueueCapacity;
+
+    // Declaring any executor switches off Boot's default one, which MVC uses for streaming
+    // responses (the export endpoint), so it is declared here the same way Boot would
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor transactionWriteExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(writeThreads);
+        executor.setMaxPoolSize(writeThreads);
+        executor.setQueueCapacity(writeQueueCapacity);
+        executor.setThreadNamePrefix("tx-write-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,25 +1,57 @@
 package com.example.transaction.controller;
 
-import com.example.transaction.service.EventPublisher;
+import com.example.events.TransactionEvent;
+import com.example.transaction.analytics.AnalyticsService;
+import com.example.transaction.analytics.Granularity;
+import com.example.transaction.archive.TransactionArchive;
 import com.example.transaction.client.AccountClient;
+import com.example.transaction.dto.BatchItemResult;
+import com.example.transaction.dto.BatchRequest;
 import com.example.transaction.dto.DepositWithdrawRequest;
+import com.example.transaction.dto.TransactionPage;
+import com.example.transaction.dto.TransactionView;
 import com.example.transaction.dto.TransferRequest;
+import com.example.transaction.idempotency.IdempotencyFilter;
 import com.example.transaction.model.Transaction;
 import com.example.transaction.model.Transaction.TransactionCategory;
 import com.example.transaction.model.Transaction.TransactionType;
+import com.example.transaction.outbox.OutboxEvent;
+import com.example.transaction.repository.RecipientFrequencyRepository;
+import com.example.transaction.repository.TransactionHistoryRepository;
 import com.example.transaction.repository.TransactionRepository;
+import com.example.transaction.repository.TransactionRollupRepository;
+import com.example.transaction.sequencer.AccountSequencer;
+import com.example.transaction.service.BatchTransactionService;
+import com.example.transaction.service.TransactionExportService;
+import com.example.transaction.service.TransactionRecorder;
+import com.example.transaction.shard.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 import java.util.stream.Collectors;
 
 @RestController
@@ -29,111 +61,129 @@ public class TransactionController {
     @Autowired
     private TransactionRepository repo;
 
-    @Autowired(required = false)
-    private KafkaTemplate<String, String> kafkaTemplate;
+    @Autowired
+    private TransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private TransactionRollupRepository rollupRepository;
+
+    @Autowired
+    private RecipientFrequencyRepository recipientFrequencyRepository;
 
     @Autowired
     private AccountClient accountClient;
 
     @Autowired
-    private EventPublisher eventPublisher;
+    private TransactionRecorder transactionRecorder;
+
+    @Autowired
+    private AccountSequencer accountSequencer;
+
+    @Autowired
+    private BatchTransactionService batchTransactionService;
+
+    @Autowired
+    private TransactionExportService exportService;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ThreadPoolTaskExecutor transactionWriteExecutor;
+
+    @Value("${transactions.batch.max-size:1000}")
+    private int batchMaxSize;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Value("${transactions.history.max-page-size:200}")
+    private int historyMaxPageSize;
+
+    @Value("${transactions.export.timeout-ms:3600000}")
+    private long exportTimeoutMs;
+
+    @Value("${analytics.max-range-days:3660}")
+    private int analyticsMaxRangeDays;
 
     @PostMapping("/deposit")
-    public ResponseEntity<?> deposit(@Valid @RequestBody DepositWithdrawRequest request, HttpServletRequest httpRequest) {
+    public CompletableFuture<ResponseEntity<?>> deposit(@Valid @RequestBody DepositWithdrawRequest request, HttpServletRequest httpRequest) {
         String username = getUsername();
         String jwtToken = extractJwt(httpRequest);
 
-        AccountClient.Account account = accountClient.getAccount(request.getAccountId(), jwtToken);
-        if (account == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Account not found");
-        }
-
-        BigDecimal newBalance = account.getBalance().add(request.getAmount());
-        accountClient.updateAccountBalance(account.getId(), newBalance, jwtToken);
+        // Credit is applied server-side as a delta, so concurrent deposits can't overwrite each other
+        AccountClient.PostingLeg leg = AccountClient.PostingLeg.owned(request.getAccountId(), request.getAmount());
+        leg.setPaymentSessionId(request.getPaymentSessionId());
+        CompletableFuture<AccountClient.PostingResult> posting = accountSequencer.submit(request.getAccountId(),
+                List.of(leg), jwtToken);
+        IdempotencyFilter.markPostingSent();
+        return posting.thenApplyAsync(result -> recordDeposit(request, result, username), transactionWriteExecutor);
+    }
 
+    private ResponseEntity<?> recordDeposit(DepositWithdrawRequest request, AccountClient.PostingResult result, String username) {
         Transaction tx = Transaction.builder()
                 .accountId(request.getAccountId())
                 .amount(request.getAmount())
                 .type(TransactionType.DEPOSIT)
                 .category(TransactionCategory.OTHER)
                 .description(request.getDescription())
+                .balanceAfter(result.getLegs().get(0).getBalance())
                 .build();
 
-        Transaction saved = repo.save(tx);
-
-        eventPublisher.publish(
-                String.format("{\"type\":\"DEPOSIT\",\"user\":\"%s\",\"amount\":%s,\"accountId\":%d}",
-                        username, request.getAmount(), request.getAccountId()));
+        Transaction saved = transactionRecorder.record(List.of(tx), OutboxEvent.of(
+                TransactionEvent.deposit(username, request.getAccountId(), request.getAmount()))).get(0);
 
         return ResponseEntity.ok(saved);
     }
 
     @PostMapping("/withdraw")
-    public ResponseEntity<?> withdraw(@Valid @RequestBody DepositWithdrawRequest request, HttpServletRequest httpRequest) {
+    public CompletableFuture<ResponseEntity<?>> withdraw(@Valid @RequestBody DepositWithdrawRequest request, HttpServletRequest httpRequest) {
         String username = getUsername();
         String jwtToken = extractJwt(httpRequest);
 
-        AccountClient.Account account = accountClient.getAccount(request.getAccountId(), jwtToken);
-        if (account == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Account not found");
-        }
-
-        if (account.getBalance().compareTo(request.getAmount()) < 0) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body("Insufficient balance. Current: " + account.getBalance());
-        }
-
-        BigDecimal newBalance = account.getBalance().subtract(request.getAmount());
-        accountClient.updateAccountBalance(account.getId(), newBalance, jwtToken);
+        // account-service checks the balance under a row lock and rejects overdrafts
+        CompletableFuture<AccountClient.PostingResult> posting = accountSequencer.submit(request.getAccountId(), List.of(
+                AccountClient.PostingLeg.owned(request.getAccountId(), request.getAmount().negate())), jwtToken);
+        IdempotencyFilter.markPostingSent();
+        return posting.thenApplyAsync(result -> recordWithdrawal(request, result, username), transactionWriteExecutor);
+    }
 
+    private ResponseEntity<?> recordWithdrawal(DepositWithdrawRequest request, AccountClient.PostingResult result, String username) {
         Transaction tx = Transaction.builder()
                 .accountId(request.getAccountId())
                 .amount(request.getAmount())
                 .type(TransactionType.WITHDRAW)
-                .category(parseCategory(request.getCategory()))
+                .category(TransactionCategory.parse(request.getCategory()))
                 .description(request.getDescription())
+                .balanceAfter(result.getLegs().get(0).getBalance())
                 .build();
 
-        Transaction saved = repo.save(tx);
-
-        eventPublisher.publish(
-                String.format("{\"type\":\"WITHDRAW\",\"user\":\"%s\",\"amount\":%s,\"accountId\":%d}",
-                        username, request.getAmount(), request.getAccountId()));
+        Transaction saved = transactionRecorder.record(List.of(tx), OutboxEvent.of(
+                TransactionEvent.withdrawal(username, request.getAccountId(), request.getAmount()))).get(0);
 
         return ResponseEntity.ok(saved);
     }
 
     @PostMapping("/transfer")
-    public ResponseEntity<?> transfer(@Valid @RequestBody TransferRequest request, HttpServletRequest httpRequest) {
+    public CompletableFuture<ResponseEntity<?>> transfer(@Valid @RequestBody TransferRequest request, HttpServletRequest httpRequest) {
         String username = getUsername();
         String jwtToken = extractJwt(httpRequest);
 
-        // Verify source account ownership
-        AccountClient.Account sourceAccount = accountClient.getAccount(request.getFromAccountId(), jwtToken);
-        if (sourceAccount == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Source account not found");
-        }
-
-        // Check sufficient balance
-        if (sourceAccount.getBalance().compareTo(request.getAmount()) < 0) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body("Insufficient balance. Current: " + sourceAccount.getBalance());
-        }
-
-        // Lookup destination account by account number
-        AccountClient.Account destAccount = accountClient.getAccountByNumber(request.getToAccountNumber(), jwtToken);
-        if (destAccount == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body("Destination account not found: " + request.getToAccountNumber());
-        }
-
-        // Debit source
-        BigDecimal sourceNewBalance = sourceAccount.getBalance().subtract(request.getAmount());
-        accountClient.updateAccountBalance(sourceAccount.getId(), sourceNewBalance, jwtToken);
+        // Debit source and credit destination in one account-service transaction.
+        // Ownership, balance and destination lookup are all checked there.
+        CompletableFuture<AccountClient.PostingResult> posting = accountSequencer.submit(request.getFromAccountId(), List.of(
+                AccountClient.PostingLeg.owned(request.getFromAccountId(), request.getAmount().negate()),
+                AccountClient.PostingLeg.counterpartyCredit(request.getToAccountNumber(), request.getAmount())), jwtToken);
+        IdempotencyFilter.markPostingSent();
+        return posting.thenApplyAsync(result -> recordTransfer(request, result, username), transactionWriteExecutor);
+    }
 
-        // Credit destination (using a system-level call)
-        BigDecimal destNewBalance = destAccount.getBalance().add(request.getAmount());
-        accountClient.updateAccountBalanceSystem(destAccount.getId(), destNewBalance, jwtToken);
+    private ResponseEntity<?> recordTransfer(TransferRequest request, AccountClient.PostingResult result, String username) {
+        AccountClient.Account sourceAccount = result.getLegs().get(0);
+        AccountClient.Account destAccount = result.getLegs().get(1);
 
         // Record outgoing transaction
         Transaction outTx = Transaction.builder()
@@ -143,8 +193,8 @@ public class TransactionController {
                 .category(TransactionCategory.TRANSFER)
                 .description(request.getDescription() != null ? request.getDescription() : "Transfer to " + request.getToAccountNumber())
                 .counterpartyAccountNumber(request.getToAccountNumber())
+                .balanceAfter(sourceAccount.getBalance())
                 .build();
-        repo.save(outTx);
 
         // Record incoming transaction
         Transaction inTx = Transaction.builder()
@@ -154,18 +204,42 @@ public class TransactionController {
                 .category(TransactionCategory.TRANSFER)
                 .description("Transfer from " + sourceAccount.getOwnerName())
                 .counterpartyAccountNumber(sourceAccount.getAccountNumber())
+                .balanceAfter(destAccount.getBalance())
                 .build();
-        repo.save(inTx);
 
-        eventPublisher.publish(
-                String.format("{\"type\":\"TRANSFER\",\"user\":\"%s\",\"amount\":%s,\"from\":%d,\"to\":\"%s\"}",
-                        username, request.getAmount(), request.getFromAccountId(), request.getToAccountNumber()));
+        // Both rows and the event commit together; a destination on another shard gets its row right after
+        transactionRecorder.record(List.of(outTx, inTx), OutboxEvent.of(TransactionEvent.transfer(
+                username, request.getFromAccountId(), request.getToAccountNumber(), request.getAmount())));
 
         return ResponseEntity.ok(outTx);
     }
 
+    // Bulk submission (e.g. payroll runs). Each item succeeds or fails on its own.
+    @PostMapping("/batch")
+    public ResponseEntity<?> batch(@Valid @RequestBody BatchRequest request, HttpServletRequest httpRequest) {
+        String username = getUsername();
+        String jwtToken = extractJwt(httpRequest);
+
+        if (request.getOperations().size() > batchMaxSize) {
+            return ResponseEntity.badRequest().body("Batch too large. Maximum is " + batchMaxSize + " operations");
+        }
+
+        List<BatchItemResult> results = batchTransactionService.submit(request.getOperations(), username, jwtToken);
+        long failed = results.stream().filter(r -> "FAILED".equals(r.getStatus())).count();
+        return ResponseEntity.ok(Map.of(
+            "succeeded", results.size() - failed,
+            "failed", failed,
+            "results", results
+        ));
+    }
+
+    // days limits the list to recent transactions, which only touches the newest partitions.
+    // Runs on the user's shard; read-only, so on shard 0 it can go to a read replica.
     @GetMapping
-    public ResponseEntity<?> all(HttpServletRequest httpRequest) {
+    public ResponseEntity<?> all(@RequestParam(required = false) Integer days, HttpServletRequest httpRequest) {
+        if (days != null && days < 1) {
+            return ResponseEntity.badRequest().body("days must be at least 1");
+        }
         String jwtToken = extractJwt(httpRequest);
 
         List<AccountClient.Account> userAccounts = getUserAccounts(jwtToken);
@@ -177,8 +251,131 @@ public class TransactionController {
                 .map(AccountClient.Account::getId)
                 .collect(Collectors.toList());
 
-        List<Transaction> userTransactions = repo.findByAccountIdInOrderByCreatedAtDesc(userAccountIds);
-        return ResponseEntity.ok(userTransactions);
+        Instant since = days != null ? Instant.now().minus(days, ChronoUnit.DAYS) : null;
+        return ResponseEntity.ok(shardRouter.readOnShard(ShardRouter.shardOfAccounts(userAccountIds), () -> {
+            Instant watermark = archive.watermark();
+            if (watermark == null || (since != null && !since.isBefore(watermark))) {
+                return since != null
+                        ? repo.findByAccountIdInAndCreatedAtGreaterThanEqualOrderByCreatedAtDesc(userAccountIds, since)
+                        : repo.findByAccountIdInOrderByCreatedAtDesc(userAccountIds);
+            }
+
+            // Newer rows from the table, then everything older from the archive
+            List<Transaction> userTransactions = new ArrayList<>(
+                    repo.findByAccountIdInAndCreatedAtGreaterThanEqualOrderByCreatedAtDesc(userAccountIds, watermark));
+            for (TransactionView row : archive.findPage(userAccountIds, null, null, since, watermark, null, Integer.MAX_VALUE)) {
+                userTransactions.add(Transaction.builder()
+                        .id(row.getId())
+                        .accountId(row.getAccountId())
+                        .amount(row.getAmount())
+                        .type(row.getType())
+                        .category(row.getCategory())
+                        .description(row.getDescription())
+                        .counterpartyAccountNumber(row.getCounterpartyAccountNumber())
+                        .createdAt(row.getCreatedAt())
+                        .build());
+            }
+            return userTransactions;
+        }));
+    }
+
+    // Paginated history, newest first. Pass the returned nextCursor to get the following page.
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "50") int limit,
+                                     @RequestParam(required = false) String type,
+                                     @RequestParam(required = false) String category,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                     HttpServletRequest httpRequest) {
+        if (limit < 1 || limit > historyMaxPageSize) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + historyMaxPageSize);
+        }
+
+        TransactionType typeFilter = null;
+        TransactionCategory categoryFilter = null;
+        TransactionPage.Cursor after = null;
+        try {
+            if (type != null) typeFilter = TransactionType.valueOf(type.toUpperCase());
+            if (category != null) categoryFilter = TransactionCategory.valueOf(category.toUpperCase());
+            if (cursor != null) after = TransactionPage.Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid type, category or cursor");
+        }
+
+        String jwtToken = extractJwt(httpRequest);
+        List<AccountClient.Account> userAccounts = getUserAccounts(jwtToken);
+        if (userAccounts.isEmpty()) {
+            return ResponseEntity.ok(new TransactionPage(List.of(), null));
+        }
+        List<Long> accountIds = userAccounts.stream().map(AccountClient.Account::getId).collect(Collectors.toList());
+
+        // Date range is inclusive on both ends, in the server's zone (same as /stats)
+        ZoneId zone = ZoneId.systemDefault();
+        Instant fromInstant = from != null ? from.atStartOfDay(zone).toInstant() : null;
+        Instant toInstant = to != null ? to.plusDays(1).atStartOfDay(zone).toInstant() : null;
+        TransactionType historyType = typeFilter;
+        TransactionCategory historyCategory = categoryFilter;
+        TransactionPage.Cursor historyAfter = after;
+        return ResponseEntity.ok(shardRouter.readOnShard(ShardRouter.shardOfAccounts(accountIds), () ->
+                historyRepository.findPage(accountIds, historyType, historyCategory, fromInstant, toInstant, historyAfter, limit)));
+    }
+
+    // Full ledger download (oldest first), streamed from a DB cursor as CSV or NDJSON
+    @GetMapping("/export")
+    public ResponseEntity<?> export(@RequestParam(defaultValue = "csv") String format,
+                                    @RequestParam(defaultValue = "false") boolean gzip,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                    HttpServletRequest httpRequest) {
+        TransactionExportService.Format exportFormat;
+        try {
+            exportFormat = TransactionExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("format must be csv or ndjson");
+        }
+
+        String jwtToken = extractJwt(httpRequest);
+        List<Long> accountIds = getUserAccounts(jwtToken).stream()
+                .map(AccountClient.Account::getId)
+                .collect(Collectors.toList());
+
+        ZoneId zone = ZoneId.systemDefault();
+        Instant fromInstant = from != null ? from.atStartOfDay(zone).toInstant() : null;
+        Instant toInstant = to != null ? to.plusDays(1).atStartOfDay(zone).toInstant() : null;
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024, true);
+                if (!accountIds.isEmpty()) exportService.export(accountIds, fromInstant, toInstant, exportFormat, gzipOut);
+                gzipOut.finish();
+            } else if (!accountIds.isEmpty()) {
+                exportService.export(accountIds, fromInstant, toInstant, exportFormat, out);
+            }
+        };
+
+        // Only the export gets the long timeout; everything else keeps the default
+        WebAsyncUtils.getAsyncManager(httpRequest).registerCallableInterceptor("export-timeout",
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                        ((AsyncWebRequest) request).setTimeout(exportTimeoutMs);
+                    }
+                });
+
+        String filename = "transactions." + (exportFormat == TransactionExportService.Format.CSV ? "csv" : "ndjson");
+        MediaType contentType = exportFormat == TransactionExportService.Format.CSV
+                ? MediaType.parseMediaType("text/csv")
+                : MediaType.parseMediaType("application/x-ndjson");
+        if (gzip) {
+            filename += ".gz";
+            contentType = MediaType.parseMediaType("application/gzip");
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(contentType)
+                .body(body);
     }
 
     @GetMapping("/categories")
@@ -186,6 +383,30 @@ public class TransactionController {
         return ResponseEntity.ok(TransactionCategory.values());
     }
 
+    // Adds one account's closing balance for each of the 30 days up to today (index = days
+    // back). A day uses the stored closing balance of its latest rolled-up day; where none
+    // is stored, the balance is worked back from the current one through the daily nets.
+    private static void addClosingBalances(BigDecimal[] closing, BigDecimal currentBalance, LocalDate today,
+                                           NavigableMap<LocalDate, TransactionRollupRepository.AccountDay> days) {
+        BigDecimal workedBack = currentBalance;
+        for (int i = 0; i < closing.length; i++) {
+            LocalDate day = today.minusDays(i);
+            BigDecimal stored = null;
+            for (TransactionRollupRepository.AccountDay known : days.headMap(day, true).descendingMap().values()) {
+                if (known.getClosingBalance() != null) {
+                    stored = known.getClosingBalance();
+                    break;
+                }
+                // A later day without one means its rows are not reflected in an earlier balance
+                if (known.getNet().signum() != 0) break;
+            }
+            closing[i] = closing[i].add(stored != null ? stored : workedBack);
+
+            TransactionRollupRepository.AccountDay activity = days.get(day);
+            if (activity != null) workedBack = workedBack.subtract(activity.getNet());
+        }
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<?> getStats(HttpServletRequest httpRequest) {
         String jwtToken = extractJwt(httpRequest);
@@ -195,64 +416,44 @@ public class TransactionController {
         }
 
         List<Long> accountIds = userAccounts.stream().map(AccountClient.Account::getId).collect(Collectors.toList());
-        List<Transaction> allTx = repo.findByAccountIdInOrderByCreatedAtDesc(accountIds);
+
+        // Served from the daily rollups: at most 30 day rows plus one row per category
+        LocalDate today = LocalDate.now();
+        int shard = ShardRouter.shardOfAccounts(accountIds);
+        Map<LocalDate, TransactionRollupRepository.DailyTotals> daily = shardRouter.readOnShard(shard, () ->
+            rollupRepository.findDailyTotals(accountIds, today.minusDays(29)));
+        TransactionRollupRepository.DailyTotals noActivity =
+            new TransactionRollupRepository.DailyTotals(BigDecimal.ZERO, BigDecimal.ZERO);
 
         // Weekly activity: last 7 days, deposits vs withdrawals per day
-        java.time.LocalDate today = java.time.LocalDate.now();
-        List<Map<String, Object>> weeklyActivity = new java.util.ArrayList<>();
+        List<Map<String, Object>> weeklyActivity = new ArrayList<>();
         for (int i = 6; i >= 0; i--) {
-            java.time.LocalDate day = today.minusDays(i);
-            java.time.Instant dayStart = day.atStartOfDay(java.time.ZoneId.systemDefault()).toInstant();
-            java.time.Instant dayEnd = day.plusDays(1).atStartOfDay(java.time.ZoneId.systemDefault()).toInstant();
-
-            BigDecimal deposits = allTx.stream()
-                .filter(tx -> tx.getCreatedAt().isAfter(dayStart) && tx.getCreatedAt().isBefore(dayEnd))
-                .filter(tx -> tx.getType() == TransactionType.DEPOSIT || tx.getType() == TransactionType.TRANSFER_IN)
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            BigDecimal withdrawals = allTx.stream()
-                .filter(tx -> tx.getCreatedAt().isAfter(dayStart) && tx.getCreatedAt().isBefore(dayEnd))
-                .filter(tx -> tx.getType() == TransactionType.WITHDRAW || tx.getType() == TransactionType.TRANSFER_OUT)
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
+            LocalDate day = today.minusDays(i);
+            TransactionRollupRepository.DailyTotals totals = daily.getOrDefault(day, noActivity);
             weeklyActivity.add(Map.of(
                 "day", day.getDayOfWeek().toString().substring(0, 3),
-                "deposits", deposits,
-                "withdrawals", withdrawals
+                "deposits", totals.getCredits(),
+                "withdrawals", totals.getDebits()
             ));
         }
 
-        // Expense by category (withdrawals + transfer_out only)
-        Map<String, BigDecimal> expenseByCategory = allTx.stream()
-            .filter(tx -> tx.getType() == TransactionType.WITHDRAW || tx.getType() == TransactionType.TRANSFER_OUT)
-            .collect(Collectors.groupingBy(
-                tx -> tx.getCategory().name(),
-                Collectors.reducing(BigDecimal.ZERO, Transaction::getAmount, BigDecimal::add)
-            ));
+        // Expense by category (withdrawals + transfer_out only), same 30 days
+        Map<String, BigDecimal> expenseByCategory = shardRouter.readOnShard(shard, () ->
+            rollupRepository.findCategorySpend(accountIds, today.minusDays(29)));
+
+        // Balance history: daily closing balance for last 30 days
+        Map<Long, NavigableMap<LocalDate, TransactionRollupRepository.AccountDay>> accountDays =
+            shardRouter.readOnShard(shard, () -> rollupRepository.findAccountDays(accountIds, today.minusDays(29)));
+        BigDecimal[] closing = new BigDecimal[30];
+        Arrays.fill(closing, BigDecimal.ZERO);
+        for (AccountClient.Account account : userAccounts) {
+            addClosingBalances(closing, account.getBalance(), today,
+                accountDays.getOrDefault(account.getId(), Collections.emptyNavigableMap()));
+        }
 
-        // Balance history: daily closing balance for last 30 days (simplified)
-        BigDecimal currentBalance = userAccounts.stream()
-            .map(AccountClient.Account::getBalance)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        List<Map<String, Object>> balanceHistory = new java.util.ArrayList<>();
-        BigDecimal runningBalance = currentBalance;
-        for (int i = 0; i < 30; i++) {
-            java.time.LocalDate day = today.minusDays(i);
-            java.time.Instant dayStart = day.atStartOfDay(java.time.ZoneId.systemDefault()).toInstant();
-            java.time.Instant dayEnd = day.plusDays(1).atStartOfDay(java.time.ZoneId.systemDefault()).toInstant();
-
-            // Subtract today's net change to get previous day's balance
-            BigDecimal dayNet = allTx.stream()
-                .filter(tx -> tx.getCreatedAt().isAfter(dayStart) && tx.getCreatedAt().isBefore(dayEnd))
-                .map(tx -> (tx.getType() == TransactionType.DEPOSIT || tx.getType() == TransactionType.TRANSFER_IN)
-                    ? tx.getAmount() : tx.getAmount().negate())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            balanceHistory.add(0, Map.of("date", day.toString(), "balance", runningBalance));
-            runningBalance = runningBalance.subtract(dayNet);
+        List<Map<String, Object>> balanceHistory = new ArrayList<>();
+        for (int i = 29; i >= 0; i--) {
+            balanceHistory.add(Map.of("date", today.minusDays(i).toString(), "balance", closing[i]));
         }
 
         return ResponseEntity.ok(Map.of(
@@ -262,38 +463,52 @@ public class TransactionController {
         ));
     }
 
-    @GetMapping("/frequent-recipients")
-    public ResponseEntity<?> getFrequentRecipients(HttpServletRequest httpRequest) {
+    // Credits/debits per day, week or month over any date range (inclusive, defaults to the last 30 days)
+    @GetMapping("/analytics")
+    public ResponseEntity<?> getAnalytics(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                          @RequestParam(defaultValue = "day") String granularity,
+                                          HttpServletRequest httpRequest) {
+        Granularity period;
+        try {
+            period = Granularity.valueOf(granularity.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("granularity must be day, week or month");
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().body("from must not be after to");
+        }
+        if (end.toEpochDay() - start.toEpochDay() >= analyticsMaxRangeDays) {
+            return ResponseEntity.badRequest().body("Range must not exceed " + analyticsMaxRangeDays + " days");
+        }
+
         String jwtToken = extractJwt(httpRequest);
         List<AccountClient.Account> userAccounts = getUserAccounts(jwtToken);
-        if (userAccounts.isEmpty()) return ResponseEntity.ok(List.of());
-
+        if (userAccounts.isEmpty()) {
+            return ResponseEntity.ok(Map.of("buckets", List.of(), "expenseByCategory", Map.of()));
+        }
         List<Long> accountIds = userAccounts.stream().map(AccountClient.Account::getId).collect(Collectors.toList());
-        List<Transaction> transfers = repo.findByAccountIdInOrderByCreatedAtDesc(accountIds).stream()
-            .filter(tx -> tx.getType() == TransactionType.TRANSFER_OUT && tx.getCounterpartyAccountNumber() != null)
-            .collect(Collectors.toList());
-
-        // Count frequency per recipient
-        Map<String, Long> frequency = transfers.stream()
-            .collect(Collectors.groupingBy(Transaction::getCounterpartyAccountNumber, Collectors.counting()));
-
-        // Get top 3
-        List<Map<String, Object>> top3 = frequency.entrySet().stream()
-            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-            .limit(3)
-            .map(e -> Map.<String, Object>of("accountNumber", e.getKey(), "count", e.getValue()))
-            .collect(Collectors.toList());
-
-        return ResponseEntity.ok(top3);
+        String username = getUsername();
+        return ResponseEntity.ok(shardRouter.onShard(ShardRouter.shardOfAccounts(accountIds), () ->
+                analyticsService.aggregate(username, accountIds, start, end, period)));
     }
 
-    private TransactionCategory parseCategory(String category) {
-        if (category == null || category.isBlank()) return TransactionCategory.OTHER;
-        try {
-            return TransactionCategory.valueOf(category.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            return TransactionCategory.OTHER;
+    // Top 3 recipients of outgoing transfers. ranking=recent (default) favours recent transfers, ranking=all counts all-time.
+    @GetMapping("/frequent-recipients")
+    public ResponseEntity<?> getFrequentRecipients(@RequestParam(defaultValue = "recent") String ranking,
+                                                   HttpServletRequest httpRequest) {
+        if (!"recent".equalsIgnoreCase(ranking) && !"all".equalsIgnoreCase(ranking)) {
+            return ResponseEntity.badRequest().body("ranking must be recent or all");
         }
+        String jwtToken = extractJwt(httpRequest);
+        List<AccountClient.Account> userAccounts = getUserAccounts(jwtToken);
+        if (userAccounts.isEmpty()) return ResponseEntity.ok(List.of());
+
+        List<Long> accountIds = userAccounts.stream().map(AccountClient.Account::getId).collect(Collectors.toList());
+        return ResponseEntity.ok(shardRouter.readOnShard(ShardRouter.shardOfAccounts(accountIds), () ->
+                recipientFrequencyRepository.findTop(accountIds, 3, "recent".equalsIgnoreCase(ranking))));
     }
 
     private String getUsername() {
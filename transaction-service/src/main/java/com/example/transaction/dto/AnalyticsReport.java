@@ -0,0 +1,58 @@
+package com.example.transaction.dto;
+
+import com.example.transaction.analytics.Granularity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Credits, debits and transaction counts per period over a date range, plus spend by
+ * category for the whole range.
+ */
+public class AnalyticsReport {
+    private final LocalDate from;
+    private final LocalDate to;
+    private final Granularity granularity;
+    private final List<Bucket> buckets;
+    private final Map<String, BigDecimal> expenseByCategory;
+
+    public AnalyticsReport(LocalDate from, LocalDate to, Granularity granularity,
+                           List<Bucket> buckets, Map<String, BigDecimal> expenseByCategory) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity;
+        this.buckets = buckets;
+        this.expenseByCategory = expenseByCategory;
+    }
+
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    public Granularity getGranularity() { return granularity; }
+    public List<Bucket> getBuckets() { return buckets; }
+    public Map<String, BigDecimal> getExpenseByCategory() { return expenseByCategory; }
+
+    // start is the first day of the period that falls inside the requested range
+    public static class Bucket {
+        private final LocalDate start;
+        private final BigDecimal credits;
+        private final BigDecimal debits;
+        private final BigDecimal net;
+        private final int count;
+
+        public Bucket(LocalDate start, BigDecimal credits, BigDecimal debits, BigDecimal net, int count) {
+            this.start = start;
+            this.credits = credits;
+            this.debits = debits;
+            this.net = net;
+            this.count = count;
+        }
+
+        public LocalDate getStart() { return start; }
+        public BigDecimal getCredits() { return credits; }
+        public BigDecimal getDebits() { return debits; }
+        public BigDecimal getNet() { return net; }
+        public int getCount() { return count; }
+    }
+}
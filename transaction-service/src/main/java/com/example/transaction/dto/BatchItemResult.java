@@ -0,0 +1,33 @@
+package com.example.transaction.dto;
+
+import com.example.transaction.model.Transaction;
+
+public class BatchItemResult {
+    private int index;
+    private String status;
+    private Transaction transaction;
+    private String error;
+
+    public BatchItemResult() {}
+
+    public static BatchItemResult ok(int index, Transaction transaction) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = "OK";
+        result.transaction = transaction;
+        return result;
+    }
+
+    public static BatchItemResult failed(int index, String error) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = "FAILED";
+        result.error = error;
+        return result;
+    }
+
+    public int getIndex() { return index; }
+    public String getStatus() { return status; }
+    public Transaction getTransaction() { return transaction; }
+    public String getError() { return error; }
+}
@@ -0,0 +1,47 @@
+package com.example.transaction.dto;
+
+import javax.validation.constraints.NotEmpty;
+import java.math.BigDecimal;
+import java.util.List;
+
+public class BatchRequest {
+
+    @NotEmpty(message = "At least one operation is required")
+    private List<Operation> operations;
+
+    public BatchRequest() {}
+
+    public List<Operation> getOperations() { return operations; }
+    public void setOperations(List<Operation> operations) { this.operations = operations; }
+
+    /**
+     * One deposit, withdrawal or transfer. Items are validated individually so a bad
+     * entry only fails itself, not the whole batch.
+     */
+    public static class Operation {
+        private String type; // DEPOSIT, WITHDRAW or TRANSFER
+        private Long accountId; // DEPOSIT / WITHDRAW
+        private Long fromAccountId; // TRANSFER
+        private String toAccountNumber; // TRANSFER
+        private BigDecimal amount;
+        private String category; // Optional, defaults to OTHER
+        private String description; // Optional
+
+        public Operation() {}
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public Long getAccountId() { return accountId; }
+        public void setAccountId(Long accountId) { this.accountId = accountId; }
+        public Long getFromAccountId() { return fromAccountId; }
+        public void setFromAccountId(Long fromAccountId) { this.fromAccountId = fromAccountId; }
+        public String getToAccountNumber() { return toAccountNumber; }
+        public void setToAccountNumber(String toAccountNumber) { this.toAccountNumber = toAccountNumber; }
+        public BigDecimal getAmount() { return amount; }
+        public void setAmount(BigDecimal amount) { this.amount = amount; }
+        public String getCategory() { return category; }
+        public void setCategory(String category) { this.category = category; }
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+    }
+}
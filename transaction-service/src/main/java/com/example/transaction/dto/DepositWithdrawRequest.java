@@ -15,6 +15,7 @@ public class DepositWithdrawRequest {
 
     private String category; // Optional, defaults to OTHER
     private String description; // Optional
+    private String paymentSessionId; // Optional, set for Stripe deposits
 
     public DepositWithdrawRequest() {}
 
@@ -26,4 +27,6 @@ public class DepositWithdrawRequest {
     public void setCategory(String category) { this.category = category; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
+    public String getPaymentSessionId() { return paymentSessionId; }
+    public void setPaymentSessionId(String paymentSessionId) { this.paymentSessionId = paymentSessionId; }
 }
@@ -0,0 +1,51 @@
+package com.example.transaction.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+public class TransactionPage {
+    private final List<TransactionView> items;
+    private final String nextCursor; // null on the last page
+
+    public TransactionPage(List<TransactionView> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransactionView> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+
+    /**
+     * Opaque position in the (created_at DESC, id DESC) ordering: the last row of the previous page.
+     */
+    public static class Cursor {
+        private final Instant createdAt;
+        private final long id;
+
+        public Cursor(Instant createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        public Instant getCreatedAt() { return createdAt; }
+        public long getId() { return id; }
+
+        public String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Throws IllegalArgumentException for anything we didn't produce
+        public static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new Cursor(Instant.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
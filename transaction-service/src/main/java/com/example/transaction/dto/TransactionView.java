@@ -0,0 +1,44 @@
+package com.example.transaction.dto;
+
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Read-only row for history listings. Serializes the same as the Transaction entity
+ * but is read straight from JDBC, so nothing ends up in the persistence context.
+ */
+public class TransactionView {
+    private final Long id;
+    private final Long accountId;
+    private final BigDecimal amount;
+    private final TransactionType type;
+    private final TransactionCategory category;
+    private final String description;
+    private final String counterpartyAccountNumber;
+    private final Instant createdAt;
+
+    public TransactionView(Long id, Long accountId, BigDecimal amount, TransactionType type,
+                           TransactionCategory category, String description,
+                           String counterpartyAccountNumber, Instant createdAt) {
+        this.id = id;
+        this.accountId = accountId;
+        this.amount = amount;
+        this.type = type;
+        this.category = category;
+        this.description = description;
+        this.counterpartyAccountNumber = counterpartyAccountNumber;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() { return id; }
+    public Long getAccountId() { return accountId; }
+    public BigDecimal getAmount() { return amount; }
+    public TransactionType getType() { return type; }
+    public TransactionCategory getCategory() { return category; }
+    public String getDescription() { return description; }
+    public String getCounterpartyAccountNumber() { return counterpartyAccountNumber; }
+    public Instant getCreatedAt() { return createdAt; }
+}
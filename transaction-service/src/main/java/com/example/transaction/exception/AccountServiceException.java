@@ -0,0 +1,16 @@
+package com.example.transaction.exception;
+
+/**
+ * An error answer from account-service, relayed to our caller with the same status.
+ */
+public class AccountServiceException extends RuntimeException {
+
+    private final int status;
+
+    public AccountServiceException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() { return status; }
+}
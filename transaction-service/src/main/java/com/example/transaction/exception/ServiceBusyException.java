@@ -0,0 +1,11 @@
+package com.example.transaction.exception;
+
+/**
+ * Raised when an internal queue is full or shutting down and the request should be retried later.
+ */
+public class ServiceBusyException extends RuntimeException {
+
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+}
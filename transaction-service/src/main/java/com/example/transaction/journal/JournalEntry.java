@@ -0,0 +1,147 @@
+package com.example.transaction.journal;
+
+import com.example.transaction.model.Transaction;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * One ledger mutation as recorded in the {@link LedgerJournal}: a single transaction row
+ * plus the signed balance change and the balance account-service reported after it.
+ */
+public class JournalEntry {
+
+    private final UUID requestId;
+    private final Instant createdAt;
+    private final long accountId;
+    private final TransactionType type;
+    private final TransactionCategory category;
+    private final BigDecimal delta;
+    private final BigDecimal balanceAfter;
+    private final String counterpartyAccountNumber;
+    private final String description;
+
+    public JournalEntry(UUID requestId, Instant createdAt, long accountId, TransactionType type,
+                        TransactionCategory category, BigDecimal delta, BigDecimal balanceAfter,
+                        String counterpartyAccountNumber, String description) {
+        this.requestId = requestId;
+        this.createdAt = createdAt;
+        this.accountId = accountId;
+        this.type = type;
+        this.category = category;
+        this.delta = delta;
+        this.balanceAfter = balanceAfter;
+        this.counterpartyAccountNumber = counterpartyAccountNumber;
+        this.description = description;
+    }
+
+    // Expects createdAt to be set already; it is how replay finds the row again
+    public static JournalEntry of(UUID requestId, Transaction tx) {
+        boolean credit = tx.getType() == TransactionType.DEPOSIT || tx.getType() == TransactionType.TRANSFER_IN;
+        return new JournalEntry(requestId, tx.getCreatedAt(), tx.getAccountId(), tx.getType(),
+                tx.getCategory() != null ? tx.getCategory() : TransactionCategory.OTHER,
+                credit ? tx.getAmount() : tx.getAmount().negate(), tx.getBalanceAfter(),
+                tx.getCounterpartyAccountNumber(), tx.getDescription());
+    }
+
+    public Transaction toTransaction() {
+        return Transaction.builder()
+                .accountId(accountId)
+                .amount(delta.abs())
+                .type(type)
+                .category(category)
+                .description(description)
+                .counterpartyAccountNumber(counterpartyAccountNumber)
+                .createdAt(createdAt)
+                .balanceAfter(balanceAfter)
+                .build();
+    }
+
+    // Layout (little-endian): request id, created-at micros, account id, type, category,
+    // delta, optional balance-after, counterparty, description
+    void writeTo(ByteBuffer out) {
+        out.putLong(requestId.getMostSignificantBits());
+        out.putLong(requestId.getLeastSignificantBits());
+        out.putLong(ChronoUnit.MICROS.between(Instant.EPOCH, createdAt));
+        out.putLong(accountId);
+        putString(out, type.name());
+        putString(out, category.name());
+        putDecimal(out, delta);
+        out.put((byte) (balanceAfter != null ? 1 : 0));
+        if (balanceAfter != null) putDecimal(out, balanceAfter);
+        putString(out, counterpartyAccountNumber);
+        putString(out, description);
+    }
+
+    static JournalEntry readFrom(ByteBuffer in) {
+        UUID requestId = new UUID(in.getLong(), in.getLong());
+        Instant createdAt = Instant.EPOCH.plus(in.getLong(), ChronoUnit.MICROS);
+        long accountId = in.getLong();
+        TransactionType type = TransactionType.valueOf(getString(in));
+        TransactionCategory category = TransactionCategory.valueOf(getString(in));
+        BigDecimal delta = getDecimal(in);
+        BigDecimal balanceAfter = in.get() != 0 ? getDecimal(in) : null;
+        return new JournalEntry(requestId, createdAt, accountId, type, category, delta, balanceAfter,
+                getString(in), getString(in));
+    }
+
+    // Upper bound on the encoded size, used to size the write buffer
+    int maxSize() {
+        return 16 + 8 + 8 + 2 * (4 + 16) + 1 + 2 * (1 + 4 + 32)
+                + 4 + 4 * length(counterpartyAccountNumber) + 4 + 4 * length(description);
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static void putDecimal(ByteBuffer out, BigDecimal value) {
+        out.put((byte) value.scale());
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.putInt(unscaled.length);
+        out.put(unscaled);
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer in) {
+        int scale = in.get();
+        byte[] unscaled = new byte[in.getInt()];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // -1 length for null
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public UUID getRequestId() { return requestId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public long getAccountId() { return accountId; }
+    public TransactionType getType() { return type; }
+    public TransactionCategory getCategory() { return category; }
+    public BigDecimal getDelta() { return delta; }
+    public BigDecimal getBalanceAfter() { return balanceAfter; }
+    public String getCounterpartyAccountNumber() { return counterpartyAccountNumber; }
+    public String getDescription() { return description; }
+}
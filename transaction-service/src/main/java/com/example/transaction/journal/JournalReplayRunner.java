@@ -0,0 +1,198 @@
+package com.example.transaction.journal;
+
+import com.example.transaction.archive.TransactionArchive;
+import com.example.transaction.model.Transaction;
+import com.example.transaction.repository.TransactionBatchRepository;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One-off replay of the ledger journal against the transaction table, started with
+ * ledger.journal.replay=verify or rebuild. Run it with the instance out of rotation.
+ *
+ * Each journal entry is matched to a row by account, type, amount and created_at. verify
+ * reports entries with no row and exits non-zero if there are any; rebuild inserts the
+ * missing rows (the rollup triggers pick them up), deletes the segments of earlier runs it
+ * has now reconciled, and exits. Entries older than their shard's archive watermark are
+ * skipped: their month was archived from the table and its rows purged, so they can't be
+ * matched and must not be inserted again. Outbox events are not re-emitted, and account
+ * balances are untouched - account-service applied those before the entry was journaled.
+ */
+@Component
+@ConditionalOnExpression("'${ledger.journal.replay:none}' != 'none'")
+public class JournalReplayRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReplayRunner.class);
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED = 100;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionBatchRepository batchRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private LedgerJournal journal;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${ledger.journal.replay:none}")
+    private String mode;
+
+    @Value("${ledger.journal.dir:./data/ledger-journal}")
+    private String dir;
+
+    private long entries;
+    private long missing;
+    private long inserted;
+    private long archived;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        boolean rebuild = "rebuild".equalsIgnoreCase(mode);
+        if (!rebuild && !"verify".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("ledger.journal.replay must be none, verify or rebuild, not " + mode);
+        }
+
+        log.info("Replaying ledger journal {} ({})", dir, rebuild ? "rebuild" : "verify");
+        // Segments this process writes to are not part of the replay
+        long replayedBefore = journal.isEnabled() ? journal.startSegment() : Long.MAX_VALUE;
+        List<JournalEntry> chunk = new ArrayList<>(CHUNK_SIZE);
+        LedgerJournal.readAll(Path.of(dir), entry -> {
+            chunk.add(entry);
+            if (chunk.size() == CHUNK_SIZE) {
+                replay(chunk, rebuild);
+                chunk.clear();
+            }
+        });
+        replay(chunk, rebuild);
+
+        log.info("Ledger journal replay finished: {} entries, {} already archived, {} without a transaction row, {} rows inserted",
+                entries, archived, missing, inserted);
+        if (rebuild) {
+            log.info("Deleted {} reconciled ledger journal segments",
+                    LedgerJournal.deleteSegmentsBefore(Path.of(dir), replayedBefore));
+        }
+        int exitCode = !rebuild && missing > 0 ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    private void replay(List<JournalEntry> chunk, boolean rebuild) {
+        if (chunk.isEmpty()) return;
+        entries += chunk.size();
+
+        // Each entry is checked against its account's shard
+        Map<Integer, List<JournalEntry>> byShard = new LinkedHashMap<>();
+        for (JournalEntry entry : chunk) {
+            byShard.computeIfAbsent(ShardRouter.shardOfAccount(entry.getAccountId()), s -> new ArrayList<>()).add(entry);
+        }
+        byShard.forEach((shard, shardEntries) -> shardRouter.onShard(shard, () -> {
+            replayOnShard(shardEntries, rebuild);
+            return null;
+        }));
+    }
+
+    private void replayOnShard(List<JournalEntry> entries, boolean rebuild) {
+        Instant watermark = archive.watermark();
+        List<JournalEntry> chunk = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            if (watermark != null && entry.getCreatedAt().isBefore(watermark)) {
+                archived++;
+            } else {
+                chunk.add(entry);
+            }
+        }
+        if (chunk.isEmpty()) return;
+
+        Map<String, Integer> rows = existingRows(chunk);
+        List<Transaction> toInsert = new ArrayList<>();
+        for (JournalEntry entry : chunk) {
+            String key = key(entry.getAccountId(), entry.getType().name(), entry.getDelta().abs(),
+                    Timestamp.from(entry.getCreatedAt()));
+            // Identical rows in one request are counted, not collapsed
+            if (rows.merge(key, -1, Integer::sum) >= 0) continue;
+
+            missing++;
+            if (missing <= MAX_REPORTED) {
+                log.warn("Journal entry without transaction row: request {} account {} {} {} at {}",
+                        entry.getRequestId(), entry.getAccountId(), entry.getType(), entry.getDelta(), entry.getCreatedAt());
+            }
+            if (rebuild) toInsert.add(entry.toTransaction());
+        }
+
+        if (!toInsert.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> batchRepository.insertAll(toInsert));
+            inserted += toInsert.size();
+        }
+    }
+
+    /**
+     * Rows in the table, plus rows for another shard's account still waiting in some shard's
+     * cross_shard_transaction: those are inserted by CrossShardTransactionScheduler and must
+     * not be inserted here too. Pending rows are read first, so one inserted in between is
+     * seen in the table instead.
+     */
+    private Map<String, Integer> existingRows(List<JournalEntry> chunk) {
+        Set<List<Object>> keys = new LinkedHashSet<>();
+        for (JournalEntry entry : chunk) {
+            keys.add(List.of(entry.getAccountId(), Timestamp.from(entry.getCreatedAt())));
+        }
+        List<Object[]> tuples = new ArrayList<>(keys.size());
+        keys.forEach(key -> tuples.add(key.toArray()));
+
+        Map<String, Integer> rows = new HashMap<>();
+        shardRouter.forEachShard(() -> jdbcTemplate.query(
+                "SELECT account_id, type, amount, row_created_at FROM cross_shard_transaction " +
+                "WHERE status = 'PENDING' AND (account_id, row_created_at) IN (:keys)",
+                Map.of("keys", tuples),
+                rs -> {
+                    rows.merge(key(rs.getLong(1), rs.getString(2), rs.getBigDecimal(3), rs.getTimestamp(4)), 1, Integer::sum);
+                }));
+        jdbcTemplate.query(
+                "SELECT account_id, type, amount, created_at FROM transaction WHERE (account_id, created_at) IN (:keys)",
+                Map.of("keys", tuples),
+                rs -> {
+                    rows.merge(key(rs.getLong(1), rs.getString(2), rs.getBigDecimal(3), rs.getTimestamp(4)), 1, Integer::sum);
+                });
+        return rows;
+    }
+
+    private static String key(long accountId, String type, BigDecimal amount, Timestamp createdAt) {
+        return accountId + "|" + type + "|" + amount.stripTrailingZeros().toPlainString() + "|" + createdAt.toInstant();
+    }
+}
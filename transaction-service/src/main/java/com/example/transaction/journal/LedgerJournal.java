@@ -0,0 +1,406 @@
+package com.example.transaction.journal;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of ledger mutations, appended before the rows reach Postgres.
+ *
+ * It is written after account-service has already changed the balance, so it only covers
+ * a crash between the journal append and the transaction rows' commit. A crash between the
+ * posting and the append leaves a balance change with no journal entry and no row; finding
+ * those takes a comparison against account-service, not a journal replay.
+ *
+ * Records live in fixed-size memory-mapped segment files ({@code %020d.journal}). Each one
+ * is a 4-byte length, a CRC32C of the payload and the payload, padded to 8 bytes; a length
+ * of -1 closes a segment. Appends are copies into the mapping. A flusher thread forces the
+ * segment to disk and every writer waiting at that point is released by the same fsync
+ * (group commit), so the cost of a sync is shared by whatever arrived during the last one.
+ *
+ * On startup a torn record left by a crash (the first one whose CRC doesn't check out) is
+ * zeroed and the writer starts a new segment, so every run has segments of its own.
+ *
+ * Callers report when the rows behind a {@link Receipt} have committed. A segment of this
+ * run is deleted once it is closed and everything in it has committed; segments left by
+ * earlier runs are kept until a replay has checked them (see JournalReplayRunner).
+ */
+@Component
+public class LedgerJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerJournal.class);
+
+    private static final int HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".journal";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ledger.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ledger.journal.dir:./data/ledger-journal}")
+    private String dir;
+
+    @Value("${ledger.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    // Wait for the fsync before the DB write; off leaves durability to the flusher's next pass
+    @Value("${ledger.journal.sync-writes:true}")
+    private boolean syncWrites;
+
+    // Longest the flusher sleeps when nothing is waiting
+    @Value("${ledger.journal.flush-interval-ms:10}")
+    private long flushIntervalMs;
+
+    private Path path;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private Timer syncTimer;
+
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+    private int position;
+    // First segment of this run; older ones are only removed after a replay
+    private long startSegment = Long.MAX_VALUE;
+    // Entries per segment whose rows have not committed yet; guarded by this
+    private final Map<Long, Integer> uncommitted = new HashMap<>();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+
+    // Records appended so far; guarded by this
+    private long appended;
+    // Records known to be on disk; guarded by durableLock
+    private long durable;
+    private final Object durableLock = new Object();
+
+    private Thread flusher;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("Ledger journal disabled");
+            return;
+        }
+        path = Path.of(dir);
+        Files.createDirectories(path);
+        lockChannel = FileChannel.open(path.resolve("writer.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Ledger journal " + path + " is already open for writing");
+        }
+        recover();
+        startSegment = segmentIndex;
+
+        syncTimer = Timer.builder("ledger.journal.sync")
+                .description("Time to force appended journal records to disk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Ledger journal writing to {} (segment {}, position {})", path, segmentIndex, position);
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (flusher == null) return;
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(1000);
+        synchronized (this) {
+            segment.force();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long startSegment() {
+        return startSegment;
+    }
+
+    /**
+     * Append the entries and, unless sync-writes is off, return once they are on disk.
+     * Pass the receipt to {@link #committed} once the rows are in Postgres.
+     */
+    public Receipt write(List<JournalEntry> entries) {
+        if (!enabled || entries.isEmpty()) return Receipt.NONE;
+
+        Receipt receipt = new Receipt();
+        long sequence;
+        try {
+            sequence = append(entries, receipt);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ledger journal append failed", e);
+        }
+        if (syncWrites) awaitDurable(sequence);
+        return receipt;
+    }
+
+    // The entries no longer need the journal; a closed segment with nothing outstanding is deleted
+    public synchronized void committed(Receipt receipt) {
+        for (Map.Entry<Long, Integer> written : receipt.entriesPerSegment.entrySet()) {
+            long index = written.getKey();
+            Integer left = uncommitted.merge(index, -written.getValue(), Integer::sum);
+            if (left != null && left <= 0) {
+                uncommitted.remove(index);
+                if (index < segmentIndex) deleteSegment(index);
+            }
+        }
+    }
+
+    private synchronized long append(List<JournalEntry> entries, Receipt receipt) throws IOException {
+        for (JournalEntry entry : entries) {
+            ByteBuffer payload = encode(entry);
+            int length = payload.remaining();
+            int frame = frameSize(length);
+            if (frame + 4 > segmentBytes) {
+                throw new IllegalArgumentException("Journal entry of " + length + " bytes does not fit in a segment");
+            }
+            // Always leave room for the end-of-segment marker
+            if (position + frame + 4 > segment.capacity()) {
+                segment.putInt(position, END_OF_SEGMENT);
+                roll(segmentIndex + 1);
+            }
+            crc.reset();
+            crc.update(payload.duplicate());
+            segment.putInt(position + 4, (int) crc.getValue());
+            segment.put(position + HEADER, payload, payload.position(), length);
+            segment.putInt(position, length);
+            position += frame;
+            appended++;
+            uncommitted.merge(segmentIndex, 1, Integer::sum);
+            receipt.entriesPerSegment.merge(segmentIndex, 1, Integer::sum);
+        }
+        return appended;
+    }
+
+    private ByteBuffer encode(JournalEntry entry) {
+        int size = entry.maxSize();
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(size) << 1).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        scratch.clear();
+        entry.writeTo(scratch);
+        return scratch.flip();
+    }
+
+    private void awaitDurable(long sequence) {
+        LockSupport.unpark(flusher);
+        synchronized (durableLock) {
+            while (durable < sequence) {
+                if (!running) throw new IllegalStateException("Ledger journal is closed");
+                try {
+                    durableLock.wait(flushIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the ledger journal", e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            long target;
+            MappedByteBuffer current;
+            synchronized (this) {
+                target = appended;
+                current = segment;
+            }
+            if (target > durable) {
+                // Earlier segments were forced when they were rolled
+                long start = System.nanoTime();
+                current.force();
+                syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                synchronized (durableLock) {
+                    durable = target;
+                    durableLock.notifyAll();
+                }
+            } else {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            }
+        }
+    }
+
+    /**
+     * Read every intact record in the journal directory, oldest first. Within a segment
+     * reading stops at the first record that is missing or fails its CRC (a write torn by a
+     * crash). Returns the number of entries handed to the consumer.
+     */
+    public static long readAll(Path dir, Consumer<JournalEntry> consumer) throws IOException {
+        long count = 0;
+        for (long index : segmentIndexes(dir)) {
+            MappedByteBuffer segment;
+            try (RandomAccessFile file = new RandomAccessFile(segmentPath(dir, index).toFile(), "r")) {
+                segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            int position = 0;
+            while (true) {
+                int length = validLength(segment, position);
+                // A torn record can only end its own segment, since every run starts a new one
+                if (length <= 0) break;
+                consumer.accept(JournalEntry.readFrom(
+                        segment.slice(position + HEADER, length).order(ByteOrder.LITTLE_ENDIAN)));
+                position += frameSize(length);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Length of the record at position, -1 for end of segment, 0 if there is no intact record
+    private static int validLength(ByteBuffer segment, int position) {
+        if (position + HEADER > segment.capacity()) return 0;
+        int length = segment.getInt(position);
+        if (length == END_OF_SEGMENT) return END_OF_SEGMENT;
+        if (length <= 0 || position + HEADER + length > segment.capacity()) return 0;
+        CRC32C crc = new CRC32C();
+        crc.update(segment.slice(position + HEADER, length));
+        return (int) crc.getValue() == segment.getInt(position + 4) ? length : 0;
+    }
+
+    // Clear a torn record at the end of the newest segment and start a segment for this run
+    private void recover() throws IOException {
+        TreeSet<Long> indexes = segmentIndexes(path);
+        if (indexes.isEmpty()) {
+            roll(0);
+            return;
+        }
+
+        long last = indexes.last();
+        segmentIndex = last;
+        segment = map(segmentPath(path, last));
+        position = 0;
+        while (true) {
+            int length = validLength(segment, position);
+            if (length == END_OF_SEGMENT) {
+                // Crashed between closing this segment and creating the next
+                roll(last + 1);
+                return;
+            }
+            if (length == 0) break;
+            position += frameSize(length);
+        }
+        if (position + HEADER <= segment.capacity() && segment.getInt(position) != 0) {
+            int torn = segment.getInt(position);
+            int end = torn > 0 ? Math.min(segment.capacity(), position + frameSize(torn)) : position + HEADER;
+            log.warn("Discarding torn ledger journal record at segment {} offset {}", last, position);
+            for (int i = position; i < end; i++) segment.put(i, (byte) 0);
+            segment.force();
+        }
+        // An empty segment can be reused as it is
+        if (position > 0) roll(last + 1);
+    }
+
+    private void roll(long index) throws IOException {
+        if (segment != null) segment.force();
+        long previous = segmentIndex;
+        segment = map(segmentPath(path, index));
+        segmentIndex = index;
+        position = 0;
+        if (previous >= startSegment && !uncommitted.containsKey(previous)) deleteSegment(previous);
+    }
+
+    private void deleteSegment(long index) {
+        try {
+            Files.deleteIfExists(segmentPath(path, index));
+        } catch (IOException e) {
+            log.warn("Could not delete ledger journal segment {}: {}", index, e.getMessage());
+        }
+    }
+
+    // Remove segments below the given index, e.g. those of earlier runs once a replay has checked them
+    public static int deleteSegmentsBefore(Path dir, long index) throws IOException {
+        int deleted = 0;
+        for (long existing : segmentIndexes(dir)) {
+            if (existing >= index) break;
+            Files.deleteIfExists(segmentPath(dir, existing));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    // Existing segments keep their size even if segment-bytes has since changed
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() == 0) raf.setLength(segmentBytes);
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return mapped;
+        }
+    }
+
+    // Which segments a write went to, so they can be released once its rows commit
+    public static final class Receipt {
+        public static final Receipt NONE = new Receipt(Collections.emptyMap());
+
+        private final Map<Long, Integer> entriesPerSegment;
+
+        Receipt() {
+            this(new HashMap<>());
+        }
+
+        private Receipt(Map<Long, Integer> entriesPerSegment) {
+            this.entriesPerSegment = entriesPerSegment;
+        }
+    }
+
+    private static int frameSize(int length) {
+        return (HEADER + length + 7) & ~7;
+    }
+
+    private static Path segmentPath(Path dir, long index) {
+        return dir.resolve(String.format("%020d" + SUFFIX, index));
+    }
+
+    private static TreeSet<Long> segmentIndexes(Path dir) throws IOException {
+        TreeSet<Long> indexes = new TreeSet<>();
+        if (!Files.isDirectory(dir)) return indexes;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    indexes.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                }
+            }
+        }
+        return indexes;
+    }
+}
@@ -1,14 +1,15 @@
 package com.example.transaction.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import javax.persistence.*;
 import lombok.*;
 import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
+// Range-partitioned by month on created_at (V8__partition_transaction_table.sql)
 @Table(name = "transaction", indexes = {
-    @Index(name = "idx_transaction_account_id", columnList = "accountId"),
-    @Index(name = "idx_transaction_created_at", columnList = "createdAt")
+    @Index(name = "idx_transaction_account_created_id", columnList = "accountId, createdAt DESC, id DESC")
 })
 @NoArgsConstructor
 @AllArgsConstructor
@@ -43,9 +44,17 @@ public class Transaction {
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
+    // Balance account-service reported right after this row's leg; feeds the daily closing balance
+    @Column(precision = 19, scale = 4, updatable = false)
+    @JsonIgnore
+    private BigDecimal balanceAfter;
+
     @PrePersist
     protected void onCreate() {
-        createdAt = Instant.now();
+        // Callers that journal the row set createdAt first, so replay can find it again
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
         if (category == null) {
             category = TransactionCategory.OTHER;
         }
@@ -56,6 +65,16 @@ public class Transaction {
     }
 
     public enum TransactionCategory {
-        GROCERIES, SALARY, RENT, BILLS, TRANSFER, ENTERTAINMENT, HEALTHCARE, TRAVEL, INVESTMENT, OTHER
+        GROCERIES, SALARY, RENT, BILLS, TRANSFER, ENTERTAINMENT, HEALTHCARE, TRAVEL, INVESTMENT, OTHER;
+
+        // Lenient parse for user input: blank or unknown values map to OTHER
+        public static TransactionCategory parse(String category) {
+            if (category == null || category.isBlank()) return OTHER;
+            try {
+                return valueOf(category.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return OTHER;
+            }
+        }
     }
 }
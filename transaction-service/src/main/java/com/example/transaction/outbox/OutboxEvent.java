@@ -0,0 +1,29 @@
+package com.example.transaction.outbox;
+
+import com.example.events.TransactionEvent;
+import com.example.events.TransactionEventCodec;
+
+/**
+ * One event in the outbox. Events sharing a partition key (the account id) are
+ * delivered in the order they were written.
+ */
+public class OutboxEvent {
+    private final Long id;
+    private final String partitionKey;
+    private final byte[] payload;
+
+    public OutboxEvent(Long id, String partitionKey, byte[] payload) {
+        this.id = id;
+        this.partitionKey = partitionKey;
+        this.payload = payload;
+    }
+
+    // Not yet written; the id is assigned by the outbox table
+    public static OutboxEvent of(TransactionEvent event) {
+        return new OutboxEvent(null, String.valueOf(event.getAccountId()), TransactionEventCodec.encode(event));
+    }
+
+    public Long getId() { return id; }
+    public String getPartitionKey() { return partitionKey; }
+    public byte[] getPayload() { return payload; }
+}
@@ -0,0 +1,179 @@
+package com.example.transaction.outbox;
+
+import com.example.transaction.service.EventPublisher;
+import com.example.transaction.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains transaction_outbox to the broker.
+ *
+ * Each round claims the oldest events (up to pipeline-depth pages) in a short transaction
+ * holding the relay advisory lock, marking them in flight. An event whose account still
+ * has a lower sequence outside the claim waits for a later round (see
+ * OutboxRepository#enqueueAll for how sequences follow commit order). It then cuts the
+ * events into pages by partition key and hands each page to the publisher without
+ * waiting for the previous one to be acknowledged, with no transaction or lock held, and
+ * finally deletes what was acknowledged and releases the rest in a second short
+ * transaction. No instance claims while another has unexpired claims, so only one relay
+ * publishes at a time. If an event fails, it and every later event with the same
+ * partition key stay in the outbox for the next round, so an account's events are never
+ * delivered out of order (at the cost of possible duplicates of the later ones, which
+ * consumers must tolerate anyway).
+ *
+ * Every shard has its own outbox and lock and is drained in turn. An account's events are
+ * all on its owner's shard, so the ordering above still holds.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outboxRepository;
+    private final EventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final int pipelineDepth;
+    private final long claimTimeoutMs;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Counter published;
+    private final Counter failures;
+    private final Timer batchTimer;
+
+    public OutboxRelay(OutboxRepository outboxRepository,
+                       EventPublisher eventPublisher,
+                       TransactionTemplate transactionTemplate,
+                       ShardRouter shardRouter,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.batch-size:2000}") int batchSize,
+                       @Value("${outbox.relay.max-batches-per-run:50}") int maxBatchesPerRun,
+                       @Value("${outbox.relay.pipeline-depth:4}") int pipelineDepth,
+                       @Value("${outbox.relay.claim-timeout-ms:60000}") long claimTimeoutMs) {
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.pipelineDepth = pipelineDepth;
+        this.claimTimeoutMs = claimTimeoutMs;
+
+        Gauge.builder("outbox.pending", pending, AtomicLong::get)
+                .description("Events waiting in the outbox")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest unpublished event")
+                .register(meterRegistry);
+        this.published = Counter.builder("outbox.published").register(meterRegistry);
+        this.failures = Counter.builder("outbox.publish.failures").register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.relay.batch").register(meterRegistry);
+    }
+
+    // The gauges report the total backlog and the oldest event across all shards
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:200}")
+    public void relay() {
+        long totalPending = 0;
+        long maxLagSeconds = 0;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            try {
+                Map<String, Object> backlog = shardRouter.onShard(shard, this::relayShard);
+                totalPending += ((Number) backlog.get("pending")).longValue();
+                maxLagSeconds = Math.max(maxLagSeconds, ((Number) backlog.get("lag_seconds")).longValue());
+            } catch (Exception e) {
+                log.error("Outbox relay failed on shard {}: {}", shard, e.getMessage());
+            }
+        }
+        pending.set(totalPending);
+        lagSeconds.set(maxLagSeconds);
+    }
+
+    private Map<String, Object> relayShard() {
+        for (int i = 0; i < maxBatchesPerRun; i += pipelineDepth) {
+            if (drainOnce() < batchSize * pipelineDepth) break;
+        }
+        return outboxRepository.backlog();
+    }
+
+    // Returns the number of events delivered, or 0 if another instance is relaying
+    private int drainOnce() {
+        List<OutboxEvent> events = transactionTemplate.execute(status -> {
+            if (!outboxRepository.tryLockRelay() || outboxRepository.hasLiveClaims(claimTimeoutMs)) {
+                return List.<OutboxEvent>of();
+            }
+            return outboxRepository.claim(batchSize * pipelineDepth);
+        });
+        if (events == null || events.isEmpty()) return 0;
+
+        // Pages are cut by key, so a key's events go out in one submission and a failure can't
+        // be overtaken by a later page of the same key
+        int pageCount = (events.size() + batchSize - 1) / batchSize;
+        List<List<OutboxEvent>> pages = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) pages.add(new ArrayList<>());
+        for (OutboxEvent event : events) {
+            pages.get(Math.floorMod(event.getPartitionKey().hashCode(), pageCount)).add(event);
+        }
+
+        Timer.Sample sample = Timer.start();
+        List<CompletableFuture<Set<Long>>> inFlight = new ArrayList<>(pipelineDepth);
+        for (List<OutboxEvent> page : pages) {
+            if (!page.isEmpty()) inFlight.add(eventPublisher.submit(page));
+        }
+
+        Set<Long> failed = new HashSet<>();
+        for (CompletableFuture<Set<Long>> future : inFlight) {
+            try {
+                failed.addAll(future.join());
+            } catch (RuntimeException e) {
+                log.warn("Outbox relay: publish failed: {}", e.getMessage());
+                events.forEach(event -> failed.add(event.getId()));
+            }
+        }
+        sample.stop(batchTimer);
+
+        List<Long> delivered = new ArrayList<>(events.size());
+        Set<String> blockedKeys = new HashSet<>();
+        for (OutboxEvent event : events) {
+            if (failed.contains(event.getId())) {
+                blockedKeys.add(event.getPartitionKey());
+            } else if (!blockedKeys.contains(event.getPartitionKey())) {
+                delivered.add(event.getId());
+            }
+        }
+        Set<Long> kept = new HashSet<>();
+        events.forEach(event -> kept.add(event.getId()));
+        kept.removeAll(delivered);
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < delivered.size(); from += batchSize) {
+                outboxRepository.deleteAll(delivered.subList(from, Math.min(from + batchSize, delivered.size())));
+            }
+            outboxRepository.releaseAll(kept);
+        });
+
+        published.increment(delivered.size());
+        if (!failed.isEmpty()) {
+            failures.increment(failed.size());
+            log.warn("Outbox relay: {} of {} events not acknowledged, will retry", failed.size(), events.size());
+        }
+        return delivered.size();
+    }
+}
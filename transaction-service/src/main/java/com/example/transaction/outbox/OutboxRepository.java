@@ -0,0 +1,134 @@
+package com.example.transaction.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+public class OutboxRepository {
+
+    // Arbitrary constant identifying the relay's advisory lock
+    private static final long RELAY_LOCK_KEY = 0x6f7574626f78L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /**
+     * Must run inside the caller's transaction so the event commits with its rows. Each
+     * key's counter row stays locked until that commit, so the next writer for the key
+     * gets its sequence (and its ids) only once these events are visible.
+     */
+    public void enqueueAll(List<OutboxEvent> events) {
+        if (events.isEmpty()) return;
+        Map<String, Integer> counts = new TreeMap<>();
+        for (OutboxEvent event : events) {
+            counts.merge(event.getPartitionKey(), 1, Integer::sum);
+        }
+        // Keys in sorted order, so two writers can't deadlock on each other's counters
+        Map<String, Long> next = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Long last = jdbcTemplate.queryForObject(
+                    "INSERT INTO transaction_outbox_sequence (partition_key, last_sequence) VALUES (?, ?) " +
+                    "ON CONFLICT (partition_key) DO UPDATE " +
+                    "SET last_sequence = transaction_outbox_sequence.last_sequence + EXCLUDED.last_sequence " +
+                    "RETURNING last_sequence",
+                    Long.class, entry.getKey(), (long) entry.getValue());
+            next.put(entry.getKey(), last - entry.getValue() + 1);
+        }
+
+        List<Long> sequences = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            sequences.add(next.merge(event.getPartitionKey(), 1L, Long::sum) - 1);
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO transaction_outbox (partition_key, payload, sequence) VALUES (?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, events.get(i).getPartitionKey());
+                        ps.setBytes(2, events.get(i).getPayload());
+                        ps.setLong(3, sequences.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                });
+    }
+
+    /**
+     * Serialise claiming for the current transaction. Together with {@link #hasLiveClaims}
+     * only one instance has events in flight at a time, which is what keeps per-key order
+     * across instances.
+     */
+    public boolean tryLockRelay() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, RELAY_LOCK_KEY));
+    }
+
+    // Whether some relay is still publishing; older claims are from a relay that died
+    public boolean hasLiveClaims(long claimTimeoutMs) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM transaction_outbox " +
+                "WHERE claimed_at > NOW() - (? * INTERVAL '1 millisecond'))",
+                Boolean.class, claimTimeoutMs));
+    }
+
+    /**
+     * Mark the oldest events as in flight and return them in id order. An event is held
+     * back while its key has a lower sequence outside this page, so an account's events
+     * are only ever published in sequence order. Within a key, ids follow sequences.
+     */
+    public List<OutboxEvent> claim(int limit) {
+        List<OutboxEvent> events = jdbcTemplate.query(
+                "WITH page AS (" +
+                "SELECT id, partition_key, sequence FROM transaction_outbox ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "UPDATE transaction_outbox o SET claimed_at = NOW() FROM page " +
+                "WHERE o.id = page.id AND NOT EXISTS (" +
+                "SELECT 1 FROM transaction_outbox earlier " +
+                "WHERE earlier.partition_key = page.partition_key AND earlier.sequence < page.sequence " +
+                "AND earlier.id NOT IN (SELECT id FROM page)) " +
+                "RETURNING o.id, o.partition_key, o.payload",
+                (rs, i) -> new OutboxEvent(rs.getLong(1), rs.getString(2), rs.getBytes(3)),
+                limit);
+        events.sort(Comparator.comparing(OutboxEvent::getId));
+        return events;
+    }
+
+    public void deleteAll(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        namedJdbcTemplate.update("DELETE FROM transaction_outbox WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids));
+    }
+
+    // Hand claimed events back for the next round
+    public void releaseAll(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        namedJdbcTemplate.update("UPDATE transaction_outbox SET claimed_at = NULL WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids));
+    }
+
+    // Pending event count and age of the oldest one in seconds (0 when empty)
+    public Map<String, Object> backlog() {
+        return jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS pending, " +
+                "COALESCE(EXTRACT(EPOCH FROM NOW() - MIN(created_at)), 0) AS lag_seconds " +
+                "FROM transaction_outbox");
+    }
+}
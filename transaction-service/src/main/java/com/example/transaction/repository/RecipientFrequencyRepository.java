@@ -0,0 +1,56 @@
+package com.example.transaction.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top recipients from account_recipient_frequency, which the trg_transaction_recipient
+ * trigger updates on every outgoing transfer (see V5__recipient_frequency.sql).
+ *
+ * Each account contributes only its own top {@code limit} rows, read off the
+ * (account_id, score) indexes, so the cost is O(accounts x limit) however many
+ * transfers or recipients there are.
+ */
+@Repository
+public class RecipientFrequencyRepository {
+
+    // decay_score is a log-sum, so EXP(decay_score - weight(now)) is the decayed count as of now
+    private static final String TOP_RECENT_SQL =
+            "SELECT f.recipient_account_number, SUM(f.transfer_count) AS transfer_count, " +
+            "SUM(EXP(f.decay_score - recipient_decay_weight(NOW()))) AS score " +
+            "FROM unnest(ARRAY[:accountIds]::bigint[]) AS a(id) " +
+            "CROSS JOIN LATERAL (SELECT recipient_account_number, transfer_count, decay_score " +
+            "    FROM account_recipient_frequency WHERE account_id = a.id " +
+            "    ORDER BY decay_score DESC LIMIT :limit) f " +
+            "GROUP BY f.recipient_account_number ORDER BY score DESC LIMIT :limit";
+
+    private static final String TOP_ALL_TIME_SQL =
+            "SELECT f.recipient_account_number, SUM(f.transfer_count) AS transfer_count " +
+            "FROM unnest(ARRAY[:accountIds]::bigint[]) AS a(id) " +
+            "CROSS JOIN LATERAL (SELECT recipient_account_number, transfer_count " +
+            "    FROM account_recipient_frequency WHERE account_id = a.id " +
+            "    ORDER BY transfer_count DESC LIMIT :limit) f " +
+            "GROUP BY f.recipient_account_number ORDER BY transfer_count DESC LIMIT :limit";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Most frequent recipients across the given accounts, as accountNumber/count maps.
+     * With {@code recent} the ranking weights each transfer by age (30-day half-life);
+     * otherwise it is by all-time count.
+     */
+    public List<Map<String, Object>> findTop(List<Long> accountIds, int limit, boolean recent) {
+        MapSqlParameterSource params = new MapSqlParameterSource("accountIds", accountIds)
+                .addValue("limit", limit);
+        return jdbcTemplate.query(recent ? TOP_RECENT_SQL : TOP_ALL_TIME_SQL, params,
+                (rs, i) -> Map.<String, Object>of(
+                        "accountNumber", rs.getString("recipient_account_number"),
+                        "count", rs.getLong("transfer_count")));
+    }
+}
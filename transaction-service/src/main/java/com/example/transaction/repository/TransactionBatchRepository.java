@@ -0,0 +1,62 @@
+package com.example.transaction.repository;
+
+import com.example.transaction.model.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Bulk insert path for transaction rows.
+ * Hibernate can't batch IDENTITY inserts, so ids are reserved from the sequence in one
+ * round trip and the rows go out as a JDBC batch (rewritten to multi-row INSERTs by the
+ * driver when reWriteBatchedInserts is on).
+ */
+@Repository
+public class TransactionBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO transaction (id, account_id, amount, type, category, description, counterparty_account_number, " +
+            "created_at, balance_after) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${transactions.batch.jdbc-batch-size:500}")
+    private int jdbcBatchSize;
+
+    // Assigns id (and createdAt, unless already set) on each row, then inserts them all
+    public void insertAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) return;
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('transaction_id_seq') FROM generate_series(1, ?)", Long.class, transactions.size());
+        Instant now = Instant.now();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction tx = transactions.get(i);
+            tx.setId(ids.get(i));
+            if (tx.getCreatedAt() == null) {
+                tx.setCreatedAt(now);
+            }
+            if (tx.getCategory() == null) {
+                tx.setCategory(Transaction.TransactionCategory.OTHER);
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, transactions, jdbcBatchSize, (ps, tx) -> {
+            ps.setLong(1, tx.getId());
+            ps.setLong(2, tx.getAccountId());
+            ps.setBigDecimal(3, tx.getAmount());
+            ps.setString(4, tx.getType().name());
+            ps.setString(5, tx.getCategory().name());
+            ps.setString(6, tx.getDescription());
+            ps.setString(7, tx.getCounterpartyAccountNumber());
+            ps.setTimestamp(8, Timestamp.from(tx.getCreatedAt()));
+            ps.setBigDecimal(9, tx.getBalanceAfter());
+        });
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.transaction.repository;
+
+import com.example.transaction.archive.TransactionArchive;
+import com.example.transaction.dto.TransactionPage;
+import com.example.transaction.dto.TransactionView;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyset-paginated history reads. Each page is a range scan on
+ * idx_transaction_account_created_id, so its cost doesn't depend on how deep into
+ * the history the caller is or how long that history is. With several accounts an
+ * IN list would have to sort all their matching rows, so each account gets its own
+ * LATERAL range scan of at most limit + 1 rows and only those are merged.
+ *
+ * Rows older than the archive watermark are no longer in the table; once the table runs
+ * out of rows for a page, the rest of it comes from the {@link TransactionArchive}.
+ */
+@Repository
+public class TransactionHistoryRepository {
+
+    public static final RowMapper<TransactionView> VIEW_MAPPER = (rs, i) -> new TransactionView(
+            rs.getLong("id"),
+            rs.getLong("account_id"),
+            rs.getBigDecimal("amount"),
+            TransactionType.valueOf(rs.getString("type")),
+            TransactionCategory.valueOf(rs.getString("category")),
+            rs.getString("description"),
+            rs.getString("counterparty_account_number"),
+            rs.getTimestamp("created_at").toInstant());
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    public TransactionPage findPage(List<Long> accountIds, TransactionType type, TransactionCategory category,
+                                    Instant from, Instant to, TransactionPage.Cursor after, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT t.* FROM unnest(CAST(ARRAY[:accountIds] AS bigint[])) AS a(account_id) " +
+                "CROSS JOIN LATERAL (" +
+                "SELECT id, account_id, amount, type, category, description, counterparty_account_number, created_at " +
+                "FROM transaction WHERE transaction.account_id = a.account_id");
+        MapSqlParameterSource params = new MapSqlParameterSource("accountIds", accountIds);
+        Instant watermark = archive.watermark();
+
+        if (type != null) {
+            sql.append(" AND type = :type");
+            params.addValue("type", type.name());
+        }
+        if (category != null) {
+            sql.append(" AND category = :category");
+            params.addValue("category", category.name());
+        }
+        boolean reachesArchive = watermark != null && (from == null || from.isBefore(watermark));
+        Instant lower = reachesArchive ? watermark : from;
+        if (lower != null) {
+            sql.append(" AND created_at >= :from");
+            params.addValue("from", Timestamp.from(lower));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < :to");
+            params.addValue("to", Timestamp.from(to));
+        }
+        if (after != null) {
+            sql.append(" AND (created_at, id) < (:afterCreatedAt, :afterId)");
+            params.addValue("afterCreatedAt", Timestamp.from(after.getCreatedAt()));
+            params.addValue("afterId", after.getId());
+        }
+        // Fetch one extra row to know whether another page exists
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT :limit) t");
+        sql.append(" ORDER BY t.created_at DESC, t.id DESC LIMIT :limit");
+        params.addValue("limit", limit + 1);
+
+        List<TransactionView> rows = jdbcTemplate.query(sql.toString(), params, VIEW_MAPPER);
+        if (rows.size() <= limit && reachesArchive) {
+            // Everything in the archive is older than everything in the table, so it just follows on
+            Instant archiveTo = to == null || watermark.isBefore(to) ? watermark : to;
+            rows = new ArrayList<>(rows);
+            rows.addAll(archive.findPage(accountIds, type, category, from, archiveTo, after, limit + 1 - rows.size()));
+        }
+        if (rows.size() <= limit) {
+            return new TransactionPage(rows, null);
+        }
+
+        List<TransactionView> page = rows.subList(0, limit);
+        TransactionView last = page.get(limit - 1);
+        return new TransactionPage(page, new TransactionPage.Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+}
@@ -4,10 +4,13 @@ import com.example.transaction.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    List<Transaction> findByAccountIdIn(List<Long> accountIds);
     List<Transaction> findByAccountIdInOrderByCreatedAtDesc(List<Long> accountIds);
+
+    // The created_at bound lets Postgres prune the monthly partitions older than since
+    List<Transaction> findByAccountIdInAndCreatedAtGreaterThanEqualOrderByCreatedAtDesc(List<Long> accountIds, Instant since);
 }
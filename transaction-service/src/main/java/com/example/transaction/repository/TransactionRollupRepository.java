@@ -0,0 +1,166 @@
+package com.example.transaction.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Reads from the daily rollup tables kept up to date by the trg_transaction_rollup trigger
+ * (see V4__daily_rollups.sql and V13__rollup_closing_balance.sql), and the one-off backfill
+ * of rows that predate the trigger.
+ */
+@Repository
+public class TransactionRollupRepository {
+
+    private static final String BACKFILL_DAILY_SQL =
+            "INSERT INTO account_daily_rollup (account_id, day, credits, debits, tx_count) " +
+            "SELECT account_id, created_at::date, " +
+            "SUM(CASE WHEN type IN ('DEPOSIT', 'TRANSFER_IN') THEN amount ELSE 0 END), " +
+            "SUM(CASE WHEN type IN ('DEPOSIT', 'TRANSFER_IN') THEN 0 ELSE amount END), " +
+            "COUNT(*) " +
+            "FROM transaction WHERE account_id > ? AND account_id <= ? AND id <= ? " +
+            "GROUP BY account_id, created_at::date " +
+            "ON CONFLICT (account_id, day) DO UPDATE " +
+            "SET credits = account_daily_rollup.credits + EXCLUDED.credits, " +
+            "debits = account_daily_rollup.debits + EXCLUDED.debits, " +
+            "tx_count = account_daily_rollup.tx_count + EXCLUDED.tx_count";
+
+    private static final String BACKFILL_CATEGORY_SQL =
+            "INSERT INTO account_daily_category_spend (account_id, day, category, amount) " +
+            "SELECT account_id, created_at::date, category, SUM(amount) " +
+            "FROM transaction WHERE account_id > ? AND account_id <= ? AND id <= ? " +
+            "AND type IN ('WITHDRAW', 'TRANSFER_OUT') " +
+            "GROUP BY account_id, created_at::date, category " +
+            "ON CONFLICT (account_id, day, category) DO UPDATE " +
+            "SET amount = account_daily_category_spend.amount + EXCLUDED.amount";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // Credits and debits per day across the given accounts, for days on or after fromDay
+    public Map<LocalDate, DailyTotals> findDailyTotals(List<Long> accountIds, LocalDate fromDay) {
+        Map<LocalDate, DailyTotals> totals = new LinkedHashMap<>();
+        namedJdbcTemplate.query(
+                "SELECT day, SUM(credits) AS credits, SUM(debits) AS debits FROM account_daily_rollup " +
+                "WHERE account_id IN (:accountIds) AND day >= :fromDay GROUP BY day ORDER BY day",
+                new MapSqlParameterSource("accountIds", accountIds).addValue("fromDay", Date.valueOf(fromDay)),
+                rs -> {
+                    totals.put(rs.getDate("day").toLocalDate(),
+                            new DailyTotals(rs.getBigDecimal("credits"), rs.getBigDecimal("debits")));
+                });
+        return totals;
+    }
+
+    // Spend (withdrawals and outgoing transfers) per category across the given accounts, since fromDay
+    public Map<String, BigDecimal> findCategorySpend(List<Long> accountIds, LocalDate fromDay) {
+        Map<String, BigDecimal> spend = new LinkedHashMap<>();
+        namedJdbcTemplate.query(
+                "SELECT category, SUM(amount) AS amount FROM account_daily_category_spend " +
+                "WHERE account_id IN (:accountIds) AND day >= :fromDay GROUP BY category",
+                new MapSqlParameterSource("accountIds", accountIds).addValue("fromDay", Date.valueOf(fromDay)),
+                rs -> {
+                    spend.put(rs.getString("category"), rs.getBigDecimal("amount"));
+                });
+        return spend;
+    }
+
+    /**
+     * Each account's days on or after fromDay, plus its last day before fromDay that has a
+     * closing balance (so that balance can be carried into the range). Days rolled up before
+     * closing balances were stored have a null one.
+     */
+    public Map<Long, NavigableMap<LocalDate, AccountDay>> findAccountDays(List<Long> accountIds, LocalDate fromDay) {
+        Map<Long, NavigableMap<LocalDate, AccountDay>> days = new HashMap<>();
+        namedJdbcTemplate.query(
+                "SELECT account_id, day, credits - debits AS net, closing_balance FROM account_daily_rollup " +
+                "WHERE account_id IN (:accountIds) AND day >= :fromDay " +
+                "UNION ALL " +
+                "(SELECT DISTINCT ON (account_id) account_id, day, 0, closing_balance FROM account_daily_rollup " +
+                "WHERE account_id IN (:accountIds) AND day < :fromDay AND closing_balance IS NOT NULL " +
+                "ORDER BY account_id, day DESC)",
+                new MapSqlParameterSource("accountIds", accountIds).addValue("fromDay", Date.valueOf(fromDay)),
+                rs -> {
+                    days.computeIfAbsent(rs.getLong("account_id"), id -> new TreeMap<>())
+                            .put(rs.getDate("day").toLocalDate(),
+                                    new AccountDay(rs.getBigDecimal("net"), rs.getBigDecimal("closing_balance")));
+                });
+        return days;
+    }
+
+    /**
+     * Fold pre-trigger rows for the next range of at most {@code chunkSize} accounts into the
+     * rollups and advance the checkpoint, all in one transaction. The state row is locked so
+     * instances running the backfill at the same time take turns instead of double counting.
+     * Returns false once every account has been processed.
+     */
+    @Transactional
+    public boolean backfillNextChunk(int chunkSize) {
+        Map<String, Object> state = jdbcTemplate.queryForMap(
+                "SELECT cutoff_id, last_account_id, done FROM transaction_rollup_backfill WHERE id = 1 FOR UPDATE");
+        if ((Boolean) state.get("done")) return false;
+
+        long cutoffId = ((Number) state.get("cutoff_id")).longValue();
+        long lastAccountId = ((Number) state.get("last_account_id")).longValue();
+
+        Long upperAccountId = jdbcTemplate.queryForObject(
+                "SELECT MAX(account_id) FROM (SELECT DISTINCT account_id FROM transaction " +
+                "WHERE account_id > ? AND id <= ? ORDER BY account_id LIMIT ?) chunk",
+                Long.class, lastAccountId, cutoffId, chunkSize);
+        if (upperAccountId == null) {
+            jdbcTemplate.update("UPDATE transaction_rollup_backfill SET done = TRUE, updated_at = NOW() WHERE id = 1");
+            return false;
+        }
+
+        jdbcTemplate.update(BACKFILL_DAILY_SQL, lastAccountId, upperAccountId, cutoffId);
+        jdbcTemplate.update(BACKFILL_CATEGORY_SQL, lastAccountId, upperAccountId, cutoffId);
+        jdbcTemplate.update("UPDATE transaction_rollup_backfill SET last_account_id = ?, updated_at = NOW() WHERE id = 1",
+                upperAccountId);
+        return true;
+    }
+
+    public static class AccountDay {
+        private final BigDecimal net;
+        private final BigDecimal closingBalance;
+
+        public AccountDay(BigDecimal net, BigDecimal closingBalance) {
+            this.net = net;
+            this.closingBalance = closingBalance;
+        }
+
+        public BigDecimal getNet() { return net; }
+        public BigDecimal getClosingBalance() { return closingBalance; }
+    }
+
+    public static class DailyTotals {
+        private final BigDecimal credits;
+        private final BigDecimal debits;
+
+        public DailyTotals(BigDecimal credits, BigDecimal debits) {
+            this.credits = credits;
+            this.debits = debits;
+        }
+
+        public BigDecimal getCredits() { return credits; }
+        public BigDecimal getDebits() { return debits; }
+
+        public BigDecimal getNet() {
+            return credits.subtract(debits);
+        }
+    }
+}
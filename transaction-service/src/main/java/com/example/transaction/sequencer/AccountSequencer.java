@@ -0,0 +1,341 @@
+package com.example.transaction.sequencer;
+
+import com.example.transaction.client.AccountClient;
+import com.example.transaction.exception.AccountServiceException;
+import com.example.transaction.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer sequencer for balance postings.
+ *
+ * Every posting is routed to a lane by the caller's account it debits (or credits, for a
+ * deposit), and each lane is owned by one worker thread. That is the side that can be
+ * rejected; credits to a counterparty are serialised by account-service's row locks and
+ * never fail, so ordering them here would not change any outcome. The worker never waits on account-service: it keeps at most one call in
+ * flight per account and parks later postings for that account behind it, so mutations
+ * for a given account never race each other inside this instance while other accounts
+ * on the lane carry on. When the call completes, the postings parked meanwhile from the
+ * same caller are coalesced into the next call; if that combined posting is rejected
+ * they are retried one by one so only the offending request fails.
+ *
+ * On shutdown new postings are refused and the lanes get sequencer.drain-timeout-ms to
+ * finish what is queued; anything still queued after that fails with
+ * {@link ServiceBusyException} rather than being left hanging.
+ */
+@Component
+public class AccountSequencer {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountSequencer.class);
+
+    private final AccountClient accountClient;
+    private final MeterRegistry meterRegistry;
+    private final int capacity;
+    private final int maxBatch;
+    private final long drainTimeoutMs;
+    private final Lane[] lanes;
+    private volatile boolean accepting = true;
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong postings = new AtomicLong();
+
+    public AccountSequencer(AccountClient accountClient,
+                            MeterRegistry meterRegistry,
+                            @Value("${sequencer.lanes:0}") int laneCount,
+                            @Value("${sequencer.capacity:1024}") int capacity,
+                            @Value("${sequencer.max-batch:64}") int maxBatch,
+                            @Value("${sequencer.drain-timeout-ms:10000}") long drainTimeoutMs) {
+        this.accountClient = accountClient;
+        this.meterRegistry = meterRegistry;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.drainTimeoutMs = drainTimeoutMs;
+
+        // 0 means one lane per core
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new Lane(i, capacity);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : lanes) {
+            Gauge.builder("sequencer.queue.depth", lane.open, AtomicInteger::get)
+                    .description("Postings queued or in flight in a sequencer lane")
+                    .tag("lane", String.valueOf(lane.index))
+                    .register(meterRegistry);
+            lane.worker.start();
+        }
+        Gauge.builder("sequencer.coalescing.ratio", this, AccountSequencer::coalescingRatio)
+                .description("Postings received per account-service call")
+                .register(meterRegistry);
+        log.info("Account sequencer started with {} lanes", lanes.length);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        accepting = false;
+        // A submit that passed the check just before may still be about to enqueue
+        for (Lane lane : lanes) {
+            while (lane.submitting.get() > 0) {
+                Thread.onSpinWait();
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        while (!drained() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        for (Lane lane : lanes) {
+            lane.running = false;
+            LockSupport.unpark(lane.worker);
+        }
+        for (Lane lane : lanes) {
+            lane.worker.join(1000);
+            if (lane.open.get() > 0) {
+                log.warn("Sequencer lane {} still has postings in flight to account-service at shutdown", lane.index);
+            }
+        }
+    }
+
+    private boolean drained() {
+        for (Lane lane : lanes) {
+            if (lane.open.get() > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue a posting on the lane owning {@code accountId} and wait for its result.
+     * Account-service errors are rethrown unchanged.
+     */
+    public AccountClient.PostingResult post(Long accountId, List<AccountClient.PostingLeg> legs, String jwtToken) {
+        try {
+            return submit(accountId, legs, jwtToken).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queue a posting without waiting. The future completes on an HTTP client thread,
+     * so callers should move any blocking follow-up work to their own executor.
+     */
+    public CompletableFuture<AccountClient.PostingResult> submit(Long accountId, List<AccountClient.PostingLeg> legs,
+                                                                String jwtToken) {
+        Operation operation = new Operation(accountId, legs, jwtToken);
+        Lane lane = lanes[Math.floorMod(Long.hashCode(accountId), lanes.length)];
+        lane.submitting.incrementAndGet();
+        try {
+            if (!accepting) {
+                throw new ServiceBusyException("Service is shutting down. Please retry.");
+            }
+            // Parked postings count too, so sequencer.capacity bounds everything the lane holds
+            if (lane.open.incrementAndGet() > capacity || !lane.queue.offer(operation)) {
+                lane.open.decrementAndGet();
+                throw new ServiceBusyException("Too many pending operations for this account. Please retry.");
+            }
+        } finally {
+            lane.submitting.decrementAndGet();
+        }
+        operation.result.whenComplete((result, e) -> lane.open.decrementAndGet());
+        LockSupport.unpark(lane.worker);
+        return operation.result;
+    }
+
+    public double coalescingRatio() {
+        long calls = postings.get();
+        return calls == 0 ? 1.0 : (double) operations.get() / calls;
+    }
+
+    // Each returned future completes once its postings have, successfully or not
+    private CompletableFuture<Void> postSingle(Operation operation) {
+        postings.incrementAndGet();
+        return send(operation.legs, operation.jwtToken).handle((result, e) -> {
+            if (e != null) {
+                operation.result.completeExceptionally(unwrap(e));
+            } else {
+                operation.result.complete(result);
+            }
+            return null;
+        });
+    }
+
+    // account-service applies the combined legs in order with an overdraft check on each and
+    // reports the balance after every leg, so each posting gets the same outcome and
+    // balance it would have had on its own call.
+    private CompletableFuture<Void> postCoalesced(List<Operation> run) {
+        List<AccountClient.PostingLeg> legs = new ArrayList<>();
+        for (Operation operation : run) {
+            legs.addAll(operation.legs);
+        }
+
+        postings.incrementAndGet();
+        return send(legs, run.get(0).jwtToken).handle((combined, e) -> {
+            if (e != null) {
+                Throwable cause = unwrap(e);
+                if (cause instanceof AccountServiceException) {
+                    return postOneByOne(run, 0);
+                }
+                run.forEach(operation -> operation.result.completeExceptionally(cause));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            int offset = 0;
+            for (Operation operation : run) {
+                AccountClient.PostingResult result = new AccountClient.PostingResult();
+                result.setLegs(combined.getLegs().subList(offset, offset + operation.legs.size()));
+                offset += operation.legs.size();
+                operation.result.complete(result);
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(next -> next);
+    }
+
+    // Still one call at a time, so the account's postings keep their order
+    private CompletableFuture<Void> postOneByOne(List<Operation> run, int from) {
+        if (from == run.size()) return CompletableFuture.completedFuture(null);
+        return postSingle(run.get(from)).thenCompose(done -> postOneByOne(run, from + 1));
+    }
+
+    private CompletableFuture<AccountClient.PostingResult> send(List<AccountClient.PostingLeg> legs, String jwtToken) {
+        try {
+            return accountClient.post(legs, jwtToken).toFuture();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static class Operation {
+        final Long accountId;
+        final List<AccountClient.PostingLeg> legs;
+        final String jwtToken;
+        final CompletableFuture<AccountClient.PostingResult> result = new CompletableFuture<>();
+
+        Operation(Long accountId, List<AccountClient.PostingLeg> legs, String jwtToken) {
+            this.accountId = accountId;
+            this.legs = legs;
+            this.jwtToken = jwtToken;
+        }
+    }
+
+    private class Lane implements Runnable {
+        final int index;
+        final RingBuffer<Operation> queue;
+        final Thread worker;
+        // Submits between the accepting check and the enqueue
+        final AtomicInteger submitting = new AtomicInteger();
+        // Postings accepted but not yet completed, queued or in flight
+        final AtomicInteger open = new AtomicInteger();
+        // Accounts whose call just completed, handed back to the worker by the HTTP client
+        final Queue<Long> finished = new ConcurrentLinkedQueue<>();
+        volatile boolean running = true;
+
+        // Only touched by the worker thread
+        final Map<Long, ArrayDeque<Operation>> waiting = new HashMap<>();
+        final Set<Long> inFlight = new HashSet<>();
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new RingBuffer<>(capacity);
+            this.worker = new Thread(this, "sequencer-lane-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                boolean progressed = false;
+
+                Long accountId;
+                while ((accountId = finished.poll()) != null) {
+                    inFlight.remove(accountId);
+                    dispatch(accountId);
+                    progressed = true;
+                }
+
+                Operation operation;
+                while ((operation = queue.poll()) != null) {
+                    operations.incrementAndGet();
+                    waiting.computeIfAbsent(operation.accountId, id -> new ArrayDeque<>()).add(operation);
+                    if (!inFlight.contains(operation.accountId)) {
+                        dispatch(operation.accountId);
+                    }
+                    progressed = true;
+                }
+
+                if (!progressed) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+            }
+
+            // Whatever did not drain in time is failed so no caller waits forever
+            ServiceBusyException shutdown = new ServiceBusyException("Service is shutting down. Please retry.");
+            Operation operation;
+            while ((operation = queue.poll()) != null) {
+                operation.result.completeExceptionally(shutdown);
+            }
+            waiting.values().forEach(parked -> parked.forEach(op -> op.result.completeExceptionally(shutdown)));
+            waiting.clear();
+        }
+
+        // Start the account's next call: the postings at the head of its queue from one caller
+        private void dispatch(Long accountId) {
+            ArrayDeque<Operation> parked = waiting.get(accountId);
+            if (parked == null) return;
+
+            List<Operation> run = new ArrayList<>();
+            run.add(parked.poll());
+            while (run.size() < maxBatch && !parked.isEmpty()
+                    && parked.peek().jwtToken.equals(run.get(0).jwtToken)) {
+                run.add(parked.poll());
+            }
+            if (parked.isEmpty()) waiting.remove(accountId);
+
+            inFlight.add(accountId);
+            CompletableFuture<Void> call;
+            try {
+                call = run.size() == 1 ? postSingle(run.get(0)) : postCoalesced(run);
+            } catch (Exception e) {
+                log.error("Sequencer lane {} failed to post for account {}: {}", index, accountId, e.getMessage());
+                run.forEach(pending -> pending.result.completeExceptionally(e));
+                call = CompletableFuture.completedFuture(null);
+            }
+            call.whenComplete((done, e) -> {
+                finished.add(accountId);
+                LockSupport.unpark(worker);
+            });
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.transaction.service;
+
+import com.example.events.EventType;
+import com.example.events.TransactionEvent;
+import com.example.transaction.client.AccountClient;
+import com.example.transaction.dto.BatchItemResult;
+import com.example.transaction.dto.BatchRequest;
+import com.example.transaction.exception.AccountServiceException;
+import com.example.transaction.idempotency.IdempotencyFilter;
+import com.example.transaction.model.Transaction;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import com.example.transaction.outbox.OutboxEvent;
+import com.example.transaction.sequencer.AccountSequencer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a list of deposits, withdrawals and transfers with as few round trips as possible:
+ * every item goes through the {@link AccountSequencer}, which coalesces the items on one
+ * account into a single posting (and splits it again if one is rejected), and all
+ * resulting transaction rows go in one JDBC batch.
+ */
+@Service
+public class BatchTransactionService {
+
+    @Autowired
+    private AccountClient accountClient;
+
+    @Autowired
+    private AccountSequencer accountSequencer;
+
+    @Autowired
+    private TransactionRecorder transactionRecorder;
+
+    public List<BatchItemResult> submit(List<BatchRequest.Operation> operations, String username, String jwtToken) {
+        BatchItemResult[] results = new BatchItemResult[operations.size()];
+
+        // Resolve every transfer destination with one bulk lookup, so an unknown account
+        // number fails its own item instead of sinking the combined posting
+        Set<String> knownDestinations = resolveDestinations(operations, jwtToken);
+
+        // Validate every item up front; only valid ones take part in the posting
+        Map<Integer, List<AccountClient.PostingLeg>> legsByIndex = new LinkedHashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchRequest.Operation op = operations.get(i);
+            String error = validate(op);
+            if (error == null && "TRANSFER".equalsIgnoreCase(op.getType())
+                    && !knownDestinations.contains(op.getToAccountNumber())) {
+                error = "Account not found: " + op.getToAccountNumber();
+            }
+            if (error != null) {
+                results[i] = BatchItemResult.failed(i, error);
+            } else {
+                legsByIndex.put(i, toLegs(op));
+            }
+        }
+
+        Map<Integer, List<AccountClient.Account>> applied = post(operations, legsByIndex, jwtToken, results);
+
+        // One row per deposit/withdrawal, two per transfer - all inserted together
+        List<Transaction> rows = new ArrayList<>();
+        Map<Integer, Transaction> primaryRows = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<AccountClient.Account>> entry : applied.entrySet()) {
+            BatchRequest.Operation op = operations.get(entry.getKey());
+            List<Transaction> opRows = toTransactions(op, entry.getValue());
+            primaryRows.put(entry.getKey(), opRows.get(0));
+            rows.addAll(opRows);
+        }
+        List<OutboxEvent> events = new ArrayList<>();
+        for (Integer index : primaryRows.keySet()) {
+            events.add(toEvent(operations.get(index), username));
+        }
+        transactionRecorder.recordAll(rows, events);
+
+        for (Map.Entry<Integer, Transaction> entry : primaryRows.entrySet()) {
+            results[entry.getKey()] = BatchItemResult.ok(entry.getKey(), entry.getValue());
+        }
+        return Arrays.asList(results);
+    }
+
+    // Each item keeps the balances after its own legs, even when coalesced with others
+    private Map<Integer, List<AccountClient.Account>> post(List<BatchRequest.Operation> operations,
+                                                         Map<Integer, List<AccountClient.PostingLeg>> legsByIndex,
+                                                         String jwtToken, BatchItemResult[] results) {
+        Map<Integer, List<AccountClient.Account>> applied = new LinkedHashMap<>();
+        if (legsByIndex.isEmpty()) return applied;
+        IdempotencyFilter.markPostingSent();
+
+        // Submitted in item order, so items on the same account are applied in that order
+        Map<Integer, CompletableFuture<AccountClient.PostingResult>> postings = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<AccountClient.PostingLeg>> entry : legsByIndex.entrySet()) {
+            postings.put(entry.getKey(),
+                    accountSequencer.submit(laneKey(operations.get(entry.getKey())), entry.getValue(), jwtToken));
+        }
+
+        for (Map.Entry<Integer, CompletableFuture<AccountClient.PostingResult>> entry : postings.entrySet()) {
+            int index = entry.getKey();
+            try {
+                applied.put(index, entry.getValue().join().getLegs());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof AccountServiceException) {
+                    results[index] = BatchItemResult.failed(index, e.getCause().getMessage());
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else {
+                    throw e;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private Set<String> resolveDestinations(List<BatchRequest.Operation> operations, String jwtToken) {
+        Set<String> accountNumbers = new HashSet<>();
+        for (BatchRequest.Operation op : operations) {
+            if ("TRANSFER".equalsIgnoreCase(op.getType()) && op.getToAccountNumber() != null) {
+                accountNumbers.add(op.getToAccountNumber());
+            }
+        }
+        if (accountNumbers.isEmpty()) return accountNumbers;
+
+        return accountClient.lookup(List.of(), accountNumbers, jwtToken).stream()
+                .map(AccountClient.Account::getAccountNumber)
+                .collect(Collectors.toSet());
+    }
+
+    private String validate(BatchRequest.Operation op) {
+        if (op.getType() == null) return "type: is required";
+        if (op.getAmount() == null || op.getAmount().signum() <= 0) return "amount: Amount must be positive";
+        switch (op.getType().toUpperCase()) {
+            case "DEPOSIT":
+            case "WITHDRAW":
+                return op.getAccountId() == null ? "accountId: Account ID is required" : null;
+            case "TRANSFER":
+                if (op.getFromAccountId() == null) return "fromAccountId: Source account ID is required";
+                if (op.getToAccountNumber() == null || op.getToAccountNumber().isBlank()) {
+                    return "toAccountNumber: Destination account number is required";
+                }
+                return null;
+            default:
+                return "type: must be DEPOSIT, WITHDRAW or TRANSFER";
+        }
+    }
+
+    private List<AccountClient.PostingLeg> toLegs(BatchRequest.Operation op) {
+        switch (op.getType().toUpperCase()) {
+            case "DEPOSIT":
+                return List.of(AccountClient.PostingLeg.owned(op.getAccountId(), op.getAmount()));
+            case "WITHDRAW":
+                return List.of(AccountClient.PostingLeg.owned(op.getAccountId(), op.getAmount().negate()));
+            default:
+                return List.of(
+                        AccountClient.PostingLeg.owned(op.getFromAccountId(), op.getAmount().negate()),
+                        AccountClient.PostingLeg.counterpartyCredit(op.getToAccountNumber(), op.getAmount()));
+        }
+    }
+
+    private Long laneKey(BatchRequest.Operation op) {
+        return "TRANSFER".equalsIgnoreCase(op.getType()) ? op.getFromAccountId() : op.getAccountId();
+    }
+
+    private List<Transaction> toTransactions(BatchRequest.Operation op, List<AccountClient.Account> accounts) {
+        switch (op.getType().toUpperCase()) {
+            case "DEPOSIT":
+                return List.of(Transaction.builder()
+                        .accountId(op.getAccountId())
+                        .amount(op.getAmount())
+                        .type(TransactionType.DEPOSIT)
+                        .category(TransactionCategory.OTHER)
+                        .description(op.getDescription())
+                        .balanceAfter(accounts.get(0).getBalance())
+                        .build());
+            case "WITHDRAW":
+                return List.of(Transaction.builder()
+                        .accountId(op.getAccountId())
+                        .amount(op.getAmount())
+                        .type(TransactionType.WITHDRAW)
+                        .category(TransactionCategory.parse(op.getCategory()))
+                        .description(op.getDescription())
+                        .balanceAfter(accounts.get(0).getBalance())
+                        .build());
+            default:
+                AccountClient.Account source = accounts.get(0);
+                AccountClient.Account dest = accounts.get(1);
+                Transaction outTx = Transaction.builder()
+                        .accountId(op.getFromAccountId())
+                        .amount(op.getAmount())
+                        .type(TransactionType.TRANSFER_OUT)
+                        .category(TransactionCategory.TRANSFER)
+                        .description(op.getDescription() != null ? op.getDescription() : "Transfer to " + op.getToAccountNumber())
+                        .counterpartyAccountNumber(op.getToAccountNumber())
+                        .balanceAfter(source.getBalance())
+                        .build();
+                Transaction inTx = Transaction.builder()
+                        .accountId(dest.getId())
+                        .amount(op.getAmount())
+                        .type(TransactionType.TRANSFER_IN)
+                        .category(TransactionCategory.TRANSFER)
+                        .description("Transfer from " + source.getOwnerName())
+                        .counterpartyAccountNumber(source.getAccountNumber())
+                        .balanceAfter(dest.getBalance())
+                        .build();
+                return List.of(outTx, inTx);
+        }
+    }
+
+    private OutboxEvent toEvent(BatchRequest.Operation op, String username) {
+        EventType type = EventType.parse(op.getType());
+        if (type == EventType.TRANSFER) {
+            return OutboxEvent.of(TransactionEvent.transfer(
+                    username, op.getFromAccountId(), op.getToAccountNumber(), op.getAmount()));
+        }
+        return OutboxEvent.of(new TransactionEvent(type, username, op.getAccountId(), op.getAmount(), null, Instant.now()));
+    }
+}
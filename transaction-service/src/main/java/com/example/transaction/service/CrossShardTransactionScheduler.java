@@ -0,0 +1,54 @@
+package com.example.transaction.service;
+
+import com.example.transaction.shard.CrossShardTransactionRepository;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Inserts cross-shard transaction rows that weren't inserted during the request (receiving
+ * shard unreachable, instance stopped in between). Inserting is idempotent, so racing the
+ * original request or another instance is harmless.
+ */
+@Component
+public class CrossShardTransactionScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(CrossShardTransactionScheduler.class);
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private CrossShardTransactionRepository crossShardRepository;
+
+    @Autowired
+    private TransactionRecorder recorder;
+
+    // Leave rows this young to the request that created them
+    @Value("${sharding.transaction-retry-after-ms:30000}")
+    private long retryAfterMs;
+
+    @Value("${sharding.transaction-retry-batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${sharding.transaction-retry-interval-ms:10000}")
+    public void retryPending() {
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            int home = shard;
+            try {
+                List<CrossShardTransactionRepository.Pending> pending = router.onShard(home, () ->
+                        crossShardRepository.findPending(Instant.now().minusMillis(retryAfterMs), batchSize));
+                recorder.applyRemote(home, pending);
+            } catch (Exception e) {
+                log.error("Could not read pending cross-shard transaction rows on shard {}: {}", home, e.getMessage());
+            }
+        }
+    }
+}
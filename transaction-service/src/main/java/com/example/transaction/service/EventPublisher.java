@@ -1,5 +1,14 @@
 package com.example.transaction.service;
 
+import com.example.events.EventFrames;
+import com.example.events.log.EventLog;
+import com.example.transaction.exception.ServiceBusyException;
+import com.example.transaction.outbox.OutboxEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -7,21 +16,60 @@ import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
-import software.amazon.awssdk.services.kinesis.model.PutRecordRequest;
+import software.amazon.awssdk.services.kinesis.KinesisClientBuilder;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
 
 import javax.annotation.PostConstruct;
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Unified event publisher - publishes to Kafka (local/docker) OR Kinesis (AWS).
+ * Unified event publisher - publishes to Kafka (local/docker) OR Kinesis (AWS), or to an
+ * embedded memory-mapped event log when events.log.dir is set (single node, no broker).
  * Automatically selects based on which is available.
+ *
+ * Submissions go into a bounded queue (submitters block when it is full) and a single
+ * sender thread drains it, lingering briefly to build large batches. The partition key
+ * (account id) becomes the Kafka record key / Kinesis partition key, and the sender only
+ * has one batch in flight, so each account's events arrive in order. On Kinesis, all of
+ * an account's events in a batch are packed into one record (EventFrames), so they
+ * succeed or fail together and use a fraction of the shard's records/s limit; an account
+ * whose events need several records sends them in separate PutRecords calls.
+ *
+ * On shutdown new submissions fail straight away and the sender gets
+ * events.publisher.drain-timeout-ms to send what is queued; anything left after that fails
+ * with {@link ServiceBusyException}, and the outbox keeps those rows for the next run.
  */
 @Service
 public class EventPublisher {
 
+    private static final Logger log = LoggerFactory.getLogger(EventPublisher.class);
+
+    // PutRecords limits
+    private static final int KINESIS_MAX_RECORDS = 500;
+    private static final int KINESIS_MAX_REQUEST_BYTES = 5 * 1024 * 1024;
+
     @Autowired(required = false)
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Value("${kinesis.stream-name:}")
     private String kinesisStreamName;
@@ -29,42 +77,334 @@ public class EventPublisher {
     @Value("${aws.region:us-east-1}")
     private String awsRegion;
 
+    // Local stand-in such as LocalStack; empty means the regional AWS endpoint
+    @Value("${kinesis.endpoint:}")
+    private String kinesisEndpoint;
+
+    @Value("${events.publisher.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${events.publisher.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${events.publisher.max-batch-events:10000}")
+    private int maxBatchEvents;
+
+    @Value("${events.publisher.drain-timeout-ms:10000}")
+    private long drainTimeoutMs;
+
+    @Value("${events.kinesis.max-record-bytes:262144}")
+    private int maxRecordBytes;
+
+    @Value("${outbox.relay.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${events.log.dir:}")
+    private String eventLogDir;
+
+    @Value("${events.log.segment-bytes:67108864}")
+    private int eventLogSegmentBytes;
+
+    @Value("${events.log.retain-segments:16}")
+    private int eventLogRetainSegments;
+
     private KinesisClient kinesisClient;
+    private EventLog eventLog;
+
+    private Semaphore capacity;
+    private final LinkedBlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    private Thread sender;
+    private volatile boolean accepting = true;
+    private Timer publishLatency;
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
+        if (!eventLogDir.isBlank()) {
+            eventLog = EventLog.open(Path.of(eventLogDir), eventLogSegmentBytes, eventLogRetainSegments);
+            log.info("Publishing events to the embedded event log in {}", eventLogDir);
+        }
+
         // Only create Kinesis client if stream name is configured (AWS environment)
         if (kinesisStreamName != null && !kinesisStreamName.isBlank()) {
             try {
-                kinesisClient = KinesisClient.builder()
-                        .region(Region.of(awsRegion))
-                        .build();
+                KinesisClientBuilder builder = KinesisClient.builder().region(Region.of(awsRegion));
+                if (!kinesisEndpoint.isBlank()) {
+                    builder.endpointOverride(URI.create(kinesisEndpoint));
+                }
+                kinesisClient = builder.build();
             } catch (Exception e) {
                 // Kinesis not available (running locally without AWS credentials)
                 kinesisClient = null;
             }
         }
+
+        capacity = new Semaphore(queueCapacity);
+        Gauge.builder("events.publisher.queue.depth", capacity, c -> queueCapacity - c.availablePermits())
+                .description("Events queued for publishing")
+                .register(meterRegistry);
+        publishLatency = Timer.builder("events.publish.latency")
+                .description("Time from submission until the broker acknowledged")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        sender = new Thread(this::runSender, "event-publisher");
+        sender.setDaemon(true);
+        sender.start();
     }
 
-    public void publish(String event) {
-        // Try Kinesis first (AWS)
-        if (kinesisClient != null && kinesisStreamName != null && !kinesisStreamName.isBlank()) {
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        accepting = false;
+        sender.join(drainTimeoutMs);
+        if (sender.isAlive()) {
+            sender.interrupt();
+            sender.join(1000);
+        }
+
+        Submission left;
+        while ((left = queue.poll()) != null) {
+            fail(left);
+        }
+        // Wake submitters still blocked on a full queue so they see the shutdown
+        capacity.release(queueCapacity);
+        if (eventLog != null) eventLog.close();
+    }
+
+    /**
+     * Queue events for publishing. Blocks while the queue is full. The future completes
+     * with the ids of events the broker did not acknowledge.
+     */
+    public CompletableFuture<Set<Long>> submit(List<OutboxEvent> events) {
+        if (!accepting) {
+            return CompletableFuture.failedFuture(new ServiceBusyException("Event publisher is shutting down"));
+        }
+        int permits = Math.min(events.size(), queueCapacity);
+        capacity.acquireUninterruptibly(permits);
+        Submission submission = new Submission(events, permits);
+        queue.add(submission);
+        // Shutdown began meanwhile; whoever takes it off the queue completes it
+        if (!accepting && queue.remove(submission)) {
+            fail(submission);
+        }
+        return submission.result;
+    }
+
+    private void fail(Submission submission) {
+        capacity.release(submission.permits);
+        submission.result.completeExceptionally(new ServiceBusyException("Event publisher is shutting down"));
+    }
+
+    // Runs until shutdown and an empty queue, so what was submitted before stop() still goes out
+    private void runSender() {
+        List<Submission> batch = new ArrayList<>();
+        while (true) {
             try {
-                PutRecordRequest request = PutRecordRequest.builder()
-                        .streamName(kinesisStreamName)
-                        .partitionKey(UUID.randomUUID().toString())
-                        .data(SdkBytes.fromString(event, StandardCharsets.UTF_8))
-                        .build();
-                kinesisClient.putRecord(request);
-                return;
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!accepting) break;
+                    continue;
+                }
+
+                batch.add(first);
+                int events = first.events.size();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (events < maxBatchEvents) {
+                    Submission next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    events += next.events.size();
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             } catch (Exception e) {
-                // Fall through to Kafka
+                log.error("Event publisher failed to send batch: {}", e.getMessage());
+                batch.forEach(submission -> submission.result.completeExceptionally(e));
+            } finally {
+                batch.forEach(submission -> capacity.release(submission.permits));
+                batch.clear();
             }
         }
+    }
 
+    private void send(List<Submission> batch) {
+        List<OutboxEvent> events = new ArrayList<>();
+        batch.forEach(submission -> events.addAll(submission.events));
+
+        Set<Long> failed = null;
+        if (eventLog != null) {
+            failed = appendToLog(events);
+        }
+        // Try Kinesis first (AWS)
+        else if (kinesisClient != null) {
+            try {
+                failed = putRecords(events);
+            } catch (Exception e) {
+                log.warn("Kinesis PutRecords failed, falling back to Kafka: {}", e.getMessage());
+            }
+        }
         // Fallback to Kafka (local/docker)
-        if (kafkaTemplate != null) {
-            kafkaTemplate.send("transactions", event);
+        if (failed == null) {
+            failed = sendToKafka(events);
+        }
+
+        long now = System.nanoTime();
+        for (Submission submission : batch) {
+            Set<Long> submissionFailed = new HashSet<>();
+            for (OutboxEvent event : submission.events) {
+                if (failed.contains(event.getId())) submissionFailed.add(event.getId());
+            }
+            publishLatency.record(now - submission.submittedAt, TimeUnit.NANOSECONDS);
+            submission.result.complete(submissionFailed);
+        }
+    }
+
+    private Set<Long> putRecords(List<OutboxEvent> events) {
+        // One record per account (more if its events exceed the record size cap)
+        Map<String, ArrayDeque<AggregatedRecord>> byKey = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            ArrayDeque<AggregatedRecord> records = byKey.computeIfAbsent(event.getPartitionKey(), k -> new ArrayDeque<>());
+            AggregatedRecord record = records.peekLast();
+            if (record == null || record.size + EventFrames.frameSize(event.getPayload()) > maxRecordBytes) {
+                record = new AggregatedRecord(event.getPartitionKey());
+                records.add(record);
+            }
+            record.add(event);
+        }
+
+        // PutRecords doesn't order records within a call, and a later record can succeed
+        // where an earlier one failed. So a key that needed several records sends them one
+        // call after another, and once one fails the rest of that key is not sent.
+        Set<Long> failed = new HashSet<>();
+        while (!byKey.isEmpty()) {
+            List<AggregatedRecord> round = new ArrayList<>(byKey.size());
+            byKey.values().forEach(records -> round.add(records.poll()));
+            byKey.values().removeIf(ArrayDeque::isEmpty);
+
+            int start = 0;
+            while (start < round.size()) {
+                int end = start;
+                int requestBytes = 0;
+                while (end < round.size() && end - start < KINESIS_MAX_RECORDS
+                        && requestBytes + round.get(end).size <= KINESIS_MAX_REQUEST_BYTES) {
+                    requestBytes += round.get(end).size;
+                    end++;
+                }
+                if (end == start) end++;
+                for (AggregatedRecord record : putRecordsChunk(round.subList(start, end))) {
+                    record.events.forEach(event -> failed.add(event.getId()));
+                    ArrayDeque<AggregatedRecord> rest = byKey.remove(record.partitionKey);
+                    if (rest != null) rest.forEach(later -> later.events.forEach(event -> failed.add(event.getId())));
+                }
+                start = end;
+            }
+        }
+        return failed;
+    }
+
+    // Returns the records Kinesis did not accept
+    private List<AggregatedRecord> putRecordsChunk(List<AggregatedRecord> chunk) {
+        List<PutRecordsRequestEntry> entries = new ArrayList<>(chunk.size());
+        for (AggregatedRecord record : chunk) {
+            entries.add(PutRecordsRequestEntry.builder()
+                    .partitionKey(record.partitionKey)
+                    .data(SdkBytes.fromByteArrayUnsafe(record.pack()))
+                    .build());
+        }
+        PutRecordsResponse response = kinesisClient.putRecords(PutRecordsRequest.builder()
+                .streamName(kinesisStreamName)
+                .records(entries)
+                .build());
+
+        List<AggregatedRecord> failed = new ArrayList<>();
+        if (response.failedRecordCount() != null && response.failedRecordCount() > 0) {
+            // Results are positional; throttled records carry an error code
+            List<PutRecordsResultEntry> results = response.records();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).errorCode() != null) {
+                    failed.add(chunk.get(i));
+                }
+            }
+        }
+        return failed;
+    }
+
+    private Set<Long> appendToLog(List<OutboxEvent> events) {
+        Set<Long> failed = new HashSet<>();
+        for (OutboxEvent event : events) {
+            // An append error (e.g. disk full) would hit the rest too; leave them for the next round
+            if (!failed.isEmpty()) {
+                failed.add(event.getId());
+                continue;
+            }
+            try {
+                eventLog.append(event.getPayload());
+            } catch (IOException | RuntimeException e) {
+                log.error("Event log append failed: {}", e.getMessage());
+                failed.add(event.getId());
+            }
+        }
+        return failed;
+    }
+
+    private Set<Long> sendToKafka(List<OutboxEvent> events) {
+        Set<Long> failed = new HashSet<>();
+        if (kafkaTemplate == null) {
+            events.forEach(event -> failed.add(event.getId()));
+            return failed;
+        }
+
+        // Send everything first so the producer can batch, then wait for the acks
+        List<CompletableFuture<?>> sends = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            sends.add(kafkaTemplate.send("transactions", event.getPartitionKey(), event.getPayload()).completable());
+        }
+        kafkaTemplate.flush();
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                sends.get(i).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.add(events.get(i).getId());
+            } catch (Exception e) {
+                failed.add(events.get(i).getId());
+            }
+        }
+        return failed;
+    }
+
+    private static class Submission {
+        final List<OutboxEvent> events;
+        final int permits;
+        final long submittedAt = System.nanoTime();
+        final CompletableFuture<Set<Long>> result = new CompletableFuture<>();
+
+        Submission(List<OutboxEvent> events, int permits) {
+            this.events = events;
+            this.permits = permits;
+        }
+    }
+
+    // Length-prefixed payloads for one partition key (see EventFrames)
+    private static class AggregatedRecord {
+        final String partitionKey;
+        final List<OutboxEvent> events = new ArrayList<>();
+        int size;
+
+        AggregatedRecord(String partitionKey) {
+            this.partitionKey = partitionKey;
+        }
+
+        void add(OutboxEvent event) {
+            size += EventFrames.frameSize(event.getPayload());
+            events.add(event);
+        }
+
+        byte[] pack() {
+            List<byte[]> payloads = new ArrayList<>(events.size());
+            events.forEach(event -> payloads.add(event.getPayload()));
+            return EventFrames.pack(payloads);
         }
     }
 }
@@ -0,0 +1,70 @@
+package com.example.transaction.service;
+
+import com.example.transaction.repository.TransactionRollupRepository;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Folds transactions written before the rollup trigger existed into the daily rollup tables.
+ *
+ * Runs in the background at startup and works through accounts in chunks, checkpointing
+ * after each one, so a restart resumes where it stopped. Once finished it's a single
+ * SELECT on every later startup.
+ */
+@Component
+public class RollupBackfillJob implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupBackfillJob.class);
+
+    @Autowired
+    private TransactionRollupRepository rollupRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Value("${stats.rollup.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.rollup.backfill.chunk-size:500}")
+    private int chunkSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+
+        Thread worker = new Thread(this::backfill, "rollup-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void backfill() {
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            int current = shard;
+            shardRouter.onShard(shard, () -> {
+                backfillShard(current);
+                return null;
+            });
+        }
+    }
+
+    private void backfillShard(int shard) {
+        int chunks = 0;
+        try {
+            while (rollupRepository.backfillNextChunk(chunkSize)) {
+                chunks++;
+            }
+            if (chunks > 0) {
+                log.info("Rollup backfill of shard {} finished after {} chunks", shard, chunks);
+            }
+        } catch (Exception e) {
+            log.error("Rollup backfill of shard {} stopped after {} chunks, will resume on next start: {}",
+                    shard, chunks, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.transaction.service;
+
+import com.example.transaction.archive.TransactionArchive;
+import com.example.transaction.dto.TransactionView;
+import com.example.transaction.repository.TransactionHistoryRepository;
+import com.example.transaction.shard.ShardRouter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams an account's ledger straight from the database to the response.
+ *
+ * Postgres only uses a server-side cursor when the statement runs inside a transaction with
+ * a fetch size, so rows arrive in fetch-size chunks and memory use stays flat however long
+ * the export is. Rows older than the archive watermark are streamed from the
+ * {@link TransactionArchive} first, a month at a time.
+ */
+@Service
+public class TransactionExportService {
+
+    public enum Format { CSV, NDJSON }
+
+    private static final String CSV_HEADER =
+            "id,account_id,amount,type,category,description,counterparty_account_number,created_at\n";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Value("${transactions.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate cursorTemplate;
+
+    @PostConstruct
+    public void init() {
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+    }
+
+    public void export(List<Long> accountIds, Instant from, Instant to, Format format, OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, account_id, amount, type, category, description, counterparty_account_number, created_at " +
+                "FROM transaction WHERE account_id IN (")
+                .append(String.join(",", Collections.nCopies(accountIds.size(), "?")))
+                .append(")");
+        List<Object> params = new ArrayList<>(accountIds);
+        int shard = ShardRouter.shardOfAccounts(accountIds);
+        Instant watermark = router.onShard(shard, archive::watermark);
+        boolean reachesArchive = watermark != null && (from == null || from.isBefore(watermark));
+        Instant lower = reachesArchive ? watermark : from;
+        if (lower != null) {
+            sql.append(" AND created_at >= ?");
+            params.add(Timestamp.from(lower));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < ?");
+            params.add(Timestamp.from(to));
+        }
+        sql.append(" ORDER BY created_at, id");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        rowWriter.start();
+        // Get the first bytes out before the query starts returning rows
+        writer.flush();
+
+        try {
+            if (reachesArchive) {
+                archive.forEach(accountIds, from, to == null || watermark.isBefore(to) ? watermark : to, row -> {
+                    try {
+                        rowWriter.write(row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            router.readOnShard(shard, () -> {
+                cursorTemplate.query(sql.toString(), rs -> {
+                    try {
+                        rowWriter.write(TransactionHistoryRepository.VIEW_MAPPER.mapRow(rs, 0));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, params.toArray());
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            // Client went away mid-download
+            throw e.getCause();
+        }
+        rowWriter.finish();
+        writer.flush();
+    }
+
+    private interface RowWriter {
+        void start() throws IOException;
+        void write(TransactionView row) throws IOException;
+        void finish() throws IOException;
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            writer.write(CSV_HEADER);
+        }
+
+        @Override
+        public void write(TransactionView row) throws IOException {
+            writer.write(Long.toString(row.getId()));
+            writer.write(',');
+            writer.write(Long.toString(row.getAccountId()));
+            writer.write(',');
+            writer.write(row.getAmount().toPlainString());
+            writer.write(',');
+            writer.write(row.getType().name());
+            writer.write(',');
+            writer.write(row.getCategory().name());
+            writer.write(',');
+            writeEscaped(row.getDescription());
+            writer.write(',');
+            writeEscaped(row.getCounterpartyAccountNumber());
+            writer.write(',');
+            writer.write(row.getCreatedAt().toString());
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        // RFC 4180: quote fields containing separators, quotes or line breaks
+        private void writeEscaped(String value) throws IOException {
+            if (value == null) return;
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private JsonGenerator generator;
+        private boolean empty = true;
+
+        NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void write(TransactionView row) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", row.getId());
+            generator.writeNumberField("accountId", row.getAccountId());
+            generator.writeNumberField("amount", row.getAmount());
+            generator.writeStringField("type", row.getType().name());
+            generator.writeStringField("category", row.getCategory().name());
+            generator.writeStringField("description", row.getDescription());
+            generator.writeStringField("counterpartyAccountNumber", row.getCounterpartyAccountNumber());
+            generator.writeStringField("createdAt", row.getCreatedAt().toString());
+            generator.writeEndObject();
+            empty = false;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!empty) generator.writeRaw('\n');
+            generator.flush();
+        }
+    }
+}
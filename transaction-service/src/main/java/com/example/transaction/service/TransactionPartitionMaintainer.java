@@ -0,0 +1,139 @@
+package com.example.transaction.service;
+
+import com.example.transaction.archive.TransactionArchive;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Keeps the monthly partitions of the transaction table (see V8__partition_transaction_table.sql)
+ * ahead of the clock: at startup and daily it creates partitions for the next premake-months
+ * months (UTC), and detaches partitions whose whole range is older than retention-months.
+ *
+ * Detached partitions stay in place as ordinary tables; they just no longer show up in queries
+ * against transaction. Retention is off (0) by default, since balances and history are read
+ * from the full table. With the archive enabled, a partition is only detached once its whole
+ * range is below the archive watermark; until then its rows exist nowhere else.
+ */
+@Component
+public class TransactionPartitionMaintainer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionPartitionMaintainer.class);
+
+    // Upper bound of each attached partition, parsed back from its FOR VALUES clause
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname, i.inhdetachpending, " +
+            "(regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1]::timestamptz AS upper_bound " +
+            "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'transaction'::regclass ORDER BY upper_bound";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Value("${transactions.partitions.enabled:true}")
+    private boolean enabled;
+
+    @Value("${transactions.partitions.premake-months:3}")
+    private int premakeMonths;
+
+    @Value("${transactions.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        maintain();
+    }
+
+    @Scheduled(cron = "${transactions.partitions.cron:0 15 1 * * *}")
+    public void maintain() {
+        if (!enabled) return;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            try {
+                shardRouter.onShard(shard, () -> {
+                    List<Partition> partitions = partitions();
+                    createAhead(partitions);
+                    if (retentionMonths > 0) detachOld(partitions);
+                    return null;
+                });
+            } catch (Exception e) {
+                log.error("Transaction partition maintenance failed on shard {}: {}", shard, e.getMessage());
+            }
+        }
+    }
+
+    // Months are filled in from the newest existing partition, so ranges stay contiguous
+    private void createAhead(List<Partition> partitions) {
+        YearMonth target = YearMonth.now(ZoneOffset.UTC).plusMonths(premakeMonths);
+        YearMonth month = partitions.isEmpty()
+                ? YearMonth.now(ZoneOffset.UTC)
+                : YearMonth.from(partitions.get(partitions.size() - 1).upperBound);
+        for (; !month.isAfter(target); month = month.plusMonths(1)) {
+            Boolean created = jdbcTemplate.queryForObject("SELECT ensure_transaction_partition(?)",
+                    Boolean.class, Date.valueOf(month.atDay(1)));
+            if (Boolean.TRUE.equals(created)) {
+                log.info("Created transaction partition for {}", month);
+            }
+        }
+    }
+
+    private void detachOld(List<Partition> partitions) {
+        LocalDate cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths).atDay(1);
+        Instant watermark = archive.isEnabled() ? archive.watermark() : null;
+        for (Partition partition : partitions) {
+            if (partition.detachPending) {
+                // A previous concurrent detach was interrupted
+                jdbcTemplate.execute("ALTER TABLE transaction DETACH PARTITION " + partition.name + " FINALIZE");
+                log.info("Finished detaching transaction partition {}", partition.name);
+            } else if (!partition.upperBound.toLocalDate().isAfter(cutoff)) {
+                if (archive.isEnabled() && (watermark == null || partition.upperBound.toInstant().isAfter(watermark))) {
+                    log.warn("Not detaching transaction partition {} (ends {}): not archived yet",
+                            partition.name, partition.upperBound);
+                    continue;
+                }
+                // CONCURRENTLY avoids blocking inserts; it must run outside a transaction block
+                jdbcTemplate.execute("ALTER TABLE transaction DETACH PARTITION " + partition.name + " CONCURRENTLY");
+                log.info("Detached transaction partition {} (ends {})", partition.name, partition.upperBound);
+            }
+        }
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> new Partition(
+                rs.getString("relname"),
+                rs.getBoolean("inhdetachpending"),
+                rs.getObject("upper_bound", OffsetDateTime.class).withOffsetSameInstant(ZoneOffset.UTC)));
+    }
+
+    private static class Partition {
+        final String name;
+        final boolean detachPending;
+        final OffsetDateTime upperBound;
+
+        Partition(String name, boolean detachPending, OffsetDateTime upperBound) {
+            this.name = name;
+            this.detachPending = detachPending;
+            this.upperBound = upperBound;
+        }
+    }
+}
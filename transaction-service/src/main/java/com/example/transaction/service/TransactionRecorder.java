@@ -0,0 +1,157 @@
+package com.example.transaction.service;
+
+import com.example.transaction.journal.JournalEntry;
+import com.example.transaction.journal.LedgerJournal;
+import com.example.transaction.model.Transaction;
+import com.example.transaction.outbox.OutboxEvent;
+import com.example.transaction.outbox.OutboxRepository;
+import com.example.transaction.repository.TransactionBatchRepository;
+import com.example.transaction.repository.TransactionRepository;
+import com.example.transaction.shard.CrossShardTransactionRepository;
+import com.example.transaction.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes transaction rows together with their outbox events, so an event exists
+ * exactly when its transaction does. Publishing happens later in OutboxRelay.
+ *
+ * The rows are appended to the ledger journal first, outside the DB transaction so the
+ * fsync wait doesn't hold a pooled connection.
+ *
+ * Everything commits in one DB transaction on the shard of the first row (the caller's):
+ * its rows, the events, and a cross_shard_transaction entry for each row that belongs on
+ * another shard (e.g. the receiving side of a transfer). Those rows are then inserted on
+ * their own shard, and retried by CrossShardTransactionScheduler if that fails; the request
+ * has succeeded once the first transaction has committed.
+ */
+@Service
+public class TransactionRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionRecorder.class);
+
+    @Autowired
+    private TransactionRepository repo;
+
+    @Autowired
+    private TransactionBatchRepository batchRepository;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private CrossShardTransactionRepository crossShardRepository;
+
+    @Autowired
+    private LedgerJournal journal;
+
+    @Autowired
+    private ShardRouter router;
+
+    // Rows on the caller's shard come back saved, those on other shards once they are inserted there
+    public List<Transaction> record(List<Transaction> transactions, OutboxEvent event) {
+        LedgerJournal.Receipt receipt = journal(transactions);
+        int home = ShardRouter.shardOfAccount(transactions.get(0).getAccountId());
+        List<Transaction> local = new ArrayList<>();
+        List<CrossShardTransactionRepository.Pending> remote = split(home, transactions, local);
+
+        List<Transaction> saved = new ArrayList<>(router.inTransactionOnShard(home, () -> {
+            List<Transaction> rows = repo.saveAll(local);
+            crossShardRepository.enqueue(remote);
+            outboxRepository.enqueueAll(List.of(event));
+            return rows;
+        }));
+        journal.committed(receipt);
+        applyRemote(home, remote);
+        remote.forEach(pending -> saved.add(pending.getTransaction()));
+        return saved;
+    }
+
+    // Bulk variant used by batch submission: one JDBC batch for the rows, one for the events
+    public void recordAll(List<Transaction> transactions, List<OutboxEvent> events) {
+        if (transactions.isEmpty()) return;
+        LedgerJournal.Receipt receipt = journal(transactions);
+        int home = ShardRouter.shardOfAccount(transactions.get(0).getAccountId());
+        List<Transaction> local = new ArrayList<>();
+        List<CrossShardTransactionRepository.Pending> remote = split(home, transactions, local);
+
+        router.inTransactionOnShard(home, () -> {
+            batchRepository.insertAll(local);
+            crossShardRepository.enqueue(remote);
+            outboxRepository.enqueueAll(events);
+            return null;
+        });
+        journal.committed(receipt);
+        applyRemote(home, remote);
+    }
+
+    /**
+     * Insert pending rows enqueued on the home shard, one DB transaction per receiving shard,
+     * and mark them done on the home shard. A row already inserted is skipped, so racing a
+     * retry is harmless. Failures are left pending for the next retry.
+     */
+    public void applyRemote(int home, List<CrossShardTransactionRepository.Pending> pending) {
+        if (pending.isEmpty()) return;
+        Map<Integer, List<CrossShardTransactionRepository.Pending>> byShard = new LinkedHashMap<>();
+        for (CrossShardTransactionRepository.Pending p : pending) {
+            byShard.computeIfAbsent(ShardRouter.shardOfAccount(p.getTransaction().getAccountId()), s -> new ArrayList<>()).add(p);
+        }
+        for (Map.Entry<Integer, List<CrossShardTransactionRepository.Pending>> group : byShard.entrySet()) {
+            try {
+                router.inTransactionOnShard(group.getKey(), () -> {
+                    List<Transaction> rows = new ArrayList<>(group.getValue().size());
+                    for (CrossShardTransactionRepository.Pending p : group.getValue()) {
+                        if (crossShardRepository.markApplied(p.getId())) rows.add(p.getTransaction());
+                    }
+                    batchRepository.insertAll(rows);
+                    return null;
+                });
+                List<UUID> ids = new ArrayList<>(group.getValue().size());
+                group.getValue().forEach(p -> ids.add(p.getId()));
+                router.onShard(home, () -> {
+                    crossShardRepository.complete(ids);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.warn("{} transaction rows for shard {} not inserted yet, will retry: {}",
+                        group.getValue().size(), group.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    // Rows on the home shard go to local, the others come back to be enqueued there
+    private static List<CrossShardTransactionRepository.Pending> split(int home, List<Transaction> transactions,
+                                                                       List<Transaction> local) {
+        List<CrossShardTransactionRepository.Pending> remote = new ArrayList<>();
+        for (Transaction tx : transactions) {
+            if (ShardRouter.shardOfAccount(tx.getAccountId()) == home) {
+                local.add(tx);
+            } else {
+                remote.add(new CrossShardTransactionRepository.Pending(UUID.randomUUID(), tx));
+            }
+        }
+        return remote;
+    }
+
+    // Postgres keeps microseconds, so the journaled timestamp matches the stored one exactly
+    private LedgerJournal.Receipt journal(List<Transaction> transactions) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        transactions.forEach(tx -> tx.setCreatedAt(now));
+        if (!journal.isEnabled()) return LedgerJournal.Receipt.NONE;
+
+        UUID requestId = UUID.randomUUID();
+        List<JournalEntry> entries = new ArrayList<>(transactions.size());
+        transactions.forEach(tx -> entries.add(JournalEntry.of(requestId, tx)));
+        return journal.write(entries);
+    }
+}
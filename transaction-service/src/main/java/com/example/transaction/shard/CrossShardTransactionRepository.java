@@ -0,0 +1,87 @@
+package com.example.transaction.shard;
+
+import com.example.transaction.model.Transaction;
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * cross_shard_transaction on the caller's shard and cross_shard_transaction_applied on the
+ * receiving one. Every method runs on whichever shard is current.
+ */
+@Repository
+public class CrossShardTransactionRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Must run inside the caller's transaction so the pending rows commit with its own
+    public void enqueue(List<Pending> pending) {
+        if (pending.isEmpty()) return;
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO cross_shard_transaction (id, account_id, amount, type, category, description, " +
+                "counterparty_account_number, row_created_at, balance_after) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                pending, pending.size(), (ps, p) -> {
+                    Transaction tx = p.getTransaction();
+                    ps.setObject(1, p.getId());
+                    ps.setLong(2, tx.getAccountId());
+                    ps.setBigDecimal(3, tx.getAmount());
+                    ps.setString(4, tx.getType().name());
+                    ps.setString(5, (tx.getCategory() != null ? tx.getCategory() : TransactionCategory.OTHER).name());
+                    ps.setString(6, tx.getDescription());
+                    ps.setString(7, tx.getCounterpartyAccountNumber());
+                    ps.setTimestamp(8, Timestamp.from(tx.getCreatedAt()));
+                    ps.setBigDecimal(9, tx.getBalanceAfter());
+                });
+    }
+
+    public List<Pending> findPending(Instant createdBefore, int limit) {
+        return jdbcTemplate.query(
+                "SELECT id, account_id, amount, type, category, description, counterparty_account_number, row_created_at, " +
+                "balance_after " +
+                "FROM cross_shard_transaction WHERE status = 'PENDING' AND created_at < ? ORDER BY created_at LIMIT ?",
+                (rs, i) -> new Pending(rs.getObject("id", UUID.class), Transaction.builder()
+                        .accountId(rs.getLong("account_id"))
+                        .amount(rs.getBigDecimal("amount"))
+                        .type(TransactionType.valueOf(rs.getString("type")))
+                        .category(TransactionCategory.valueOf(rs.getString("category")))
+                        .description(rs.getString("description"))
+                        .counterpartyAccountNumber(rs.getString("counterparty_account_number"))
+                        .createdAt(rs.getTimestamp("row_created_at").toInstant())
+                        .balanceAfter(rs.getBigDecimal("balance_after"))
+                        .build()),
+                Timestamp.from(createdBefore), limit);
+    }
+
+    public void complete(List<UUID> ids) {
+        jdbcTemplate.batchUpdate(
+                "UPDATE cross_shard_transaction SET status = 'COMPLETED', completed_at = NOW() WHERE id = ?",
+                ids, ids.size(), (ps, id) -> ps.setObject(1, id));
+    }
+
+    // True the first time for a given row; a concurrent retry waits on the key and then gets false
+    public boolean markApplied(UUID id) {
+        return jdbcTemplate.update(
+                "INSERT INTO cross_shard_transaction_applied (id) VALUES (?) ON CONFLICT (id) DO NOTHING", id) == 1;
+    }
+
+    public static class Pending {
+        private final UUID id;
+        private final Transaction transaction;
+
+        public Pending(UUID id, Transaction transaction) {
+            this.id = id;
+            this.transaction = transaction;
+        }
+
+        public UUID getId() { return id; }
+        public Transaction getTransaction() { return transaction; }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.transaction.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Transaction rows live on the same shard as their account. account-service puts the
+ * shard in the top bits of every account id, so no lookup is needed to find it.
+ *
+ * Work runs on a shard by wrapping it in {@link #onShard}; anything outside runs on shard 0.
+ */
+@Component
+public class ShardRouter {
+
+    // Must match account-service's ShardRouter
+    public static final int ACCOUNT_ID_SHARD_SHIFT = 40;
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private TransactionTemplate readOnlyTemplate;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnlyTemplate.setReadOnly(true);
+    }
+
+    public int shardCount() {
+        return shardRoutingDataSource.getShardCount();
+    }
+
+    public static int shardOfAccount(long accountId) {
+        return (int) (accountId >>> ACCOUNT_ID_SHARD_SHIFT);
+    }
+
+    // All of a user's accounts are on one shard, so the first one decides
+    public static int shardOfAccounts(Collection<Long> accountIds) {
+        return accountIds.isEmpty() ? 0 : shardOfAccount(accountIds.iterator().next());
+    }
+
+    /**
+     * Run work with every statement going to the given shard. Must be entered before the
+     * transaction it belongs to starts; a transaction already running stays where it is.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (shard < 0 || shard >= shardCount()) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+        Integer previous = ShardRoutingDataSource.current();
+        if (TransactionSynchronizationManager.isActualTransactionActive() && shard != (previous != null ? previous : 0)) {
+            throw new IllegalStateException("Cannot switch to shard " + shard + " inside a transaction");
+        }
+        ShardRoutingDataSource.set(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardRoutingDataSource.set(previous);
+        }
+    }
+
+    // Read-only transaction on the shard; on shard 0 that can be served by a read replica
+    public <T> T readOnShard(int shard, Supplier<T> work) {
+        return onShard(shard, () -> readOnlyTemplate.execute(status -> work.get()));
+    }
+
+    public <T> T inTransactionOnShard(int shard, Supplier<T> work) {
+        return onShard(shard, () -> transactionTemplate.execute(status -> work.get()));
+    }
+
+    public void forEachShard(Runnable work) {
+        for (int shard = 0; shard < shardCount(); shard++) {
+            onShard(shard, () -> {
+                work.run();
+                return null;
+            });
+        }
+    }
+}
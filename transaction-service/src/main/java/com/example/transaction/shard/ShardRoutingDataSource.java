@@ -0,0 +1,67 @@
+package com.example.transaction.shard;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One target per shard, picked from the shard the current thread is working on
+ * (see {@link ShardRouter#onShard}); shard 0 when none is set. Shard 0 is the original
+ * database and also holds everything that isn't sharded (idempotency keys).
+ *
+ * Like the read/write routing it sits behind a LazyConnectionDataSourceProxy, so a
+ * transaction lands on the shard that is current at its first statement and stays there.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        this.shards = List.copyOf(shards);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    static Integer current() {
+        return CURRENT.get();
+    }
+
+    static void set(Integer shard) {
+        if (shard == null) CURRENT.remove();
+        else CURRENT.set(shard);
+    }
+
+    // Shard 0 is a bean of its own and closed by the container
+    @Override
+    public void destroy() throws IOException {
+        for (DataSource shard : shards.subList(1, shards.size())) {
+            if (shard instanceof Closeable) ((Closeable) shard).close();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : 0;
+    }
+}
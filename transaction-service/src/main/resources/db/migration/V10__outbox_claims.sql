@@ -0,0 +1,7 @@
+-- The relay claims a page of events in a short transaction, publishes them with no
+-- transaction open, then deletes or releases them. claimed_at marks events in flight;
+-- a claim older than outbox.relay.claim-timeout-ms belongs to a relay that died.
+ALTER TABLE transaction_outbox ADD COLUMN IF NOT EXISTS claimed_at TIMESTAMP WITH TIME ZONE;
+
+CREATE INDEX IF NOT EXISTS idx_transaction_outbox_claimed ON transaction_outbox (claimed_at)
+    WHERE claimed_at IS NOT NULL;
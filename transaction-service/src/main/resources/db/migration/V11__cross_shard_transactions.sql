@@ -0,0 +1,25 @@
+-- Transaction rows for accounts on another shard (e.g. the receiving side of a transfer),
+-- written on the caller's shard in the same transaction as its own rows. PENDING until the
+-- row has been inserted on the account's shard; see CrossShardTransactionScheduler.
+-- row_created_at is the row's own created_at, as journaled.
+CREATE TABLE IF NOT EXISTS cross_shard_transaction (
+    id UUID PRIMARY KEY,
+    account_id BIGINT NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL,
+    type VARCHAR(50) NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    description VARCHAR(500),
+    counterparty_account_number VARCHAR(255),
+    row_created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_cross_shard_transaction_pending ON cross_shard_transaction(created_at) WHERE status = 'PENDING';
+
+-- On the receiving side: rows already inserted, so a retried row is inserted once
+CREATE TABLE IF NOT EXISTS cross_shard_transaction_applied (
+    id UUID PRIMARY KEY,
+    applied_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
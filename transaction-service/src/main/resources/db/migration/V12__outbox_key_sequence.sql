@@ -0,0 +1,14 @@
+-- BIGSERIAL ids are handed out at INSERT, not at commit, so two transactions writing
+-- events for one account can commit in the opposite order of their ids. Each event now
+-- also gets a per-partition-key sequence, taken from a counter row that stays locked
+-- until the writing transaction commits, so an account's sequences follow commit order.
+-- The relay holds back an event while a lower sequence of its key is not yet claimable.
+CREATE TABLE IF NOT EXISTS transaction_outbox_sequence (
+    partition_key VARCHAR(64) PRIMARY KEY,
+    last_sequence BIGINT NOT NULL
+);
+
+-- NULL for events queued before this migration; those keep id order
+ALTER TABLE transaction_outbox ADD COLUMN IF NOT EXISTS sequence BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_transaction_outbox_key_sequence ON transaction_outbox (partition_key, sequence);
@@ -0,0 +1,68 @@
+-- Daily rollups also keep each account's closing balance, and category spend is kept per
+-- day so /transactions/stats can window it like the other figures.
+--
+-- The balance comes from the row itself: balance_after is what account-service reported
+-- right after the posting's leg. Adding a nullable column without a default is
+-- metadata-only, on the partitioned table as on every partition. Rows written before
+-- this have none, so their days have no closing balance and stats fall back to working
+-- back from the current balance.
+ALTER TABLE transaction ADD COLUMN IF NOT EXISTS balance_after NUMERIC(19, 4);
+ALTER TABLE cross_shard_transaction ADD COLUMN IF NOT EXISTS balance_after NUMERIC(19, 4);
+
+-- closing_at is the created_at of the row closing_balance came from, so a row recorded late
+-- doesn't overwrite a later balance of the same day
+ALTER TABLE account_daily_rollup ADD COLUMN IF NOT EXISTS closing_balance NUMERIC(19, 4);
+ALTER TABLE account_daily_rollup ADD COLUMN IF NOT EXISTS closing_at TIMESTAMP WITH TIME ZONE;
+
+CREATE TABLE IF NOT EXISTS account_daily_category_spend (
+    account_id BIGINT NOT NULL,
+    day DATE NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, day, category)
+);
+
+CREATE OR REPLACE FUNCTION transaction_rollup_on_insert() RETURNS trigger AS $$
+DECLARE
+    is_credit BOOLEAN := NEW.type IN ('DEPOSIT', 'TRANSFER_IN');
+BEGIN
+    INSERT INTO account_daily_rollup (account_id, day, credits, debits, tx_count, closing_balance, closing_at)
+    VALUES (NEW.account_id, NEW.created_at::date,
+            CASE WHEN is_credit THEN NEW.amount ELSE 0 END,
+            CASE WHEN is_credit THEN 0 ELSE NEW.amount END,
+            1,
+            NEW.balance_after,
+            CASE WHEN NEW.balance_after IS NOT NULL THEN NEW.created_at END)
+    ON CONFLICT (account_id, day) DO UPDATE
+        SET credits = account_daily_rollup.credits + EXCLUDED.credits,
+            debits = account_daily_rollup.debits + EXCLUDED.debits,
+            tx_count = account_daily_rollup.tx_count + 1,
+            closing_balance = CASE
+                WHEN EXCLUDED.closing_at IS NOT NULL
+                     AND (account_daily_rollup.closing_at IS NULL OR EXCLUDED.closing_at >= account_daily_rollup.closing_at)
+                THEN EXCLUDED.closing_balance ELSE account_daily_rollup.closing_balance END,
+            closing_at = GREATEST(account_daily_rollup.closing_at, EXCLUDED.closing_at);
+
+    IF NOT is_credit THEN
+        INSERT INTO account_daily_category_spend (account_id, day, category, amount)
+        VALUES (NEW.account_id, NEW.created_at::date, NEW.category, NEW.amount)
+        ON CONFLICT (account_id, day, category) DO UPDATE
+            SET amount = account_daily_category_spend.amount + EXCLUDED.amount;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Stats only look back 30 days, so only that much spend is rebuilt per day. Rows RollupBackfillJob
+-- has not folded in yet are left to it; it now writes to the per-day table.
+INSERT INTO account_daily_category_spend (account_id, day, category, amount)
+SELECT t.account_id, t.created_at::date, t.category, SUM(t.amount)
+FROM transaction t, transaction_rollup_backfill b
+WHERE t.type IN ('WITHDRAW', 'TRANSFER_OUT')
+  AND t.created_at >= CURRENT_DATE - 31
+  AND (b.done OR t.id > b.cutoff_id OR t.account_id <= b.last_account_id)
+GROUP BY t.account_id, t.created_at::date, t.category
+ON CONFLICT (account_id, day, category) DO UPDATE
+    SET amount = account_daily_category_spend.amount + EXCLUDED.amount;
+
+DROP TABLE IF EXISTS account_category_spend;
@@ -0,0 +1,5 @@
+-- Keyset pagination over an account's history walks (account_id, created_at DESC, id DESC).
+-- The single-column account_id index is a prefix of this one and is no longer needed.
+CREATE INDEX IF NOT EXISTS idx_transaction_account_created_id ON transaction(account_id, created_at DESC, id DESC);
+
+DROP INDEX IF EXISTS idx_transaction_account_id;
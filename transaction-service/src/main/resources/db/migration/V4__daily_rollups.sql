@@ -0,0 +1,63 @@
+-- Per-account daily totals behind /transactions/stats.
+-- Maintained by a trigger so every writer of the transaction table (including account-service's
+-- Stripe deposits) updates them in the same DB transaction as the insert.
+-- Days are taken in the session time zone, which the JDBC driver sets to the JVM's zone.
+CREATE TABLE IF NOT EXISTS account_daily_rollup (
+    account_id BIGINT NOT NULL,
+    day DATE NOT NULL,
+    credits NUMERIC(19, 4) NOT NULL DEFAULT 0,
+    debits NUMERIC(19, 4) NOT NULL DEFAULT 0,
+    tx_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, day)
+);
+
+-- All-time spend (WITHDRAW + TRANSFER_OUT) per category
+CREATE TABLE IF NOT EXISTS account_category_spend (
+    account_id BIGINT NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, category)
+);
+
+CREATE OR REPLACE FUNCTION transaction_rollup_on_insert() RETURNS trigger AS $$
+DECLARE
+    is_credit BOOLEAN := NEW.type IN ('DEPOSIT', 'TRANSFER_IN');
+BEGIN
+    INSERT INTO account_daily_rollup (account_id, day, credits, debits, tx_count)
+    VALUES (NEW.account_id, NEW.created_at::date,
+            CASE WHEN is_credit THEN NEW.amount ELSE 0 END,
+            CASE WHEN is_credit THEN 0 ELSE NEW.amount END,
+            1)
+    ON CONFLICT (account_id, day) DO UPDATE
+        SET credits = account_daily_rollup.credits + EXCLUDED.credits,
+            debits = account_daily_rollup.debits + EXCLUDED.debits,
+            tx_count = account_daily_rollup.tx_count + 1;
+
+    IF NOT is_credit THEN
+        INSERT INTO account_category_spend (account_id, category, amount)
+        VALUES (NEW.account_id, NEW.category, NEW.amount)
+        ON CONFLICT (account_id, category) DO UPDATE
+            SET amount = account_category_spend.amount + EXCLUDED.amount;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_transaction_rollup ON transaction;
+CREATE TRIGGER trg_transaction_rollup
+    AFTER INSERT ON transaction
+    FOR EACH ROW EXECUTE FUNCTION transaction_rollup_on_insert();
+
+-- Rows up to cutoff_id existed before the trigger and are folded in by RollupBackfillJob,
+-- one account range at a time. last_account_id is the resume point.
+CREATE TABLE IF NOT EXISTS transaction_rollup_backfill (
+    id INT PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+    cutoff_id BIGINT NOT NULL,
+    last_account_id BIGINT NOT NULL DEFAULT 0,
+    done BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO transaction_rollup_backfill (id, cutoff_id)
+SELECT 1, COALESCE(MAX(id), 0) FROM transaction
+ON CONFLICT (id) DO NOTHING;
@@ -0,0 +1,62 @@
+-- Outgoing-transfer counters per (account, recipient) behind /transactions/frequent-recipients.
+-- decay_score is the log of sum(2^(t / half-life)) over the account's transfers to the recipient,
+-- so ordering by it ranks by exponentially decayed frequency ("frequent recently") without
+-- ever rewriting old rows, and the log form can't overflow.
+CREATE TABLE IF NOT EXISTS account_recipient_frequency (
+    account_id BIGINT NOT NULL,
+    recipient_account_number VARCHAR(255) NOT NULL,
+    transfer_count BIGINT NOT NULL DEFAULT 0,
+    decay_score DOUBLE PRECISION NOT NULL,
+    last_transfer_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (account_id, recipient_account_number)
+);
+
+CREATE INDEX IF NOT EXISTS idx_recipient_frequency_decay ON account_recipient_frequency(account_id, decay_score DESC);
+CREATE INDEX IF NOT EXISTS idx_recipient_frequency_count ON account_recipient_frequency(account_id, transfer_count DESC);
+
+-- log-weight of one transfer; half-life of 30 days
+CREATE OR REPLACE FUNCTION recipient_decay_weight(ts TIMESTAMP WITH TIME ZONE) RETURNS DOUBLE PRECISION AS $$
+    SELECT LN(2) * EXTRACT(EPOCH FROM ts) / (30 * 86400);
+$$ LANGUAGE sql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION transaction_recipient_on_insert() RETURNS trigger AS $$
+DECLARE
+    w DOUBLE PRECISION;
+BEGIN
+    IF NEW.type <> 'TRANSFER_OUT' OR NEW.counterparty_account_number IS NULL THEN
+        RETURN NULL;
+    END IF;
+
+    w := recipient_decay_weight(NEW.created_at);
+    INSERT INTO account_recipient_frequency (account_id, recipient_account_number, transfer_count, decay_score, last_transfer_at)
+    VALUES (NEW.account_id, NEW.counterparty_account_number, 1, w, NEW.created_at)
+    ON CONFLICT (account_id, recipient_account_number) DO UPDATE
+        -- log(exp(a) + exp(b)), computed stably
+        SET decay_score = GREATEST(account_recipient_frequency.decay_score, w)
+                + LN(1 + EXP(-ABS(account_recipient_frequency.decay_score - w))),
+            transfer_count = account_recipient_frequency.transfer_count + 1,
+            last_transfer_at = GREATEST(account_recipient_frequency.last_transfer_at, NEW.created_at);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_transaction_recipient ON transaction;
+CREATE TRIGGER trg_transaction_recipient
+    AFTER INSERT ON transaction
+    FOR EACH ROW EXECUTE FUNCTION transaction_recipient_on_insert();
+
+-- Existing transfers. Only TRANSFER_OUT rows are read, and the trigger above is already in
+-- place within this migration's transaction, so nothing is counted twice.
+INSERT INTO account_recipient_frequency (account_id, recipient_account_number, transfer_count, decay_score, last_transfer_at)
+SELECT account_id, counterparty_account_number, COUNT(*),
+       MAX(max_w) + LN(SUM(EXP(w - max_w))),
+       MAX(created_at)
+FROM (
+    SELECT account_id, counterparty_account_number, created_at,
+           recipient_decay_weight(created_at) AS w,
+           MAX(recipient_decay_weight(created_at)) OVER (PARTITION BY account_id, counterparty_account_number) AS max_w
+    FROM transaction
+    WHERE type = 'TRANSFER_OUT' AND counterparty_account_number IS NOT NULL
+) weighted
+GROUP BY account_id, counterparty_account_number
+ON CONFLICT (account_id, recipient_account_number) DO NOTHING;
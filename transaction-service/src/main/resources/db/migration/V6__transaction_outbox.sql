@@ -0,0 +1,8 @@
+-- Events waiting to be published, written in the same transaction as the transaction rows.
+-- OutboxRelay publishes them in id order and deletes them once the broker has acknowledged.
+CREATE TABLE IF NOT EXISTS transaction_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    partition_key VARCHAR(64) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
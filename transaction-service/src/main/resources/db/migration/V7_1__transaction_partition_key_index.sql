@@ -0,0 +1,9 @@
+-- Groundwork for V8, which turns this table into the first partition of a partitioned one.
+-- The partitioned primary key is (id, created_at); with a unique index on those columns
+-- already in place ATTACH PARTITION adopts it instead of building one under its lock.
+-- CONCURRENTLY can't run in a transaction, so Flyway runs this migration outside one. A
+-- failed run leaves an INVALID index behind: drop it before retrying.
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS transaction_legacy_id_created_at_idx ON transaction (id, created_at);
+
+-- V3 drops this one too; make sure it isn't carried into the partition
+DROP INDEX CONCURRENTLY IF EXISTS idx_transaction_account_id;
@@ -0,0 +1,9 @@
+-- Bounds created_at below the start of next month (UTC), the upper bound V8 attaches this
+-- table with, so ATTACH PARTITION can trust the constraint instead of scanning every row.
+-- NOT VALID only checks new rows and holds the table lock briefly; V7_3 validates the rest.
+DO $$
+BEGIN
+    EXECUTE format('ALTER TABLE transaction ADD CONSTRAINT transaction_legacy_created_at_bound CHECK (created_at < %L) NOT VALID',
+                   (date_trunc('month', NOW() AT TIME ZONE 'UTC') + INTERVAL '1 month') AT TIME ZONE 'UTC');
+END;
+$$;
@@ -0,0 +1,2 @@
+-- Separate from V7_2 so the scan runs under a lock that lets reads and writes carry on
+ALTER TABLE transaction VALIDATE CONSTRAINT transaction_legacy_created_at_bound;
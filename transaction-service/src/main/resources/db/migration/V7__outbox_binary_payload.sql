@@ -0,0 +1,3 @@
+-- Events are now written in the binary event-model format. Rows still queued keep their
+-- JSON text as UTF-8 bytes; consumers recognise those by the missing event header.
+ALTER TABLE transaction_outbox ALTER COLUMN payload TYPE BYTEA USING convert_to(payload, 'UTF8');
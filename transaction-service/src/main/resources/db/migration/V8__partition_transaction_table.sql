@@ -0,0 +1,85 @@
+-- Monthly range partitions for the transaction table.
+-- The existing table becomes the first partition, covering everything below the bound V7_2
+-- checked (the start of next month, UTC), so no rows are copied. The unique index from V7_1
+-- and that validated constraint make the ATTACH a catalog change: no index build, no scan.
+-- Newer months get their own partitions, each with a local
+-- (account_id, created_at DESC, id DESC) index; TransactionPartitionMaintainer creates future
+-- months ahead of time and detaches the oldest ones.
+-- The primary key has to include the partition key, so it becomes (id, created_at); ids still
+-- come from transaction_id_seq and stay unique.
+
+ALTER TABLE transaction RENAME TO transaction_legacy;
+ALTER TABLE transaction_legacy DROP CONSTRAINT transaction_pkey;
+ALTER TABLE transaction_legacy ALTER COLUMN id DROP DEFAULT;
+ALTER SEQUENCE transaction_id_seq OWNED BY NONE;
+ALTER INDEX idx_transaction_account_created_id RENAME TO transaction_legacy_account_created_id_idx;
+DROP INDEX IF EXISTS idx_transaction_account_id;
+-- Nothing filters on these alone; partition pruning covers created_at ranges
+DROP INDEX IF EXISTS idx_transaction_created_at;
+DROP INDEX IF EXISTS idx_transaction_type;
+
+-- The rollup and recipient triggers move to the partitioned table below
+DROP TRIGGER IF EXISTS trg_transaction_rollup ON transaction_legacy;
+DROP TRIGGER IF EXISTS trg_transaction_recipient ON transaction_legacy;
+
+CREATE TABLE transaction (
+    id BIGINT NOT NULL DEFAULT nextval('transaction_id_seq'),
+    account_id BIGINT NOT NULL,
+    amount NUMERIC(19, 4) NOT NULL,
+    type VARCHAR(50) NOT NULL,
+    category VARCHAR(50) NOT NULL DEFAULT 'OTHER',
+    description VARCHAR(500),
+    counterparty_account_number VARCHAR(255),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT transaction_pkey PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE transaction_id_seq OWNED BY transaction.id;
+
+-- Cascades to every partition as a local index
+CREATE INDEX idx_transaction_account_created_id ON transaction(account_id, created_at DESC, id DESC);
+
+CREATE TRIGGER trg_transaction_rollup
+    AFTER INSERT ON transaction
+    FOR EACH ROW EXECUTE FUNCTION transaction_rollup_on_insert();
+
+CREATE TRIGGER trg_transaction_recipient
+    AFTER INSERT ON transaction
+    FOR EACH ROW EXECUTE FUNCTION transaction_recipient_on_insert();
+
+-- Creates the partition for the (UTC) month containing month_start unless it exists.
+-- Serialised with an advisory lock so several instances can call it at once.
+CREATE OR REPLACE FUNCTION ensure_transaction_partition(month_start DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    lower_bound TIMESTAMP := date_trunc('month', month_start::timestamp);
+    partition_name TEXT := 'transaction_p' || to_char(lower_bound, 'YYYY_MM');
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('transaction_partitions'));
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I PARTITION OF transaction FOR VALUES FROM (%L) TO (%L)',
+                   partition_name,
+                   lower_bound AT TIME ZONE 'UTC',
+                   (lower_bound + INTERVAL '1 month') AT TIME ZONE 'UTC');
+    RETURN TRUE;
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+    -- The literal in V7_2's CHECK (created_at < '...')
+    bound TIMESTAMP WITH TIME ZONE := (
+        SELECT (regexp_match(pg_get_constraintdef(oid), '''([^'']+)'''))[1]::timestamptz
+        FROM pg_constraint
+        WHERE conname = 'transaction_legacy_created_at_bound' AND conrelid = 'transaction_legacy'::regclass);
+BEGIN
+    EXECUTE format('ALTER TABLE transaction ATTACH PARTITION transaction_legacy FOR VALUES FROM (MINVALUE) TO (%L)', bound);
+    FOR i IN 0..2 LOOP
+        PERFORM ensure_transaction_partition(((bound AT TIME ZONE 'UTC') + i * INTERVAL '1 month')::date);
+    END LOOP;
+END;
+$$;
+
+-- The partition bound enforces it from here on
+ALTER TABLE transaction_legacy DROP CONSTRAINT transaction_legacy_created_at_bound;
@@ -0,0 +1,20 @@
+-- Cold-tier archive of old transaction rows (see TransactionArchive / ArchivalJob).
+-- Rows created before archived_before are read from the archive files; rows still in the
+-- table below it are leftovers waiting to be deleted and are ignored by readers.
+-- next_account_id is the resume point within the month currently being written out.
+CREATE TABLE IF NOT EXISTS transaction_archive_state (
+    id INT PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+    archived_before TIMESTAMP WITH TIME ZONE,
+    next_account_id BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+INSERT INTO transaction_archive_state (id) VALUES (1) ON CONFLICT (id) DO NOTHING;
+
+-- Net amount and row count per account of everything archived, so ledger totals
+-- (e.g. reconciliation against account balances) don't have to read the archive
+CREATE TABLE IF NOT EXISTS transaction_archive_summary (
+    account_id BIGINT PRIMARY KEY,
+    net_amount NUMERIC(19, 4) NOT NULL DEFAULT 0,
+    row_count BIGINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,128 @@
+package com.example.transaction.journal;
+
+import com.example.transaction.model.Transaction.TransactionCategory;
+import com.example.transaction.model.Transaction.TransactionType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readStopsAtRecordWithBadCrc() throws Exception {
+        LedgerJournal journal = open(4096);
+        journal.write(List.of(entry(1), entry(2), entry(3)));
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment(0).toFile(), "rw")) {
+            int second = frameSize(Integer.reverseBytes(file.readInt()));
+            file.seek(second + 8 + 2);
+            int value = file.read();
+            file.seek(second + 8 + 2);
+            file.write(value ^ 0xff);
+        }
+
+        List<JournalEntry> read = readAll();
+        assertEquals(1, read.size());
+        assertEquals(1, read.get(0).getAccountId());
+    }
+
+    @Test
+    void recoveryClearsTornTailAndStartsNewSegment() throws Exception {
+        LedgerJournal journal = open(4096);
+        journal.write(List.of(entry(1), entry(2)));
+        journal.close();
+
+        // Half-written record after the last good one: a length whose payload never made it
+        int tail;
+        try (RandomAccessFile file = new RandomAccessFile(segment(0).toFile(), "rw")) {
+            tail = frameSize(Integer.reverseBytes(file.readInt()));
+            file.seek(tail);
+            tail += frameSize(Integer.reverseBytes(file.readInt()));
+            file.seek(tail);
+            file.writeInt(Integer.reverseBytes(200));
+            file.writeInt(0x12345678);
+            file.write(new byte[] {1, 2, 3, 4});
+        }
+
+        journal = open(4096);
+        assertEquals(1, journal.startSegment());
+        journal.write(List.of(entry(3)));
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment(0).toFile(), "r")) {
+            file.seek(tail);
+            assertEquals(0, file.readInt());
+        }
+        List<JournalEntry> read = readAll();
+        assertEquals(List.of(1L, 2L, 3L), read.stream().map(JournalEntry::getAccountId).toList());
+    }
+
+    @Test
+    void closedSegmentIsDeletedOnceCommitted() throws Exception {
+        LedgerJournal journal = open(512);
+        List<LedgerJournal.Receipt> receipts = new ArrayList<>();
+        for (long account = 1; !Files.exists(segment(1)); account++) {
+            receipts.add(journal.write(List.of(entry(account))));
+        }
+
+        // The last write rolled to segment 1; segment 0 waits for its first entry
+        for (int i = 1; i < receipts.size(); i++) journal.committed(receipts.get(i));
+        assertTrue(Files.exists(segment(0)));
+
+        journal.committed(receipts.get(0));
+        assertFalse(Files.exists(segment(0)));
+        // Still being written
+        assertTrue(Files.exists(segment(1)));
+        journal.close();
+    }
+
+    private LedgerJournal open(int segmentBytes) throws Exception {
+        LedgerJournal journal = new LedgerJournal();
+        ReflectionTestUtils.setField(journal, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(journal, "syncWrites", true);
+        ReflectionTestUtils.setField(journal, "flushIntervalMs", 1L);
+        journal.init();
+        return journal;
+    }
+
+    private List<JournalEntry> readAll() throws Exception {
+        List<JournalEntry> read = new ArrayList<>();
+        LedgerJournal.readAll(dir, read::add);
+        return read;
+    }
+
+    private Path segment(long index) {
+        return dir.resolve(String.format("%020d.journal", index));
+    }
+
+    private static int frameSize(int length) {
+        return (8 + length + 7) & ~7;
+    }
+
+    private static JournalEntry entry(long accountId) {
+        return new JournalEntry(UUID.randomUUID(), Instant.parse("2024-01-01T00:00:00Z"), accountId,
+                TransactionType.DEPOSIT, TransactionCategory.OTHER, new BigDecimal("10.00"),
+                new BigDecimal("10.00"), null, "test");
+    }
+}